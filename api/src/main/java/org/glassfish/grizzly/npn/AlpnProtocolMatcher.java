@@ -0,0 +1,220 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.util.Arrays;
+
+/**
+ * Selects an ALPN protocol from the protocols offered by a client, using a
+ * server preference list that is compiled once.
+ *
+ * Matching is done over the length prefixed encoding of the client's
+ * protocol list, as found in the ClientHello, so no client protocol name is
+ * ever decoded.  The result of a successful match is one of a fixed set of
+ * single protocol {@link AlpnProtocols} instances, created when the matcher
+ * is compiled, whose protocol name is interned.  It may be compared by
+ * identity and written into the ServerHello as is.
+ *
+ * Instances are immutable and thread safe.
+ */
+public final class AlpnProtocolMatcher {
+
+    private final AlpnProtocols preferences;
+
+    // UTF-8 encoded names, and the matching selections, in preference order
+    private final byte[][] names;
+    private final AlpnProtocols[] selections;
+
+    // (names[i].length -> bit i), to skip client protocols quickly
+    private final long[] lengthMasks = new long[256];
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    private AlpnProtocolMatcher(final AlpnProtocols preferences) {
+        this.preferences = preferences;
+        final int size = preferences.size();
+        names = new byte[size][];
+        selections = new AlpnProtocols[size];
+        for (int i = 0; i < size; i++) {
+            selections[i] = AlpnProtocols.of(preferences.get(i));
+            names[i] = preferences.get(i).getBytes(AlpnProtocols.UTF_8);
+            if (i < 64) {
+                lengthMasks[names[i].length] |= 1L << i;
+            }
+        }
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * Compile a matcher for the specified protocols.
+     *
+     * @param preferences the protocols supported by the server, most
+     *  preferred first.
+     *
+     * @throws IllegalArgumentException if a protocol isn't a valid ALPN
+     *  protocol name.
+     */
+    public static AlpnProtocolMatcher compile(final String... preferences) {
+        return compile(AlpnProtocols.of(preferences));
+    }
+
+    /**
+     * Compile a matcher for the specified protocols.
+     *
+     * @param preferences the protocols supported by the server, most
+     *  preferred first.
+     */
+    public static AlpnProtocolMatcher compile(final AlpnProtocols preferences) {
+        return new AlpnProtocolMatcher(preferences);
+    }
+
+    /**
+     * @return the server's protocols, most preferred first.
+     */
+    public AlpnProtocols getPreferences() {
+        return preferences;
+    }
+
+    /**
+     * Select the most preferred server protocol offered by the client.
+     *
+     * @param b the buffer holding the client's encoded
+     *  <code>protocol_name_list</code>, without its 16-bit length prefix.
+     * @param off the offset of the list within <code>b</code>.
+     * @param len the length of the list.
+     *
+     * @return the single protocol {@link AlpnProtocols} of the selected
+     *  protocol, or <code>null</code> if the client offered none of the
+     *  server's protocols, or if the list is malformed.
+     */
+    public AlpnProtocols match(final byte[] b, final int off, final int len) {
+        final int end = off + len;
+        int best = selections.length;
+        int pos = off;
+        while (pos < end) {
+            final int l = b[pos++] & 0xFF;
+            if (l > end - pos) {
+                return null;
+            }
+            if (lengthMasks[l] != 0 || selections.length > 64) {
+                for (int i = 0; i < best; i++) {
+                    if (names[i].length == l && regionMatches(names[i], b, pos)) {
+                        best = i;
+                        break;
+                    }
+                }
+                if (best == 0) {
+                    return selections[0];
+                }
+            }
+            pos += l;
+        }
+        return best < selections.length ? selections[best] : null;
+    }
+
+    /**
+     * Select the most preferred server protocol offered by the client.
+     *
+     * @param clientProtocols the protocols offered by the client.
+     *
+     * @return the single protocol {@link AlpnProtocols} of the selected
+     *  protocol, or <code>null</code> if the client offered none of the
+     *  server's protocols.
+     */
+    public AlpnProtocols match(final String[] clientProtocols) {
+        int best = selections.length;
+        for (String protocol : clientProtocols) {
+            for (int i = 0; i < best; i++) {
+                if (selections[i].get(0).equals(protocol)) {
+                    best = i;
+                    break;
+                }
+            }
+        }
+        return best < selections.length ? selections[best] : null;
+    }
+
+    /**
+     * Select the most preferred server protocol offered by the client.
+     *
+     * @param clientHello the client's ClientHello, for example a parsed
+     *  {@link ClientHelloParser}.
+     *
+     * @return the single protocol {@link AlpnProtocols} of the selected
+     *  protocol, or <code>null</code> if the client offered none of the
+     *  server's protocols.
+     */
+    public AlpnProtocols match(final ClientHelloView clientHello) {
+        if (!clientHello.isAlpnOffered()) {
+            return null;
+        }
+        for (AlpnProtocols selection : selections) {
+            if (clientHello.isAlpnProtocolOffered(selection.get(0))) {
+                return selection;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "AlpnProtocolMatcher" + Arrays.toString(preferences.toArray());
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private static boolean regionMatches(final byte[] name, final byte[] b, final int off) {
+        for (int i = 0; i < name.length; i++) {
+            if (name[i] != b[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
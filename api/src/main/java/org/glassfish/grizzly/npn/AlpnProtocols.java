@@ -0,0 +1,210 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * An immutable list of ALPN protocol names along with its wire encoding, as
+ * defined by RFC 7301: a concatenation of 8-bit length prefixed, non-empty
+ * byte strings.
+ *
+ * The encoding is computed once, when the instance is created, so an
+ * instance may be shared by any number of connections and written out
+ * without further allocation.
+ */
+public final class AlpnProtocols {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * An empty protocol list.
+     */
+    public static final AlpnProtocols EMPTY =
+            new AlpnProtocols(new String[0], new byte[0]);
+
+    private final String[] protocols;
+    private final byte[] encoded;
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    private AlpnProtocols(final String[] protocols, final byte[] encoded) {
+        this.protocols = protocols;
+        this.encoded = encoded;
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * Create a new protocol list.
+     *
+     * @param protocols the protocol names, in order of preference.
+     *
+     * @return the new {@link AlpnProtocols}.
+     *
+     * @throws IllegalArgumentException if a protocol is empty or its UTF-8
+     *  encoding is longer than 255 bytes, or if the encoded list is longer
+     *  than 2^16-1 bytes.
+     */
+    public static AlpnProtocols of(final String... protocols) {
+        if (protocols.length == 0) {
+            return EMPTY;
+        }
+        final String[] names = protocols.clone();
+        final byte[][] bytes = new byte[names.length][];
+        int length = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) {
+                throw new NullPointerException("protocol");
+            }
+            bytes[i] = names[i].getBytes(UTF_8);
+            if (bytes[i].length == 0 || bytes[i].length > 0xFF) {
+                throw new IllegalArgumentException(
+                        "Invalid protocol name length: " + names[i]);
+            }
+            length += bytes[i].length + 1;
+        }
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException(
+                    "Encoded protocol list too long: " + length);
+        }
+        final byte[] encoded = new byte[length];
+        int offset = 0;
+        for (byte[] b : bytes) {
+            encoded[offset++] = (byte) b.length;
+            System.arraycopy(b, 0, encoded, offset, b.length);
+            offset += b.length;
+        }
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].intern();
+        }
+        return new AlpnProtocols(names, encoded);
+    }
+
+    /**
+     * @return the number of protocols in this list.
+     */
+    public int size() {
+        return protocols.length;
+    }
+
+    /**
+     * @return <code>true</code> if this list has no protocols.
+     */
+    public boolean isEmpty() {
+        return protocols.length == 0;
+    }
+
+    /**
+     * @return the protocol at the specified index.
+     */
+    public String get(final int index) {
+        return protocols[index];
+    }
+
+    /**
+     * @return the index of the specified protocol, or <code>-1</code> if the
+     * list doesn't contain it.
+     */
+    public int indexOf(final String protocol) {
+        for (int i = 0; i < protocols.length; i++) {
+            if (protocols[i].equals(protocol)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return <code>true</code> if the list contains the specified protocol.
+     */
+    public boolean contains(final String protocol) {
+        return indexOf(protocol) != -1;
+    }
+
+    /**
+     * @return a newly allocated array of the protocols in this list.
+     */
+    public String[] toArray() {
+        return protocols.clone();
+    }
+
+    /**
+     * @return the length of the encoded list, not including the 16-bit
+     * length prefix of the ALPN extension's <code>protocol_name_list</code>.
+     */
+    public int encodedLength() {
+        return encoded.length;
+    }
+
+    /**
+     * Write the encoded list, without its 16-bit length prefix, to the
+     * specified {@link OutputStream}.
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(encoded, 0, encoded.length);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return this == o
+                || (o instanceof AlpnProtocols
+                    && Arrays.equals(encoded, ((AlpnProtocols) o).encoded));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(encoded);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(protocols);
+    }
+
+}
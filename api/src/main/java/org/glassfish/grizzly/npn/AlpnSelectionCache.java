@@ -0,0 +1,245 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of ALPN selections made by {@link PureNegotiator}
+ * server negotiators.
+ *
+ * Selections are keyed by the negotiator, the encoded protocol list offered
+ * by the client and, where relevant, the requested server name.  As most
+ * clients offer one of a handful of protocol lists, a small cache is enough
+ * to skip selection for nearly all handshakes.
+ *
+ * The cache is direct mapped: each key hashes to a single slot, and a new
+ * selection simply replaces whatever the slot held.  Lookups and updates
+ * never lock.  Install a cache with
+ * {@link NegotiationSupport#setAlpnSelectionCache(AlpnSelectionCache)}.
+ */
+public final class AlpnSelectionCache {
+
+    /**
+     * The default number of slots.
+     */
+    public static final int DEFAULT_SIZE = 256;
+
+    // Client protocol lists longer than this aren't cached.
+    private static final int MAX_KEY_LENGTH = 256;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    /**
+     * Create a cache with {@link #DEFAULT_SIZE} slots.
+     */
+    public AlpnSelectionCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Create a cache with (at least) the specified number of slots.
+     */
+    public AlpnSelectionCache(final int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        int n = 1;
+        while (n < size && n < (1 << 16)) {
+            n <<= 1;
+        }
+        slots = new AtomicReferenceArray<Entry>(n);
+        mask = n - 1;
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * @param negotiator the negotiator that made the selection.
+     * @param serverName the requested server name, or <code>null</code> if
+     *  the selection doesn't depend on it.
+     * @param b the buffer holding the client's encoded protocol list.
+     * @param off the offset of the list within <code>b</code>.
+     * @param len the length of the list.
+     *
+     * @return the cached selection, or <code>null</code>.
+     */
+    public AlpnProtocols get(final Object negotiator, final String serverName,
+                             final byte[] b, final int off, final int len) {
+        if (len > MAX_KEY_LENGTH) {
+            return null;
+        }
+        final int hash = hash(negotiator, serverName, b, off, len);
+        final Entry e = slots.get(hash & mask);
+        if (e != null && e.matches(hash, negotiator, serverName, b, off, len)) {
+            hits.increment();
+            return e.selection;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Cache a selection.  The key bytes are copied.
+     *
+     * @see #get(Object, String, byte[], int, int)
+     */
+    public void put(final Object negotiator, final String serverName,
+                    final byte[] b, final int off, final int len,
+                    final AlpnProtocols selection) {
+        if (selection == null || len > MAX_KEY_LENGTH) {
+            return;
+        }
+        final int hash = hash(negotiator, serverName, b, off, len);
+        slots.set(hash & mask, new Entry(hash, negotiator, serverName,
+                Arrays.copyOfRange(b, off, off + len), selection));
+    }
+
+    /**
+     * Remove all cached selections.
+     */
+    public void clear() {
+        for (int i = 0, len = slots.length(); i < len; i++) {
+            slots.set(i, null);
+        }
+    }
+
+    /**
+     * @return the number of slots.
+     */
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * @return the number of lookups that found a selection.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that didn't find a selection.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AlpnSelectionCache[capacity=" + capacity()
+                + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ']';
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private static int hash(final Object negotiator, final String serverName,
+                            final byte[] b, final int off, final int len) {
+        int h = System.identityHashCode(negotiator);
+        if (serverName != null) {
+            h = 31 * h + serverName.hashCode();
+        }
+        for (int i = off, end = off + len; i < end; i++) {
+            h = 31 * h + b[i];
+        }
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+
+    // ---------------------------------------------------------- Nested Classes
+
+
+    private static final class Entry {
+
+        final int hash;
+        final Object negotiator;
+        final String serverName;
+        final byte[] key;
+        final AlpnProtocols selection;
+
+        Entry(final int hash, final Object negotiator, final String serverName,
+              final byte[] key, final AlpnProtocols selection) {
+            this.hash = hash;
+            this.negotiator = negotiator;
+            this.serverName = serverName;
+            this.key = key;
+            this.selection = selection;
+        }
+
+        boolean matches(final int hash, final Object negotiator,
+                        final String serverName,
+                        final byte[] b, final int off, final int len) {
+            if (this.hash != hash || this.negotiator != negotiator
+                    || key.length != len) {
+                return false;
+            }
+            if (serverName == null
+                    ? this.serverName != null
+                    : !serverName.equals(this.serverName)) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (key[i] != b[off + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    } // END Entry
+
+}
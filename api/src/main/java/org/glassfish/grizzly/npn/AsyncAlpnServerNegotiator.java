@@ -0,0 +1,93 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.util.concurrent.CompletionStage;
+import javax.net.ssl.SSLEngine;
+
+/**
+ * <p>
+ *
+ * An {@link AlpnServerNegotiator} whose selection may take time to complete,
+ * for example because it depends on a remote lookup.  The SSL framework
+ * uses {@link #selectProtocolAsync(javax.net.ssl.SSLEngine, String[])} in
+ * place of {@link #selectProtocol(javax.net.ssl.SSLEngine, String[])}.
+ *
+ * <p>
+ *
+ * While the selection is pending, the {@code SSLEngine} reports
+ * {@code HandshakeStatus.NEED_TASK}.  The task returned by
+ * {@code SSLEngine.getDelegatedTask()} waits for the selection to complete,
+ * without holding the engine's lock, then resumes the handshake.
+ *
+ * <p>
+ *
+ * The thread running the task is blocked until the selection completes.
+ * Threads driving the engine are only spared the wait if they hand
+ * delegated tasks over to another executor rather than run them inline.
+ * The wait is bounded by the
+ * <code>org.glassfish.grizzly.npn.asyncHandshakeTimeout</code> system
+ * property, in milliseconds (30000 by default).  A selection that doesn't
+ * complete in time, or an interrupted wait, aborts the handshake with an
+ * <code>internal_error</code> alert.
+ *
+ * <p>
+ */
+public interface AsyncAlpnServerNegotiator extends AlpnServerNegotiator {
+
+    /**
+     * <p>
+     *
+     * Start the selection of the protocol.
+     *
+     * <p>
+     *
+     * @param sslEngine the {@code SSLEngine} for this connection.
+     * @param clientProtocols the available client protocols
+     * @return a stage completing with the selected protocol.  A stage
+     *  completing with <code>null</code> aborts the handshake with a
+     *  <code>no_application_protocol</code> alert, and a stage completing
+     *  exceptionally aborts it with an <code>internal_error</code> alert.
+     */
+    CompletionStage<String> selectProtocolAsync(SSLEngine sslEngine,
+                                                String[] clientProtocols);
+
+}
@@ -0,0 +1,83 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.security.PrivateKey;
+import java.util.concurrent.CompletionStage;
+import javax.net.ssl.SSLEngine;
+
+/**
+ * Computes the signatures of the ServerKeyExchange messages of ECDHE and
+ * DHE handshakes, off the threads driving the handshakes.  A signer is
+ * registered for an {@link javax.net.ssl.SSLContext} with
+ * {@link NegotiationSupport#setAsyncSigner(javax.net.ssl.SSLContext, AsyncSigner)}.
+ *
+ * While the signature is pending, the {@code SSLEngine} reports
+ * {@code HandshakeStatus.NEED_TASK}.  The task returned by
+ * {@code SSLEngine.getDelegatedTask()} waits for the signature to
+ * complete, without holding the engine's lock, then sends the rest of
+ * the server's flight.  The wait is bounded as described by
+ * {@link AsyncAlpnServerNegotiator}.  The signer may batch signatures, or
+ * delegate them to another process holding the keys: the private key is
+ * the one chosen by the {@link javax.net.ssl.X509KeyManager}, which may be
+ * a handle rather than the key material.
+ *
+ * Only {@code SSLEngine} connections use the signer.
+ */
+public interface AsyncSigner {
+
+    /**
+     * Start signing data.
+     *
+     * @param sslEngine the {@code SSLEngine} for this connection.
+     * @param algorithm the standard name of the signature algorithm, for
+     *  example <code>SHA256withRSA</code> or <code>SHA256withECDSA</code>.
+     *  TLS 1.0 and 1.1 RSA signatures use <code>MD5andSHA1withRSA</code>.
+     * @param privateKey the private key to sign with.
+     * @param data the data to sign.
+     * @return a stage completing with the signature.  A stage completing
+     *  exceptionally aborts the handshake with an
+     *  <code>internal_error</code> alert.
+     */
+    CompletionStage<byte[]> sign(SSLEngine sslEngine, String algorithm,
+                                 PrivateKey privateKey, byte[] data);
+
+}
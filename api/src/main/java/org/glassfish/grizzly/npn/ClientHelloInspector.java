@@ -0,0 +1,96 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import javax.net.ssl.SSLEngine;
+
+/**
+ * <p>
+ *
+ * Called on the server as soon as a ClientHello has been parsed, before a
+ * cipher suite is selected or any key material is generated, so unwanted
+ * connections can be rejected as cheaply as possible.  Implementations must
+ * be thread safe.
+ *
+ * <p>
+ *
+ * Inspectors are registered, and resolved, like negotiators: see
+ * {@link NegotiationSupport#addClientHelloInspector(SSLEngine, ClientHelloInspector)}.
+ * State to be carried over to the rest of the handshake, for example to the
+ * negotiators, may be attached to the engine with
+ * {@link NegotiationSupport#setAttachment(SSLEngine, Object)}.
+ *
+ * <p>
+ */
+public interface ClientHelloInspector {
+
+    /**
+     * Continue with the handshake.
+     */
+    int ACCEPT = -1;
+
+    /** The <code>handshake_failure</code> alert. */
+    int HANDSHAKE_FAILURE = 40;
+
+    /** The <code>access_denied</code> alert. */
+    int ACCESS_DENIED = 49;
+
+    /** The <code>unrecognized_name</code> alert. */
+    int UNRECOGNIZED_NAME = 112;
+
+    /** The <code>no_application_protocol</code> alert. */
+    int NO_APPLICATION_PROTOCOL = 120;
+
+    /**
+     * <p>
+     *
+     * Inspect a ClientHello.
+     *
+     * <p>
+     *
+     * @param sslEngine the {@code SSLEngine} for this connection.
+     * @param clientHello the ClientHello.  The view must not be retained.
+     * @return {@link #ACCEPT} to continue with the handshake, or the
+     *  description of the fatal alert the handshake is aborted with.
+     */
+    int inspect(SSLEngine sslEngine, ClientHelloView clientHello);
+
+}
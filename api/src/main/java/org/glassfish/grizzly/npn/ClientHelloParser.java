@@ -0,0 +1,646 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Parses the ClientHello at the start of a TLS connection directly from a
+ * {@link ByteBuffer}, so the connection can be dispatched (to an
+ * {@code SSLContext}, a worker pool, a backend...) before an
+ * {@code SSLEngine} is even created.
+ *
+ * The buffer is only read using absolute gets: its position, limit and
+ * content are left untouched.  The ClientHello is never copied: the parser
+ * records offsets and the extension types only, and the
+ * {@link ClientHelloView} accessors read the values from the buffer on
+ * demand.  The parser thus aliases the buffer,
+ * whose content must not change while the values are accessed.  Only the
+ * accessors returning a <code>String</code> copy the bytes they return.
+ * A parser may be reused, see {@link #reset()}.
+ *
+ * Parsing is incremental: if the buffer doesn't hold the complete
+ * ClientHello yet, {@link #parse(ByteBuffer)} returns
+ * {@link Result#UNDERFLOW} and may be invoked again, with the same buffer
+ * at the same position, once more data has been read into it.  Records
+ * already scanned are not scanned again.  Passing another buffer, or the
+ * same buffer at another position, restarts parsing.  A ClientHello
+ * spanning several records is supported.
+ *
+ * As required by RFC 5246, section 7.4.1.4, a ClientHello holding more
+ * than one extension of the same type is {@link Result#MALFORMED}.
+ * Parsing takes time linear in the length of the ClientHello, whatever
+ * its number of extensions.
+ *
+ * Instances are not thread safe.
+ */
+public final class ClientHelloParser implements ClientHelloView {
+
+    /**
+     * The outcome of {@link ClientHelloParser#parse(ByteBuffer)}.
+     */
+    public enum Result {
+        /** The ClientHello has been parsed, its values may be accessed. */
+        COMPLETE,
+        /** More data is needed. */
+        UNDERFLOW,
+        /** The data doesn't start with a TLS ClientHello. */
+        NOT_CLIENT_HELLO,
+        /**
+         * The ClientHello is malformed, for example holds the same extension
+         * twice, or spans too many records.
+         */
+        MALFORMED
+    }
+
+    private static final int RECORD_HEADER_LENGTH = 5;
+    private static final int MAX_RECORD_LENGTH = (1 << 14) + 2048;
+    private static final int MAX_FRAGMENTS = 8;
+
+    private static final int CT_HANDSHAKE = 22;
+    private static final int HT_CLIENT_HELLO = 1;
+
+    private static final int EXT_SERVER_NAME = 0x0000;
+    private static final int EXT_ALPN = 0x0010;
+    private static final int EXT_SUPPORTED_VERSIONS = 0x002B;
+
+    private ByteBuffer buffer;
+    private int base;
+    private Result result;
+
+    // record scanning state, offsets are relative to base
+    private int nextRecord;
+    private int recordVersion;
+    private int fragmentCount;
+    private final int[] fragmentStart = new int[MAX_FRAGMENTS];
+    private final int[] fragmentLength = new int[MAX_FRAGMENTS];
+    private int available;
+
+    // parsed values, offsets are logical offsets within the handshake message
+    private int messageLength;
+    private int clientVersion;
+    private int cipherSuitesOffset;
+    private int cipherSuiteCount;
+    private int extensionCount;
+    // the types of the extensions, in order and as a set of 2^16 bits
+    private int[] extensionTypes = new int[16];
+    private final long[] extensionTypeSet = new long[1024];
+    private int serverNameOffset;
+    private int serverNameLength;
+    private int alpnOffset;
+    private int alpnLength;
+    private int alpnCount;
+    private int supportedVersionsOffset;
+    private int supportedVersionCount;
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    public ClientHelloParser() {
+        reset();
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * Discard all state, so the parser may be used for another connection.
+     *
+     * @return this parser.
+     */
+    public ClientHelloParser reset() {
+        buffer = null;
+        base = 0;
+        result = Result.UNDERFLOW;
+        nextRecord = 0;
+        recordVersion = 0;
+        fragmentCount = 0;
+        available = 0;
+        messageLength = -1;
+        clientVersion = 0;
+        cipherSuitesOffset = 0;
+        cipherSuiteCount = 0;
+        for (int i = 0; i < extensionCount; i++) {
+            extensionTypeSet[extensionTypes[i] >>> 6] = 0;
+        }
+        extensionCount = 0;
+        serverNameOffset = -1;
+        serverNameLength = 0;
+        alpnOffset = -1;
+        alpnLength = 0;
+        alpnCount = 0;
+        supportedVersionsOffset = -1;
+        supportedVersionCount = 0;
+        return this;
+    }
+
+    /**
+     * Parse the ClientHello found between the position and the limit of the
+     * specified buffer.
+     *
+     * @return the {@link Result}.  Once a result other than
+     *  {@link Result#UNDERFLOW} has been returned, subsequent invocations
+     *  return it again until the parser is reset or passed a different
+     *  buffer or position.
+     */
+    public Result parse(final ByteBuffer buffer) {
+        if (this.buffer != buffer || base != buffer.position()) {
+            reset();
+            this.buffer = buffer;
+            base = buffer.position();
+        }
+        if (result != Result.UNDERFLOW) {
+            return result;
+        }
+        final int limit = buffer.limit() - base;
+        while (limit - nextRecord >= RECORD_HEADER_LENGTH) {
+            if (physicalU8(nextRecord) != CT_HANDSHAKE
+                    || physicalU8(nextRecord + 1) != 3) {
+                return result = fragmentCount == 0
+                        ? Result.NOT_CLIENT_HELLO
+                        : Result.MALFORMED;
+            }
+            final int length = physicalU16(nextRecord + 3);
+            if (length == 0 || length > MAX_RECORD_LENGTH) {
+                return result = Result.MALFORMED;
+            }
+            if (limit - nextRecord - RECORD_HEADER_LENGTH < length) {
+                break;
+            }
+            if (fragmentCount == MAX_FRAGMENTS) {
+                return result = Result.MALFORMED;
+            }
+            if (fragmentCount == 0) {
+                recordVersion = physicalU16(nextRecord + 1);
+                if (physicalU8(nextRecord + RECORD_HEADER_LENGTH) != HT_CLIENT_HELLO) {
+                    return result = Result.NOT_CLIENT_HELLO;
+                }
+            }
+            fragmentStart[fragmentCount] = nextRecord + RECORD_HEADER_LENGTH;
+            fragmentLength[fragmentCount] = length;
+            fragmentCount++;
+            available += length;
+            nextRecord += RECORD_HEADER_LENGTH + length;
+            if (messageLength < 0 && available >= 4) {
+                messageLength = u24(1);
+                if (messageLength + 4 > MAX_FRAGMENTS * MAX_RECORD_LENGTH) {
+                    return result = Result.MALFORMED;
+                }
+            }
+            if (messageLength >= 0 && available >= messageLength + 4) {
+                return result = parseClientHello();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the result of the last invocation of
+     * {@link #parse(ByteBuffer)}.
+     */
+    public Result getResult() {
+        return result;
+    }
+
+    /**
+     * @return the number of bytes, starting at the buffer's position, taken
+     * by the records holding the ClientHello.
+     */
+    public int getRecordsLength() {
+        checkComplete();
+        return nextRecord;
+    }
+
+    /**
+     * @return the protocol version of the first record, for example
+     * <code>0x0301</code>.
+     */
+    public int getRecordVersion() {
+        checkComplete();
+        return recordVersion;
+    }
+
+    /**
+     * @return the length of the ClientHello message, excluding its header.
+     */
+    public int getMessageLength() {
+        checkComplete();
+        return messageLength;
+    }
+
+    /**
+     * @return the number of versions listed by the
+     * <code>supported_versions</code> extension.
+     */
+    public int getSupportedVersionCount() {
+        checkComplete();
+        return supportedVersionCount;
+    }
+
+    /**
+     * @return the version at the specified index of the
+     * <code>supported_versions</code> extension.
+     */
+    public int getSupportedVersion(final int index) {
+        checkIndex(index, getSupportedVersionCount());
+        return u16(supportedVersionsOffset + 2 * index);
+    }
+
+    /**
+     * @return <code>true</code> if the host name of the
+     * <code>server_name</code> extension equals, ignoring case, the
+     * specified name.  Unlike {@link #getServerName()}, this method doesn't
+     * allocate.
+     */
+    public boolean isServerName(final String name) {
+        checkComplete();
+        if (serverNameOffset < 0 || name.length() != serverNameLength) {
+            return false;
+        }
+        for (int i = 0; i < serverNameLength; i++) {
+            if (toLowerCase(u8(serverNameOffset + i)) != toLowerCase(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    // ------------------------------------------------ Methods from ClientHelloView
+
+
+    @Override
+    public int getProtocolVersion() {
+        checkComplete();
+        return clientVersion;
+    }
+
+    @Override
+    public String getServerName() {
+        checkComplete();
+        if (serverNameOffset < 0) {
+            return null;
+        }
+        final char[] name = new char[serverNameLength];
+        for (int i = 0; i < serverNameLength; i++) {
+            name[i] = (char) u8(serverNameOffset + i);
+        }
+        return new String(name);
+    }
+
+    @Override
+    public int getCipherSuiteCount() {
+        checkComplete();
+        return cipherSuiteCount;
+    }
+
+    @Override
+    public int getCipherSuite(final int index) {
+        checkIndex(index, getCipherSuiteCount());
+        return u16(cipherSuitesOffset + 2 * index);
+    }
+
+    @Override
+    public int getExtensionCount() {
+        checkComplete();
+        return extensionCount;
+    }
+
+    @Override
+    public int getExtensionType(final int index) {
+        checkIndex(index, getExtensionCount());
+        return extensionTypes[index];
+    }
+
+    @Override
+    public boolean hasExtension(final int type) {
+        checkComplete();
+        return type >= 0 && type <= 0xFFFF
+                && (extensionTypeSet[type >>> 6] & (1L << type)) != 0;
+    }
+
+    @Override
+    public boolean isAlpnOffered() {
+        checkComplete();
+        return alpnOffset >= 0;
+    }
+
+    @Override
+    public int getAlpnProtocolCount() {
+        checkComplete();
+        return alpnCount;
+    }
+
+    @Override
+    public String getAlpnProtocol(final int index) {
+        checkIndex(index, getAlpnProtocolCount());
+        int pos = alpnOffset;
+        for (int i = 0; i < index; i++) {
+            pos += 1 + u8(pos);
+        }
+        final byte[] name = new byte[u8(pos)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = (byte) u8(pos + 1 + i);
+        }
+        return new String(name, AlpnProtocols.UTF_8);
+    }
+
+    @Override
+    public boolean isAlpnProtocolOffered(final String protocol) {
+        checkComplete();
+        if (alpnOffset < 0) {
+            return false;
+        }
+        final byte[] encoded = isAscii(protocol)
+                ? null
+                : protocol.getBytes(AlpnProtocols.UTF_8);
+        final int length = encoded != null ? encoded.length : protocol.length();
+        for (int pos = alpnOffset, end = alpnOffset + alpnLength; pos < end; ) {
+            final int l = u8(pos++);
+            if (l == length && regionMatches(pos, protocol, encoded)) {
+                return true;
+            }
+            pos += l;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        if (result != Result.COMPLETE) {
+            return "ClientHelloParser[" + result + ']';
+        }
+        return "ClientHelloParser[version=0x" + Integer.toHexString(clientVersion)
+                + ", serverName=" + getServerName()
+                + ", cipherSuites=" + cipherSuiteCount
+                + ", extensions=" + extensionCount
+                + ", alpnProtocols=" + alpnCount + ']';
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private Result parseClientHello() {
+        final int end = 4 + messageLength;
+        int pos = 4;
+        if (end - pos < 2 + 32 + 1) {
+            return Result.MALFORMED;
+        }
+        clientVersion = u16(pos);
+        pos += 2 + 32;
+        final int sessionIdLength = u8(pos);
+        pos += 1 + sessionIdLength;
+        if (sessionIdLength > 32 || end - pos < 2) {
+            return Result.MALFORMED;
+        }
+        final int cipherSuitesLength = u16(pos);
+        pos += 2;
+        if ((cipherSuitesLength & 1) != 0 || end - pos < cipherSuitesLength + 1) {
+            return Result.MALFORMED;
+        }
+        cipherSuitesOffset = pos;
+        cipherSuiteCount = cipherSuitesLength >> 1;
+        pos += cipherSuitesLength;
+        final int compressionMethodsLength = u8(pos);
+        pos += 1 + compressionMethodsLength;
+        if (pos > end) {
+            return Result.MALFORMED;
+        }
+        if (pos == end) {
+            // no extensions
+            return Result.COMPLETE;
+        }
+        if (end - pos < 2 || u16(pos) != end - pos - 2) {
+            return Result.MALFORMED;
+        }
+        pos += 2;
+        while (pos < end) {
+            if (end - pos < 4) {
+                return Result.MALFORMED;
+            }
+            final int type = u16(pos);
+            final int length = u16(pos + 2);
+            pos += 4;
+            if (end - pos < length || !addExtensionType(type)) {
+                return Result.MALFORMED;
+            }
+            final boolean valid;
+            switch (type) {
+                case EXT_SERVER_NAME:
+                    valid = parseServerName(pos, length);
+                    break;
+                case EXT_ALPN:
+                    valid = parseAlpn(pos, length);
+                    break;
+                case EXT_SUPPORTED_VERSIONS:
+                    valid = parseSupportedVersions(pos, length);
+                    break;
+                default:
+                    valid = true;
+            }
+            if (!valid) {
+                return Result.MALFORMED;
+            }
+            pos += length;
+        }
+        return Result.COMPLETE;
+    }
+
+    /*
+     * Records the type of the next extension, returns false if an
+     * extension of the same type precedes it.
+     */
+    private boolean addExtensionType(final int type) {
+        final long bit = 1L << type;
+        if ((extensionTypeSet[type >>> 6] & bit) != 0) {
+            return false;
+        }
+        extensionTypeSet[type >>> 6] |= bit;
+        if (extensionCount == extensionTypes.length) {
+            extensionTypes = Arrays.copyOf(extensionTypes, extensionCount * 2);
+        }
+        extensionTypes[extensionCount++] = type;
+        return true;
+    }
+
+    private boolean parseServerName(int pos, final int length) {
+        if (length == 0) {
+            // allowed in a ServerHello only, but harmless
+            return true;
+        }
+        if (length < 2 || u16(pos) != length - 2) {
+            return false;
+        }
+        final int end = pos + length;
+        pos += 2;
+        while (pos < end) {
+            if (end - pos < 3) {
+                return false;
+            }
+            final int type = u8(pos);
+            final int nameLength = u16(pos + 1);
+            pos += 3;
+            if (end - pos < nameLength) {
+                return false;
+            }
+            if (type == 0 && serverNameOffset < 0) {
+                serverNameOffset = pos;
+                serverNameLength = nameLength;
+            }
+            pos += nameLength;
+        }
+        return true;
+    }
+
+    private boolean parseAlpn(int pos, final int length) {
+        if (length < 2 || u16(pos) != length - 2) {
+            return false;
+        }
+        final int end = pos + length;
+        pos += 2;
+        alpnOffset = pos;
+        alpnLength = length - 2;
+        while (pos < end) {
+            final int nameLength = u8(pos);
+            if (nameLength == 0 || end - pos - 1 < nameLength) {
+                return false;
+            }
+            alpnCount++;
+            pos += 1 + nameLength;
+        }
+        return true;
+    }
+
+    private boolean parseSupportedVersions(final int pos, final int length) {
+        if (length < 1) {
+            return false;
+        }
+        final int listLength = u8(pos);
+        if (listLength != length - 1 || (listLength & 1) != 0) {
+            return false;
+        }
+        supportedVersionsOffset = pos + 1;
+        supportedVersionCount = listLength >> 1;
+        return true;
+    }
+
+    private boolean regionMatches(final int pos, final String protocol,
+                                  final byte[] encoded) {
+        if (encoded != null) {
+            for (int i = 0; i < encoded.length; i++) {
+                if ((byte) u8(pos + i) != encoded[i]) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 0, len = protocol.length(); i < len; i++) {
+                if (u8(pos + i) != protocol.charAt(i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(final String s) {
+        for (int i = 0, len = s.length(); i < len; i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int toLowerCase(final int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private void checkComplete() {
+        if (result != Result.COMPLETE) {
+            throw new IllegalStateException("ClientHello not parsed: " + result);
+        }
+    }
+
+    private void checkIndex(final int index, final int count) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", count: " + count);
+        }
+    }
+
+    /*
+     * Reads a byte at a logical offset within the handshake message, which
+     * may be split across several records.
+     */
+    private int u8(int offset) {
+        if (fragmentCount == 1 || offset < fragmentLength[0]) {
+            return buffer.get(base + fragmentStart[0] + offset) & 0xFF;
+        }
+        for (int i = 0; i < fragmentCount; i++) {
+            if (offset < fragmentLength[i]) {
+                return buffer.get(base + fragmentStart[i] + offset) & 0xFF;
+            }
+            offset -= fragmentLength[i];
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    private int u16(final int offset) {
+        return (u8(offset) << 8) | u8(offset + 1);
+    }
+
+    private int u24(final int offset) {
+        return (u8(offset) << 16) | (u8(offset + 1) << 8) | u8(offset + 2);
+    }
+
+    private int physicalU8(final int offset) {
+        return buffer.get(base + offset) & 0xFF;
+    }
+
+    private int physicalU16(final int offset) {
+        return (physicalU8(offset) << 8) | physicalU8(offset + 1);
+    }
+
+}
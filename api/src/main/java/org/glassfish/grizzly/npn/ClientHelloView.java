@@ -0,0 +1,113 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+/**
+ * A read-only view of a ClientHello message.
+ *
+ * Values are exposed through index based accessors, so implementations may
+ * read them directly from the message without creating intermediate
+ * collections.  A view is only valid for the duration of the call it is
+ * passed to.
+ */
+public interface ClientHelloView {
+
+    /**
+     * @return the <code>client_version</code> of the ClientHello, for
+     * example <code>0x0303</code> for TLS 1.2.
+     */
+    int getProtocolVersion();
+
+    /**
+     * @return the host name of the <code>server_name</code> extension, or
+     * <code>null</code> if there is none.
+     */
+    String getServerName();
+
+    /**
+     * @return the number of cipher suites offered.
+     */
+    int getCipherSuiteCount();
+
+    /**
+     * @return the id of the cipher suite at the specified index, for
+     * example <code>0xC02F</code> for
+     * <code>TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256</code>.
+     */
+    int getCipherSuite(int index);
+
+    /**
+     * @return the number of extensions.
+     */
+    int getExtensionCount();
+
+    /**
+     * @return the type of the extension at the specified index.
+     */
+    int getExtensionType(int index);
+
+    /**
+     * @return <code>true</code> if the ClientHello has an extension of the
+     * specified type.
+     */
+    boolean hasExtension(int type);
+
+    /**
+     * @return <code>true</code> if the ClientHello has an ALPN extension.
+     */
+    boolean isAlpnOffered();
+
+    /**
+     * @return the number of ALPN protocols offered.
+     */
+    int getAlpnProtocolCount();
+
+    /**
+     * @return the ALPN protocol at the specified index.
+     */
+    String getAlpnProtocol(int index);
+
+    /**
+     * @return <code>true</code> if the specified ALPN protocol is offered.
+     */
+    boolean isAlpnProtocolOffered(String protocol);
+
+}
@@ -0,0 +1,74 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * Holds the sessions clients resume, in place of the client session cache
+ * of the {@link javax.net.ssl.SSLContext} it is registered for with
+ * {@link NegotiationSupport#setClientSessionStore(javax.net.ssl.SSLContext, ClientSessionStore)}.
+ * Client sessions are then neither cached by nor looked up in the
+ * {@link javax.net.ssl.SSLSessionContext}.
+ *
+ * Implementations must be thread safe, and their methods are invoked
+ * during handshakes so must not block.
+ */
+public interface ClientSessionStore {
+
+    /**
+     * @param host the host name of the server.
+     * @param port the port of the server.
+     *
+     * @return a session to resume with the server, or <code>null</code>.
+     */
+    SSLSession get(String host, int port);
+
+    /**
+     * Store a session established with a server.
+     *
+     * @param host the host name of the server.
+     * @param port the port of the server.
+     * @param session the session.
+     */
+    void put(String host, int port, SSLSession session);
+
+}
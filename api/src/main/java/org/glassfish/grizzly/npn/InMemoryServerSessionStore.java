@@ -0,0 +1,254 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, in-process {@link AsyncServerSessionStore}.
+ *
+ * It serves as the reference backend of the SPI: sharing one instance
+ * between several {@link javax.net.ssl.SSLContext}s lets them resume each
+ * other's sessions, and configuring an {@link Executor} runs lookups
+ * asynchronously, as a remote store would.  Once full, expired sessions
+ * are purged, then arbitrary ones are evicted.
+ */
+public final class InMemoryServerSessionStore implements AsyncServerSessionStore {
+
+    /**
+     * The default maximum number of sessions.
+     */
+    public static final int DEFAULT_MAX_SESSIONS = 20480;
+
+    private final ConcurrentHashMap<Key, Entry> sessions =
+            new ConcurrentHashMap<Key, Entry>();
+    private final int maxSessions;
+    private final Executor executor;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    /**
+     * Create a store of at most {@link #DEFAULT_MAX_SESSIONS} sessions,
+     * completing lookups synchronously.
+     */
+    public InMemoryServerSessionStore() {
+        this(DEFAULT_MAX_SESSIONS, null);
+    }
+
+    /**
+     * @param maxSessions the maximum number of sessions held.
+     * @param executor the executor running asynchronous lookups, or
+     *  <code>null</code> to complete them synchronously.
+     */
+    public InMemoryServerSessionStore(final int maxSessions,
+                                      final Executor executor) {
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("maxSessions must be positive");
+        }
+        this.maxSessions = maxSessions;
+        this.executor = executor;
+    }
+
+
+    // ---------------------------------- Methods from AsyncServerSessionStore
+
+
+    @Override
+    public byte[] get(final byte[] sessionId) {
+        final Key key = new Key(sessionId);
+        final Entry e = sessions.get(key);
+        if (e != null) {
+            if (e.expirationTime > System.currentTimeMillis()) {
+                hits.increment();
+                return e.state;
+            }
+            sessions.remove(key, e);
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    public void put(final byte[] sessionId, final byte[] state,
+                    final long expirationTime) {
+        if (sessions.size() >= maxSessions) {
+            evict();
+        }
+        sessions.put(new Key(sessionId), new Entry(state, expirationTime));
+    }
+
+    @Override
+    public void remove(final byte[] sessionId) {
+        sessions.remove(new Key(sessionId));
+    }
+
+    @Override
+    public CompletionStage<byte[]> getAsync(final byte[] sessionId) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(get(sessionId));
+        }
+        final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(get(sessionId));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }
+        });
+        return future;
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * Remove all sessions.
+     */
+    public void clear() {
+        sessions.clear();
+    }
+
+    /**
+     * @return the number of sessions held, expired ones included.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * @return the number of lookups that found a session.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that didn't find a session.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryServerSessionStore[size=" + size()
+                + ", maxSessions=" + maxSessions
+                + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ']';
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    /*
+     * Frees an eighth of the capacity at once, so that the cost of the
+     * scan is shared by the puts that follow.
+     */
+    private void evict() {
+        final int target = maxSessions - Math.max(1, maxSessions >> 3);
+        final long now = System.currentTimeMillis();
+        for (Iterator<Entry> it = sessions.values().iterator(); it.hasNext(); ) {
+            if (it.next().expirationTime <= now) {
+                it.remove();
+            }
+        }
+        for (Iterator<Key> it = sessions.keySet().iterator();
+             it.hasNext() && sessions.size() > target; ) {
+            it.next();
+            it.remove();
+        }
+    }
+
+
+    // ---------------------------------------------------------- Nested Classes
+
+
+    private static final class Key {
+
+        final byte[] id;
+        final int hash;
+
+        Key(final byte[] id) {
+            this.id = id;
+            this.hash = Arrays.hashCode(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Key && Arrays.equals(id, ((Key) o).id);
+        }
+
+    } // END Key
+
+    private static final class Entry {
+
+        final byte[] state;
+        final long expirationTime;
+
+        Entry(final byte[] state, final long expirationTime) {
+            this.state = state;
+            this.expirationTime = expirationTime;
+        }
+
+    } // END Entry
+
+}
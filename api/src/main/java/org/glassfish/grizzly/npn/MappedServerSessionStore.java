@@ -0,0 +1,501 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * A {@link LocalServerSessionStore} kept in a memory-mapped file, so that
+ * servers resume the sessions they created before a restart instead of
+ * facing a storm of full handshakes.
+ *
+ * Sessions are written straight to the mapping: they survive the restart
+ * of the process as soon as they're stored, and {@link #flush()} writes
+ * them to the disk to survive the crash of the host, so should be invoked
+ * periodically and on shutdown (as {@link #close()} does).  Sessions
+ * invalidated with
+ * {@link NegotiationSupport#invalidateSession(javax.net.ssl.SSLSession)}
+ * are removed from the file the same way, so stay revoked across restarts.
+ *
+ * Opening the store only maps the file: no entry is read until the session
+ * is looked up.  The file is a set-associative table, each session id
+ * hashing to a set of a few slots, and every session state is encrypted
+ * and authenticated with AES-GCM under the key of the store.  Entries are
+ * validated when first looked up; those that are expired, were written
+ * with another key or were torn by a crash are misses.  A file with a
+ * different geometry is discarded, in constant time too, by bumping the
+ * generation recorded in its header.
+ *
+ * The key must be the same across restarts, and should be rotated before
+ * 2^32 sessions have been stored.
+ */
+public final class MappedServerSessionStore
+        implements LocalServerSessionStore, Closeable {
+
+    // File header: magic, version, sets, ways, slot size, generation
+    private static final int MAGIC = 0x474E5053;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int GENERATION_OFFSET = 24;
+
+    // Slot layout: generation (0 if free), frequency, id length, id,
+    // expiration time, encrypted state length, nonce, encrypted state
+    private static final int MAX_ID_LENGTH = 32;
+    private static final int FREQUENCY_OFFSET = 8;
+    private static final int ID_OFFSET = 10;
+    private static final int EXPIRATION_OFFSET = ID_OFFSET + MAX_ID_LENGTH;
+    private static final int LENGTH_OFFSET = EXPIRATION_OFFSET + 8;
+    private static final int NONCE_OFFSET = LENGTH_OFFSET + 2;
+    private static final int NONCE_LENGTH = 12;
+    private static final int STATE_OFFSET = NONCE_OFFSET + NONCE_LENGTH;
+    private static final int TAG_LENGTH = 16;
+
+    private static final int WAYS = 4;
+    private static final int MAX_FREQUENCY = 15;
+    private static final int MAX_LOCKS = 64;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+    private final long generation;
+    private final int setMask;
+    private final int slotSize;
+    private final int maxStateLength;
+    private final StampedLock[] locks;
+    private volatile boolean closed;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    /**
+     * Open or create a store of (at least) the specified number of
+     * sessions, of at most
+     * {@link OffHeapServerSessionStore#DEFAULT_MAX_STATE_LENGTH} bytes each.
+     *
+     * @see #MappedServerSessionStore(Path, SecretKey, int, int)
+     */
+    public MappedServerSessionStore(final Path file, final SecretKey key,
+                                    final int maxSessions) throws IOException {
+        this(file, key, maxSessions,
+                OffHeapServerSessionStore.DEFAULT_MAX_STATE_LENGTH);
+    }
+
+    /**
+     * Open or create a store of (at least) the specified number of
+     * sessions.
+     *
+     * @param file the file holding the sessions.
+     * @param key the AES key protecting the sessions.
+     * @param maxSessions the number of sessions held.
+     * @param maxStateLength the maximum length of a session state.
+     */
+    public MappedServerSessionStore(final Path file, final SecretKey key,
+                                    final int maxSessions,
+                                    final int maxStateLength)
+            throws IOException {
+        if (!"AES".equalsIgnoreCase(key.getAlgorithm())) {
+            throw new IllegalArgumentException("AES key required");
+        }
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("maxSessions must be positive");
+        }
+        if (maxStateLength <= 0 || maxStateLength > 0xFFFF - TAG_LENGTH) {
+            throw new IllegalArgumentException("Invalid maxStateLength");
+        }
+        int sets = 1;
+        while (sets * WAYS < maxSessions) {
+            sets <<= 1;
+        }
+        slotSize = STATE_OFFSET + maxStateLength + TAG_LENGTH;
+        final long size = HEADER_SIZE + (long) sets * WAYS * slotSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Store too large");
+        }
+        this.key = key;
+        this.maxStateLength = maxStateLength;
+        setMask = sets - 1;
+        locks = new StampedLock[Math.min(sets, MAX_LOCKS)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new StampedLock();
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final boolean reuse = channel.size() == size;
+            if (!reuse) {
+                channel.truncate(0);
+            }
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (reuse && map.getInt(0) == MAGIC && map.getInt(4) == VERSION
+                    && map.getInt(8) == sets && map.getInt(12) == WAYS
+                    && map.getInt(16) == slotSize
+                    && map.getLong(GENERATION_OFFSET) != 0) {
+                generation = map.getLong(GENERATION_OFFSET);
+            } else {
+                long g;
+                do {
+                    g = random.nextLong();
+                } while (g == 0);
+                generation = g;
+                map.putInt(0, MAGIC);
+                map.putInt(4, VERSION);
+                map.putInt(8, sets);
+                map.putInt(12, WAYS);
+                map.putInt(16, slotSize);
+                map.putLong(GENERATION_OFFSET, generation);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    // ---------------------------------- Methods from LocalServerSessionStore
+
+
+    @Override
+    public byte[] get(final byte[] sessionId) {
+        if (closed || sessionId.length > MAX_ID_LENGTH) {
+            misses.increment();
+            return null;
+        }
+        final long hash = OffHeapServerSessionStore.hash(sessionId);
+        final int set = (int) hash & setMask;
+        final StampedLock lock = locks[set & (locks.length - 1)];
+        int slot;
+        byte[] sealed;
+        long stamp = lock.tryOptimisticRead();
+        slot = find(set, sessionId);
+        sealed = slot >= 0 ? copySealed(slot) : null;
+        if (stamp == 0 || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                slot = find(set, sessionId);
+                sealed = slot >= 0 ? copySealed(slot) : null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        final byte[] state = sealed != null ? open(sealed, sessionId) : null;
+        if (state == null) {
+            misses.increment();
+            return null;
+        }
+        touch(slot);
+        hits.increment();
+        return state;
+    }
+
+    @Override
+    public void put(final byte[] sessionId, final byte[] state,
+                    final long expirationTime) {
+        if (closed || sessionId.length > MAX_ID_LENGTH
+                || state.length > maxStateLength) {
+            return;
+        }
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        final byte[] sealed = seal(state, nonce, sessionId, expirationTime);
+        if (sealed == null) {
+            return;
+        }
+        final long hash = OffHeapServerSessionStore.hash(sessionId);
+        final int set = (int) hash & setMask;
+        final StampedLock lock = locks[set & (locks.length - 1)];
+        final long stamp = lock.writeLock();
+        try {
+            int slot = find(set, sessionId);
+            if (slot < 0) {
+                slot = victim(set);
+            }
+            map.putLong(slot, 0);
+            map.put(slot + FREQUENCY_OFFSET, (byte) 0);
+            map.put(slot + ID_OFFSET - 1, (byte) sessionId.length);
+            for (int i = 0; i < sessionId.length; i++) {
+                map.put(slot + ID_OFFSET + i, sessionId[i]);
+            }
+            map.putLong(slot + EXPIRATION_OFFSET, expirationTime);
+            map.putShort(slot + LENGTH_OFFSET, (short) sealed.length);
+            for (int i = 0; i < NONCE_LENGTH; i++) {
+                map.put(slot + NONCE_OFFSET + i, nonce[i]);
+            }
+            for (int i = 0; i < sealed.length; i++) {
+                map.put(slot + STATE_OFFSET + i, sealed[i]);
+            }
+            map.putLong(slot, generation);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void remove(final byte[] sessionId) {
+        if (closed || sessionId.length > MAX_ID_LENGTH) {
+            return;
+        }
+        final int set = (int) OffHeapServerSessionStore.hash(sessionId) & setMask;
+        final StampedLock lock = locks[set & (locks.length - 1)];
+        final long stamp = lock.writeLock();
+        try {
+            final int slot = find(set, sessionId);
+            if (slot >= 0) {
+                map.putLong(slot, 0);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * Write the sessions to the disk.
+     */
+    public void flush() {
+        if (!closed) {
+            map.force();
+        }
+    }
+
+    /**
+     * Write the sessions to the disk and close the store; sessions are
+     * neither looked up nor stored anymore.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            map.force();
+            closed = true;
+            channel.close();
+        }
+    }
+
+    /**
+     * @return the number of sessions the store can hold.
+     */
+    public int capacity() {
+        return (setMask + 1) * WAYS;
+    }
+
+    /**
+     * @return the number of lookups that found a session.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that didn't find a session.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of sessions evicted to make room for new ones.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedServerSessionStore[capacity=" + capacity()
+                + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ']';
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private int slot(final int set, final int way) {
+        return HEADER_SIZE + (set * WAYS + way) * slotSize;
+    }
+
+    /*
+     * Returns the offset of the slot holding the session, or -1.  May be
+     * invoked by optimistic readers.
+     */
+    private int find(final int set, final byte[] id) {
+        for (int way = 0; way < WAYS; way++) {
+            final int slot = slot(set, way);
+            if (map.getLong(slot) == generation && hasId(slot, id)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean hasId(final int slot, final byte[] id) {
+        if (map.get(slot + ID_OFFSET - 1) != id.length) {
+            return false;
+        }
+        for (int i = 0; i < id.length; i++) {
+            if (map.get(slot + ID_OFFSET + i) != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Returns the expiration time, nonce and encrypted state held by the
+     * slot, or null if it has expired.  May be invoked by optimistic
+     * readers.
+     */
+    private byte[] copySealed(final int slot) {
+        if (map.getLong(slot + EXPIRATION_OFFSET) <= System.currentTimeMillis()) {
+            return null;
+        }
+        final int length = map.getShort(slot + LENGTH_OFFSET) & 0xFFFF;
+        if (length < TAG_LENGTH || STATE_OFFSET + length > slotSize) {
+            return null;
+        }
+        // the expiration time, length and nonce are contiguous
+        final byte[] sealed = new byte[8 + 2 + NONCE_LENGTH + length];
+        for (int i = 0; i < sealed.length; i++) {
+            sealed[i] = map.get(slot + EXPIRATION_OFFSET + i);
+        }
+        return sealed;
+    }
+
+    /*
+     * Returns the slot to overwrite: a free, stale or expired one if
+     * possible, else the least frequently resumed one.  The others age.
+     */
+    private int victim(final int set) {
+        final long now = System.currentTimeMillis();
+        int victim = -1;
+        int lowest = Integer.MAX_VALUE;
+        for (int way = 0; way < WAYS; way++) {
+            final int slot = slot(set, way);
+            if (map.getLong(slot) != generation
+                    || map.getLong(slot + EXPIRATION_OFFSET) <= now) {
+                return slot;
+            }
+            final int frequency = map.get(slot + FREQUENCY_OFFSET);
+            if (frequency < lowest) {
+                lowest = frequency;
+                victim = slot;
+            }
+        }
+        for (int way = 0; way < WAYS; way++) {
+            final int slot = slot(set, way);
+            map.put(slot + FREQUENCY_OFFSET,
+                    (byte) (map.get(slot + FREQUENCY_OFFSET) >> 1));
+        }
+        evictions.increment();
+        return victim;
+    }
+
+    /*
+     * Racy by design: a lost increment only makes the session a bit more
+     * likely to be evicted.
+     */
+    private void touch(final int slot) {
+        final byte frequency = map.get(slot + FREQUENCY_OFFSET);
+        if (frequency < MAX_FREQUENCY) {
+            map.put(slot + FREQUENCY_OFFSET, (byte) (frequency + 1));
+        }
+    }
+
+    private byte[] seal(final byte[] state, final byte[] nonce,
+                        final byte[] id, final long expirationTime) {
+        try {
+            final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key,
+                    new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(aad(id, expirationTime));
+            return cipher.doFinal(state);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /*
+     * Returns the state copied by copySealed(), or null if it wasn't sealed
+     * by this key for this session.
+     */
+    private byte[] open(final byte[] sealed, final byte[] id) {
+        final int offset = 8 + 2 + NONCE_LENGTH;
+        try {
+            final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key,
+                    new GCMParameterSpec(TAG_LENGTH * 8, sealed, 8 + 2,
+                            NONCE_LENGTH));
+            cipher.updateAAD(aad(id, ByteBuffer.wrap(sealed).getLong(0)));
+            return cipher.doFinal(sealed, offset, sealed.length - offset);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    private byte[] aad(final byte[] id, final long expirationTime) {
+        return ByteBuffer.allocate(8 + 8 + id.length)
+                .putLong(generation).putLong(expirationTime).put(id).array();
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.util.Arrays;
+
+/**
+ * The application protocol negotiated for an {@link javax.net.ssl.SSLSession},
+ * see {@link NegotiationSupport#getNegotiatedProtocol(javax.net.ssl.SSLEngine)}.
+ *
+ * For ALPN, the protocol list offered by the client is kept as well, so
+ * that a handshake resuming the session with an identical offer reuses the
+ * protocol without invoking the {@link AlpnServerNegotiator}.
+ */
+public final class NegotiatedProtocol {
+
+    private final NegotiationListener.Mechanism mechanism;
+    private final String protocol;
+    private final byte[] offer;
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    private NegotiatedProtocol(final NegotiationListener.Mechanism mechanism,
+                               final String protocol,
+                               final byte[] offer) {
+        if (protocol == null) {
+            throw new NullPointerException("protocol");
+        }
+        this.mechanism = mechanism;
+        this.protocol = protocol;
+        this.offer = offer;
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * @param protocol the selected protocol.
+     * @param offer the protocol list offered by the client, encoded as
+     *  defined by RFC 7301 without the length prefix, or <code>null</code>
+     *  if unknown.  The array is not copied and must not be modified.
+     */
+    public static NegotiatedProtocol alpn(final String protocol,
+                                          final byte[] offer) {
+        return new NegotiatedProtocol(NegotiationListener.Mechanism.ALPN,
+                protocol, offer);
+    }
+
+    /**
+     * @param protocol the protocol selected by the client.
+     */
+    public static NegotiatedProtocol npn(final String protocol) {
+        return new NegotiatedProtocol(NegotiationListener.Mechanism.NPN,
+                protocol, null);
+    }
+
+    public NegotiationListener.Mechanism getMechanism() {
+        return mechanism;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return <code>true</code> if the protocol has been negotiated with
+     * ALPN, for the specified encoded offer.
+     */
+    public boolean isNegotiatedFor(final byte[] b, final int off, final int len) {
+        if (offer == null || offer.length != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (offer[i] != b[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return mechanism + ": " + protocol
+                + (offer != null ? " offered " + Arrays.toString(offer) : "");
+    }
+
+}
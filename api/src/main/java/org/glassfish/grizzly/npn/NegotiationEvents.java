@@ -0,0 +1,179 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import javax.net.ssl.SSLEngine;
+
+/**
+ * Dispatches events to the registered {@link NegotiationListener}s.  This
+ * class is used by the SSL implementation; every method is a no-op (and the
+ * timing methods don't read the clock) unless a listener is registered.
+ */
+public final class NegotiationEvents {
+
+    private static final NegotiationListener[] NO_LISTENERS =
+            new NegotiationListener[0];
+
+    private static volatile NegotiationListener[] listeners = NO_LISTENERS;
+
+    // Returned by start() when no listener is registered.
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    private NegotiationEvents() {
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * @return <code>true</code> if at least one listener is registered.
+     */
+    public static boolean isEnabled() {
+        return listeners.length != 0;
+    }
+
+    /**
+     * @return the start time of a callback, to be passed to
+     * {@link #callback(SSLEngine, NegotiationListener.Callback, long)}.
+     */
+    public static long start() {
+        return listeners.length != 0 ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * Notify the listeners that a negotiator callback, started at
+     * <code>start</code> (see {@link #start()}), has returned.  Nothing is
+     * notified if no listener was registered when the callback started,
+     * as its duration is unknown.
+     */
+    public static void callback(final SSLEngine engine,
+                                final NegotiationListener.Callback callback,
+                                final long start) {
+        final NegotiationListener[] current = listeners;
+        if (current.length == 0 || start == NOT_STARTED) {
+            return;
+        }
+        final long nanos = System.nanoTime() - start;
+        for (NegotiationListener listener : current) {
+            try {
+                listener.onCallback(engine, callback, nanos);
+            } catch (RuntimeException ignored) {
+                // listeners must not affect the handshake
+            }
+        }
+    }
+
+    /**
+     * Notify the listeners that a client offered ALPN protocols.
+     */
+    public static void protocolsOffered(final SSLEngine engine,
+                                        final byte[] offered,
+                                        final int offset,
+                                        final int length) {
+        final NegotiationListener[] current = listeners;
+        for (NegotiationListener listener : current) {
+            try {
+                listener.onProtocolsOffered(engine, offered, offset, length);
+            } catch (RuntimeException ignored) {
+                // listeners must not affect the handshake
+            }
+        }
+    }
+
+    /**
+     * Notify the listeners that a negotiation has completed.
+     */
+    public static void negotiated(final SSLEngine engine,
+                                  final NegotiationListener.Mechanism mechanism,
+                                  final NegotiationListener.Outcome outcome,
+                                  final String protocol) {
+        final NegotiationListener[] current = listeners;
+        for (NegotiationListener listener : current) {
+            try {
+                listener.onNegotiated(engine, mechanism, outcome, protocol);
+            } catch (RuntimeException ignored) {
+                // listeners must not affect the handshake
+            }
+        }
+    }
+
+
+    // ------------------------------------------------- Package Private Methods
+
+
+    static synchronized void addListener(final NegotiationListener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        final NegotiationListener[] current = listeners;
+        final NegotiationListener[] updated =
+                new NegotiationListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    static synchronized boolean removeListener(final NegotiationListener listener) {
+        final NegotiationListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                if (current.length == 1) {
+                    listeners = NO_LISTENERS;
+                } else {
+                    final NegotiationListener[] updated =
+                            new NegotiationListener[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i,
+                            current.length - i - 1);
+                    listeners = updated;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
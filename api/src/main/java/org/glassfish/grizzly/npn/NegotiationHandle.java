@@ -0,0 +1,271 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+/**
+ * An immutable set of the NPN/ALPN negotiators, and the
+ * {@link ClientHelloInspector}, associated with a single {@code SSLEngine},
+ * {@code SSLContext} or registered globally.  The handle of an engine may
+ * also carry an application defined attachment.
+ *
+ * A handle allows the SSL implementation to resolve all negotiators that
+ * apply to a handshake with a single lookup; see
+ * {@link NegotiationSupport#resolveNegotiators(javax.net.ssl.SSLEngine, javax.net.ssl.SSLSessionContext)}.
+ */
+public final class NegotiationHandle {
+
+    /**
+     * A handle without any negotiators.
+     */
+    public static final NegotiationHandle EMPTY =
+            new NegotiationHandle(null, null, null, null, null, null);
+
+    private final ServerSideNegotiator serverSideNegotiator;
+    private final ClientSideNegotiator clientSideNegotiator;
+    private final AlpnServerNegotiator alpnServerNegotiator;
+    private final AlpnClientNegotiator alpnClientNegotiator;
+    private final ClientHelloInspector clientHelloInspector;
+    private final Object attachment;
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    private NegotiationHandle(final ServerSideNegotiator serverSideNegotiator,
+                              final ClientSideNegotiator clientSideNegotiator,
+                              final AlpnServerNegotiator alpnServerNegotiator,
+                              final AlpnClientNegotiator alpnClientNegotiator,
+                              final ClientHelloInspector clientHelloInspector,
+                              final Object attachment) {
+        this.serverSideNegotiator = serverSideNegotiator;
+        this.clientSideNegotiator = clientSideNegotiator;
+        this.alpnServerNegotiator = alpnServerNegotiator;
+        this.alpnClientNegotiator = alpnClientNegotiator;
+        this.clientHelloInspector = clientHelloInspector;
+        this.attachment = attachment;
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * @return the {@link ServerSideNegotiator}, if any.
+     */
+    public ServerSideNegotiator getServerSideNegotiator() {
+        return serverSideNegotiator;
+    }
+
+    /**
+     * @return the {@link ClientSideNegotiator}, if any.
+     */
+    public ClientSideNegotiator getClientSideNegotiator() {
+        return clientSideNegotiator;
+    }
+
+    /**
+     * @return the {@link AlpnServerNegotiator}, if any.
+     */
+    public AlpnServerNegotiator getAlpnServerNegotiator() {
+        return alpnServerNegotiator;
+    }
+
+    /**
+     * @return the {@link AlpnClientNegotiator}, if any.
+     */
+    public AlpnClientNegotiator getAlpnClientNegotiator() {
+        return alpnClientNegotiator;
+    }
+
+    /**
+     * @return the {@link ClientHelloInspector}, if any.
+     */
+    public ClientHelloInspector getClientHelloInspector() {
+        return clientHelloInspector;
+    }
+
+    /**
+     * @return the attachment, if any.
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    /**
+     * @return a handle identical to this one, but with the specified
+     * {@link ServerSideNegotiator}, <code>null</code> to remove it.
+     */
+    public NegotiationHandle withServerSideNegotiator(final ServerSideNegotiator negotiator) {
+        return negotiator == serverSideNegotiator
+                ? this
+                : create(negotiator, clientSideNegotiator,
+                        alpnServerNegotiator, alpnClientNegotiator,
+                        clientHelloInspector, attachment);
+    }
+
+    /**
+     * @return a handle identical to this one, but with the specified
+     * {@link ClientSideNegotiator}, <code>null</code> to remove it.
+     */
+    public NegotiationHandle withClientSideNegotiator(final ClientSideNegotiator negotiator) {
+        return negotiator == clientSideNegotiator
+                ? this
+                : create(serverSideNegotiator, negotiator,
+                        alpnServerNegotiator, alpnClientNegotiator,
+                        clientHelloInspector, attachment);
+    }
+
+    /**
+     * @return a handle identical to this one, but with the specified
+     * {@link AlpnServerNegotiator}, <code>null</code> to remove it.
+     */
+    public NegotiationHandle withAlpnServerNegotiator(final AlpnServerNegotiator negotiator) {
+        return negotiator == alpnServerNegotiator
+                ? this
+                : create(serverSideNegotiator, clientSideNegotiator,
+                        negotiator, alpnClientNegotiator,
+                        clientHelloInspector, attachment);
+    }
+
+    /**
+     * @return a handle identical to this one, but with the specified
+     * {@link AlpnClientNegotiator}, <code>null</code> to remove it.
+     */
+    public NegotiationHandle withAlpnClientNegotiator(final AlpnClientNegotiator negotiator) {
+        return negotiator == alpnClientNegotiator
+                ? this
+                : create(serverSideNegotiator, clientSideNegotiator,
+                        alpnServerNegotiator, negotiator,
+                        clientHelloInspector, attachment);
+    }
+
+    /**
+     * @return a handle identical to this one, but with the specified
+     * {@link ClientHelloInspector}, <code>null</code> to remove it.
+     */
+    public NegotiationHandle withClientHelloInspector(final ClientHelloInspector inspector) {
+        return inspector == clientHelloInspector
+                ? this
+                : create(serverSideNegotiator, clientSideNegotiator,
+                        alpnServerNegotiator, alpnClientNegotiator,
+                        inspector, attachment);
+    }
+
+    /**
+     * @return a handle identical to this one, but with the specified
+     * attachment.
+     */
+    public NegotiationHandle withAttachment(final Object attachment) {
+        return attachment == this.attachment
+                ? this
+                : create(serverSideNegotiator, clientSideNegotiator,
+                        alpnServerNegotiator, alpnClientNegotiator,
+                        clientHelloInspector, attachment);
+    }
+
+    /**
+     * @return a handle where each negotiator (or inspector) missing from this
+     * handle is taken from <code>defaults</code>.  The attachment is never
+     * taken from the defaults.  No new handle is created if either handle can
+     * be used as is.
+     */
+    public NegotiationHandle withDefaults(final NegotiationHandle defaults) {
+        if (defaults == null || defaults == EMPTY || isComplete()) {
+            return this;
+        }
+        if (this == EMPTY && defaults.attachment == null) {
+            return defaults;
+        }
+        return create(
+                serverSideNegotiator != null ? serverSideNegotiator : defaults.serverSideNegotiator,
+                clientSideNegotiator != null ? clientSideNegotiator : defaults.clientSideNegotiator,
+                alpnServerNegotiator != null ? alpnServerNegotiator : defaults.alpnServerNegotiator,
+                alpnClientNegotiator != null ? alpnClientNegotiator : defaults.alpnClientNegotiator,
+                clientHelloInspector != null ? clientHelloInspector : defaults.clientHelloInspector,
+                attachment);
+    }
+
+    /**
+     * @return <code>true</code> if this handle has no negotiators.
+     */
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    @Override
+    public String toString() {
+        return "NegotiationHandle[serverSide=" + serverSideNegotiator
+                + ", clientSide=" + clientSideNegotiator
+                + ", alpnServer=" + alpnServerNegotiator
+                + ", alpnClient=" + alpnClientNegotiator
+                + ", inspector=" + clientHelloInspector
+                + ", attachment=" + attachment + ']';
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private boolean isComplete() {
+        return serverSideNegotiator != null
+                && clientSideNegotiator != null
+                && alpnServerNegotiator != null
+                && alpnClientNegotiator != null
+                && clientHelloInspector != null;
+    }
+
+    private static NegotiationHandle create(final ServerSideNegotiator serverSideNegotiator,
+                                            final ClientSideNegotiator clientSideNegotiator,
+                                            final AlpnServerNegotiator alpnServerNegotiator,
+                                            final AlpnClientNegotiator alpnClientNegotiator,
+                                            final ClientHelloInspector clientHelloInspector,
+                                            final Object attachment) {
+        if (serverSideNegotiator == null && clientSideNegotiator == null
+                && alpnServerNegotiator == null && alpnClientNegotiator == null
+                && clientHelloInspector == null && attachment == null) {
+            return EMPTY;
+        }
+        return new NegotiationHandle(serverSideNegotiator, clientSideNegotiator,
+                alpnServerNegotiator, alpnClientNegotiator,
+                clientHelloInspector, attachment);
+    }
+
+}
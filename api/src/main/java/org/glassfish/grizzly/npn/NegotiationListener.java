@@ -0,0 +1,148 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import javax.net.ssl.SSLEngine;
+
+/**
+ * <p>
+ *
+ * Receives events describing the NPN/ALPN negotiations of all connections.
+ * Register listeners with
+ * {@link NegotiationSupport#addNegotiationListener(NegotiationListener)}.
+ *
+ * <p>
+ *
+ * Events are delivered synchronously, by the thread processing the
+ * handshake, and only carry primitives, enum constants and data the
+ * handshake already holds, so listeners may be left enabled in production.
+ * Implementations must be thread safe, must be fast, and must not retain
+ * the arrays they are passed.  Exceptions thrown by a listener are ignored.
+ *
+ * <p>
+ */
+public interface NegotiationListener {
+
+    /**
+     * The negotiation mechanism.
+     */
+    enum Mechanism {
+        NPN,
+        ALPN
+    }
+
+    /**
+     * The negotiator callbacks that are timed.
+     */
+    enum Callback {
+        /** {@link AlpnServerNegotiator#selectProtocol(SSLEngine, String[])} and variants */
+        ALPN_SERVER_SELECT_PROTOCOL(Mechanism.ALPN),
+        /** {@link AlpnClientNegotiator#protocolSelected(SSLEngine, String)} */
+        ALPN_CLIENT_PROTOCOL_SELECTED(Mechanism.ALPN),
+        /** {@link ServerSideNegotiator#supportedProtocols(SSLEngine)} */
+        NPN_SERVER_SUPPORTED_PROTOCOLS(Mechanism.NPN),
+        /** {@link ServerSideNegotiator#onSuccess(SSLEngine, String)} */
+        NPN_SERVER_ON_SUCCESS(Mechanism.NPN),
+        /** {@link ServerSideNegotiator#onNoDeal(SSLEngine)} */
+        NPN_SERVER_ON_NO_DEAL(Mechanism.NPN),
+        /** {@link ClientSideNegotiator#selectProtocol(SSLEngine, java.util.LinkedHashSet)} */
+        NPN_CLIENT_SELECT_PROTOCOL(Mechanism.NPN),
+        /** {@link ClientSideNegotiator#onNoDeal(SSLEngine)} */
+        NPN_CLIENT_ON_NO_DEAL(Mechanism.NPN);
+
+        private final Mechanism mechanism;
+
+        Callback(final Mechanism mechanism) {
+            this.mechanism = mechanism;
+        }
+
+        public Mechanism getMechanism() {
+            return mechanism;
+        }
+    }
+
+    /**
+     * The outcome of a negotiation.
+     */
+    enum Outcome {
+        /** A protocol was selected. */
+        SELECTED,
+        /** The peer didn't offer to negotiate. */
+        NOT_OFFERED,
+        /** The negotiation completed without a protocol being selected. */
+        NO_DEAL,
+        /** The handshake was aborted with a no_application_protocol alert. */
+        NO_APPLICATION_PROTOCOL
+    }
+
+    /**
+     * Invoked on the server when a ClientHello offers ALPN protocols.
+     *
+     * @param engine the {@code SSLEngine} for this connection.
+     * @param offered the buffer holding the encoded protocol list offered by
+     *  the client: a concatenation of 8-bit length prefixed protocol names.
+     * @param offset the offset of the list within the buffer.
+     * @param length the length of the list.
+     */
+    void onProtocolsOffered(SSLEngine engine, byte[] offered, int offset, int length);
+
+    /**
+     * Invoked when a negotiator callback returns.
+     *
+     * @param engine the {@code SSLEngine} for this connection.
+     * @param callback the callback invoked.
+     * @param nanos the time spent in the callback, in nanoseconds.
+     */
+    void onCallback(SSLEngine engine, Callback callback, long nanos);
+
+    /**
+     * Invoked when a negotiation completes.
+     *
+     * @param engine the {@code SSLEngine} for this connection.
+     * @param mechanism the negotiation mechanism.
+     * @param outcome the outcome of the negotiation.
+     * @param protocol the selected protocol, if the outcome is
+     *  {@link Outcome#SELECTED}, <code>null</code> otherwise.
+     */
+    void onNegotiated(SSLEngine engine, Mechanism mechanism, Outcome outcome,
+                      String protocol);
+
+}
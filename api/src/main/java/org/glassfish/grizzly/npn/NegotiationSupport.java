@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2013-2017 Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -40,23 +40,71 @@
 
 package org.glassfish.grizzly.npn;
 
+import java.util.concurrent.atomic.AtomicReference;
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
-import java.util.concurrent.ConcurrentHashMap;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 
 /**
  * Utility class to register, obtain, and/or remove Client/Server NPN/ALPN
  * negotiator instances.
+ *
+ * Negotiators are held weakly against their {@link SSLEngine}, so an engine
+ * that is discarded without being explicitly deregistered doesn't leak.
+ * All negotiators of an engine are kept together in a single
+ * {@link NegotiationHandle}, allowing the SSL implementation to resolve them
+ * with a single lookup per handshake.
+ *
+ * Stateless negotiators may instead be registered once as a default for an
+ * {@link SSLContext}, or globally.  A default is used for any engine that has
+ * no negotiator of the same kind registered, which avoids per-connection
+ * registration and removal altogether.
  */
 public class NegotiationSupport {
 
-    private static final ConcurrentHashMap<SSLEngine, ServerSideNegotiator> serverSideNegotiators =
-            new ConcurrentHashMap<SSLEngine, ServerSideNegotiator>(4);
-    private static final ConcurrentHashMap<SSLEngine, ClientSideNegotiator> clientSideNegotiators =
-                new ConcurrentHashMap<SSLEngine, ClientSideNegotiator>(4);
-    private static final ConcurrentHashMap<SSLEngine, AlpnServerNegotiator> alpnServerNegotiators =
-                new ConcurrentHashMap<SSLEngine, AlpnServerNegotiator>(4);
-        private static final ConcurrentHashMap<SSLEngine, AlpnClientNegotiator> alpnClientNegotiators =
-                    new ConcurrentHashMap<SSLEngine, AlpnClientNegotiator>(4);
+    private static final NegotiatorRegistry<SSLEngine, NegotiationHandle> negotiators =
+            new NegotiatorRegistry<SSLEngine, NegotiationHandle>();
+
+    // Defaults bound to an SSLContext.  The context is identified by its
+    // server or client SSLSessionContext, as this is the only identity shared
+    // by the SSLContext and the provider implementation behind it.
+    private static final NegotiatorRegistry<SSLSessionContext, NegotiationHandle> contextNegotiators =
+            new NegotiatorRegistry<SSLSessionContext, NegotiationHandle>(1);
+
+    private static final AtomicReference<NegotiationHandle> defaultNegotiators =
+            new AtomicReference<NegotiationHandle>(NegotiationHandle.EMPTY);
+
+    // The outcome of the negotiations, kept for the lifetime of the session.
+    private static final NegotiatorRegistry<SSLSession, NegotiatedProtocol> negotiatedProtocols =
+            new NegotiatorRegistry<SSLSession, NegotiatedProtocol>();
+
+    // Session tickets received by clients, bound to their SSLSession
+    private static final NegotiatorRegistry<SSLSession, byte[]> sessionTickets =
+            new NegotiatorRegistry<SSLSession, byte[]>();
+
+    // Session ticket keys, bound to the server SSLSessionContext
+    private static final NegotiatorRegistry<SSLSessionContext, SessionTicketKeyProvider> ticketKeyProviders =
+            new NegotiatorRegistry<SSLSessionContext, SessionTicketKeyProvider>(1);
+
+    // Shared session stores, bound to the server SSLSessionContext
+    private static final NegotiatorRegistry<SSLSessionContext, ServerSessionStore> sessionStores =
+            new NegotiatorRegistry<SSLSessionContext, ServerSessionStore>(1);
+
+    // Client session stores, bound to the client SSLSessionContext
+    private static final NegotiatorRegistry<SSLSessionContext, ClientSessionStore> clientSessionStores =
+            new NegotiatorRegistry<SSLSessionContext, ClientSessionStore>(1);
+
+    // Asynchronous signers, bound to the server SSLSessionContext
+    private static final NegotiatorRegistry<SSLSessionContext, AsyncSigner> asyncSigners =
+            new NegotiatorRegistry<SSLSessionContext, AsyncSigner>(1);
+
+    // Trust verification caches, bound to both the server and client
+    // SSLSessionContexts
+    private static final NegotiatorRegistry<SSLSessionContext, TrustVerificationCache> trustVerificationCaches =
+            new NegotiatorRegistry<SSLSessionContext, TrustVerificationCache>(1);
+
+    private static volatile AlpnSelectionCache alpnSelectionCache;
 
     /**
      * Add a {@link ServerSideNegotiator} that will be invoked when handshake
@@ -64,7 +112,7 @@ public class NegotiationSupport {
      */
     public static void addNegotiator(final SSLEngine engine,
                                      final ServerSideNegotiator serverSideNegotiator) {
-        serverSideNegotiators.putIfAbsent(engine, serverSideNegotiator);
+        update(negotiators, engine, Kind.SERVER_SIDE, serverSideNegotiator, true);
     }
 
     /**
@@ -73,7 +121,7 @@ public class NegotiationSupport {
      */
     public static void addNegotiator(final SSLEngine engine,
                                      final ClientSideNegotiator clientSideNegotiator) {
-        clientSideNegotiators.putIfAbsent(engine, clientSideNegotiator);
+        update(negotiators, engine, Kind.CLIENT_SIDE, clientSideNegotiator, true);
     }
 
     /**
@@ -82,7 +130,7 @@ public class NegotiationSupport {
      */
     public static void addNegotiator(final SSLEngine engine,
                                      final AlpnServerNegotiator serverSideNegotiator) {
-        alpnServerNegotiators.putIfAbsent(engine, serverSideNegotiator);
+        update(negotiators, engine, Kind.ALPN_SERVER, serverSideNegotiator, true);
     }
 
     /**
@@ -91,7 +139,78 @@ public class NegotiationSupport {
      */
     public static void addNegotiator(final SSLEngine engine,
                                      final AlpnClientNegotiator clientSideNegotiator) {
-        alpnClientNegotiators.putIfAbsent(engine, clientSideNegotiator);
+        update(negotiators, engine, Kind.ALPN_CLIENT, clientSideNegotiator, true);
+    }
+
+    /**
+     * Add a {@link ClientHelloInspector} that will be invoked when the
+     * specified (server mode) {@link SSLEngine} receives a ClientHello.
+     */
+    public static void addClientHelloInspector(final SSLEngine engine,
+                                               final ClientHelloInspector inspector) {
+        update(negotiators, engine, Kind.CLIENT_HELLO_INSPECTOR, inspector, true);
+    }
+
+    /**
+     * Disassociate the {@link ClientHelloInspector} associated with the
+     * specified {@link SSLEngine}.
+     */
+    public static ClientHelloInspector removeClientHelloInspector(final SSLEngine engine) {
+        return (ClientHelloInspector) update(negotiators, engine,
+                Kind.CLIENT_HELLO_INSPECTOR, null, false);
+    }
+
+    /**
+     * Attach an arbitrary object to the specified {@link SSLEngine}, for
+     * example from a {@link ClientHelloInspector}.  A <code>null</code>
+     * attachment removes the current one.
+     *
+     * The attachment is held strongly by the registry entry of the engine,
+     * which is only weakly keyed by the engine: an attachment referencing
+     * the engine, even indirectly, keeps the entry and the engine alive.
+     * The engine therefore removes the attachment once its handshake
+     * completes or fails.  The attachment of an engine discarded in the
+     * middle of a handshake must not reference it.
+     *
+     * @return the previous attachment, or <code>null</code>.
+     */
+    public static Object setAttachment(final SSLEngine engine,
+                                       final Object attachment) {
+        return update(negotiators, engine, Kind.ATTACHMENT, attachment, false);
+    }
+
+    /**
+     * @return the object attached to the specified {@link SSLEngine}, or
+     * <code>null</code>.
+     */
+    public static Object getAttachment(final SSLEngine engine) {
+        final NegotiationHandle handle = negotiators.get(engine);
+        return handle != null ? handle.getAttachment() : null;
+    }
+
+    /**
+     * Associate all negotiators of the specified {@link NegotiationHandle}
+     * with the specified {@link SSLEngine}, replacing any negotiators
+     * previously associated with it.
+     */
+    public static void setNegotiators(final SSLEngine engine,
+                                      final NegotiationHandle handle) {
+        if (handle == null || handle.isEmpty()) {
+            negotiators.remove(engine);
+        } else {
+            negotiators.put(engine, handle);
+        }
+    }
+
+    /**
+     * Disassociate all negotiators associated with the specified
+     * {@link SSLEngine}.
+     *
+     * @return the {@link NegotiationHandle} previously associated with the
+     * engine, or <code>null</code>.
+     */
+    public static NegotiationHandle removeNegotiators(final SSLEngine engine) {
+        return negotiators.remove(engine);
     }
 
     /**
@@ -99,7 +218,7 @@ public class NegotiationSupport {
      * {@link SSLEngine}.
      */
     public static ClientSideNegotiator removeClientNegotiator(final SSLEngine engine) {
-        return clientSideNegotiators.remove(engine);
+        return (ClientSideNegotiator) update(negotiators, engine, Kind.CLIENT_SIDE, null, false);
     }
 
     /**
@@ -107,7 +226,7 @@ public class NegotiationSupport {
      * {@link SSLEngine}.
      */
     public static AlpnClientNegotiator removeAlpnClientNegotiator(final SSLEngine engine) {
-        return alpnClientNegotiators.remove(engine);
+        return (AlpnClientNegotiator) update(negotiators, engine, Kind.ALPN_CLIENT, null, false);
     }
 
     /**
@@ -115,7 +234,7 @@ public class NegotiationSupport {
      * {@link SSLEngine}.
      */
     public static ServerSideNegotiator removeServerNegotiator(final SSLEngine engine) {
-        return serverSideNegotiators.remove(engine);
+        return (ServerSideNegotiator) update(negotiators, engine, Kind.SERVER_SIDE, null, false);
     }
 
     /**
@@ -123,7 +242,7 @@ public class NegotiationSupport {
      * {@link SSLEngine}.
      */
     public static AlpnServerNegotiator removeAlpnServerNegotiator(final SSLEngine engine) {
-        return alpnServerNegotiators.remove(engine);
+        return (AlpnServerNegotiator) update(negotiators, engine, Kind.ALPN_SERVER, null, false);
     }
 
     /**
@@ -131,7 +250,8 @@ public class NegotiationSupport {
      * {@link SSLEngine}.
      */
     public static ServerSideNegotiator getServerSideNegotiator(final SSLEngine engine) {
-        return serverSideNegotiators.get(engine);
+        final NegotiationHandle handle = negotiators.get(engine);
+        return handle != null ? handle.getServerSideNegotiator() : null;
     }
 
     /**
@@ -139,7 +259,8 @@ public class NegotiationSupport {
      * {@link SSLEngine}.
      */
     public static ClientSideNegotiator getClientSideNegotiator(final SSLEngine engine) {
-        return clientSideNegotiators.get(engine);
+        final NegotiationHandle handle = negotiators.get(engine);
+        return handle != null ? handle.getClientSideNegotiator() : null;
     }
 
     /**
@@ -147,7 +268,8 @@ public class NegotiationSupport {
      * {@link SSLEngine}.
      */
     public static AlpnServerNegotiator getAlpnServerNegotiator(final SSLEngine engine) {
-        return alpnServerNegotiators.get(engine);
+        final NegotiationHandle handle = negotiators.get(engine);
+        return handle != null ? handle.getAlpnServerNegotiator() : null;
     }
 
     /**
@@ -155,7 +277,595 @@ public class NegotiationSupport {
      * {@link SSLEngine}.
      */
     public static AlpnClientNegotiator getAlpnClientNegotiator(final SSLEngine engine) {
-        return alpnClientNegotiators.get(engine);
+        final NegotiationHandle handle = negotiators.get(engine);
+        return handle != null ? handle.getAlpnClientNegotiator() : null;
+    }
+
+    /**
+     * @return the {@link NegotiationHandle} associated with the specified
+     * {@link SSLEngine}, or <code>null</code>.  Defaults are not taken into
+     * account.
+     */
+    public static NegotiationHandle getNegotiators(final SSLEngine engine) {
+        return negotiators.get(engine);
     }
 
+    /**
+     * Resolve all negotiators that apply to a handshake of the specified
+     * {@link SSLEngine}: negotiators registered against the engine take
+     * precedence over the defaults of the {@link SSLContext} owning
+     * <code>sessionContext</code>, which in turn take precedence over the
+     * global defaults.  The context defaults are only looked up if the
+     * engine doesn't provide the negotiators needed by its current mode.
+     *
+     * This method is called by the SSL implementation once per handshake.
+     *
+     * @param engine the {@link SSLEngine} being handshaked.
+     * @param sessionContext the server or client {@link SSLSessionContext},
+     *  matching the engine's mode, of the {@link SSLContext} that created
+     *  the engine.  May be <code>null</code>.
+     *
+     * @return the resolved {@link NegotiationHandle}, never <code>null</code>.
+     */
+    public static NegotiationHandle resolveNegotiators(final SSLEngine engine,
+                                                       final SSLSessionContext sessionContext) {
+        NegotiationHandle handle = negotiators.get(engine);
+        if (handle == null) {
+            handle = NegotiationHandle.EMPTY;
+        }
+        final boolean clientMode = engine.getUseClientMode();
+        if (clientMode
+                ? handle.getClientSideNegotiator() != null
+                    && handle.getAlpnClientNegotiator() != null
+                : handle.getServerSideNegotiator() != null
+                    && handle.getAlpnServerNegotiator() != null
+                    && handle.getClientHelloInspector() != null) {
+            return handle;
+        }
+        if (sessionContext != null) {
+            handle = handle.withDefaults(contextNegotiators.get(sessionContext));
+        }
+        return handle.withDefaults(defaultNegotiators.get());
+    }
+
+    /**
+     * Set the {@link ServerSideNegotiator} used for every {@link SSLEngine}
+     * created by the specified {@link SSLContext} that has no negotiator
+     * registered via {@link #addNegotiator(SSLEngine, ServerSideNegotiator)}.
+     * A <code>null</code> negotiator removes the current default.
+     */
+    public static void setDefaultNegotiator(final SSLContext sslContext,
+                                            final ServerSideNegotiator serverSideNegotiator) {
+        update(contextNegotiators, sslContext.getServerSessionContext(),
+                Kind.SERVER_SIDE, serverSideNegotiator, false);
+    }
+
+    /**
+     * Set the {@link ClientSideNegotiator} used for every {@link SSLEngine}
+     * created by the specified {@link SSLContext} that has no negotiator
+     * registered via {@link #addNegotiator(SSLEngine, ClientSideNegotiator)}.
+     * A <code>null</code> negotiator removes the current default.
+     */
+    public static void setDefaultNegotiator(final SSLContext sslContext,
+                                            final ClientSideNegotiator clientSideNegotiator) {
+        update(contextNegotiators, sslContext.getClientSessionContext(),
+                Kind.CLIENT_SIDE, clientSideNegotiator, false);
+    }
+
+    /**
+     * Set the {@link AlpnServerNegotiator} used for every {@link SSLEngine}
+     * created by the specified {@link SSLContext} that has no negotiator
+     * registered via {@link #addNegotiator(SSLEngine, AlpnServerNegotiator)}.
+     * A <code>null</code> negotiator removes the current default.
+     */
+    public static void setDefaultNegotiator(final SSLContext sslContext,
+                                            final AlpnServerNegotiator serverSideNegotiator) {
+        update(contextNegotiators, sslContext.getServerSessionContext(),
+                Kind.ALPN_SERVER, serverSideNegotiator, false);
+    }
+
+    /**
+     * Set the {@link AlpnClientNegotiator} used for every {@link SSLEngine}
+     * created by the specified {@link SSLContext} that has no negotiator
+     * registered via {@link #addNegotiator(SSLEngine, AlpnClientNegotiator)}.
+     * A <code>null</code> negotiator removes the current default.
+     */
+    public static void setDefaultNegotiator(final SSLContext sslContext,
+                                            final AlpnClientNegotiator clientSideNegotiator) {
+        update(contextNegotiators, sslContext.getClientSessionContext(),
+                Kind.ALPN_CLIENT, clientSideNegotiator, false);
+    }
+
+    /**
+     * Set the {@link ClientHelloInspector} used for every {@link SSLEngine}
+     * created by the specified {@link SSLContext} that has no inspector
+     * registered via {@link #addClientHelloInspector(SSLEngine, ClientHelloInspector)}.
+     * A <code>null</code> inspector removes the current default.
+     */
+    public static void setDefaultClientHelloInspector(final SSLContext sslContext,
+                                                      final ClientHelloInspector inspector) {
+        update(contextNegotiators, sslContext.getServerSessionContext(),
+                Kind.CLIENT_HELLO_INSPECTOR, inspector, false);
+    }
+
+    /**
+     * Set the {@link ClientHelloInspector} used when neither the
+     * {@link SSLEngine} nor its {@link SSLContext} have one associated.
+     * A <code>null</code> inspector removes the current default.
+     */
+    public static void setDefaultClientHelloInspector(final ClientHelloInspector inspector) {
+        updateDefault(Kind.CLIENT_HELLO_INSPECTOR, inspector);
+    }
+
+    /**
+     * Set the {@link ServerSideNegotiator} used when neither the
+     * {@link SSLEngine} nor its {@link SSLContext} have one associated.
+     * A <code>null</code> negotiator removes the current default.
+     */
+    public static void setDefaultNegotiator(final ServerSideNegotiator serverSideNegotiator) {
+        updateDefault(Kind.SERVER_SIDE, serverSideNegotiator);
+    }
+
+    /**
+     * Set the {@link ClientSideNegotiator} used when neither the
+     * {@link SSLEngine} nor its {@link SSLContext} have one associated.
+     * A <code>null</code> negotiator removes the current default.
+     */
+    public static void setDefaultNegotiator(final ClientSideNegotiator clientSideNegotiator) {
+        updateDefault(Kind.CLIENT_SIDE, clientSideNegotiator);
+    }
+
+    /**
+     * Set the {@link AlpnServerNegotiator} used when neither the
+     * {@link SSLEngine} nor its {@link SSLContext} have one associated.
+     * A <code>null</code> negotiator removes the current default.
+     */
+    public static void setDefaultNegotiator(final AlpnServerNegotiator serverSideNegotiator) {
+        updateDefault(Kind.ALPN_SERVER, serverSideNegotiator);
+    }
+
+    /**
+     * Set the {@link AlpnClientNegotiator} used when neither the
+     * {@link SSLEngine} nor its {@link SSLContext} have one associated.
+     * A <code>null</code> negotiator removes the current default.
+     */
+    public static void setDefaultNegotiator(final AlpnClientNegotiator clientSideNegotiator) {
+        updateDefault(Kind.ALPN_CLIENT, clientSideNegotiator);
+    }
+
+    /**
+     * Remove all default negotiators associated with the specified
+     * {@link SSLContext}.
+     */
+    public static void clearDefaultNegotiators(final SSLContext sslContext) {
+        contextNegotiators.remove(sslContext.getServerSessionContext());
+        contextNegotiators.remove(sslContext.getClientSessionContext());
+    }
+
+    /**
+     * @return the default {@link ServerSideNegotiator} for the
+     * {@link SSLContext} owning the specified server {@link SSLSessionContext},
+     * or the global default if the context has none.
+     */
+    public static ServerSideNegotiator getDefaultServerSideNegotiator(final SSLSessionContext serverSessionContext) {
+        return getDefaults(serverSessionContext).getServerSideNegotiator();
+    }
+
+    /**
+     * @return the default {@link ClientSideNegotiator} for the
+     * {@link SSLContext} owning the specified client {@link SSLSessionContext},
+     * or the global default if the context has none.
+     */
+    public static ClientSideNegotiator getDefaultClientSideNegotiator(final SSLSessionContext clientSessionContext) {
+        return getDefaults(clientSessionContext).getClientSideNegotiator();
+    }
+
+    /**
+     * @return the default {@link AlpnServerNegotiator} for the
+     * {@link SSLContext} owning the specified server {@link SSLSessionContext},
+     * or the global default if the context has none.
+     */
+    public static AlpnServerNegotiator getDefaultAlpnServerNegotiator(final SSLSessionContext serverSessionContext) {
+        return getDefaults(serverSessionContext).getAlpnServerNegotiator();
+    }
+
+    /**
+     * @return the default {@link AlpnClientNegotiator} for the
+     * {@link SSLContext} owning the specified client {@link SSLSessionContext},
+     * or the global default if the context has none.
+     */
+    public static AlpnClientNegotiator getDefaultAlpnClientNegotiator(final SSLSessionContext clientSessionContext) {
+        return getDefaults(clientSessionContext).getAlpnClientNegotiator();
+    }
+
+    /**
+     * @return the application protocol negotiated by the handshake of the
+     * engine's current session, or, while a handshake is in progress,
+     * selected for its handshake session.  <code>null</code> if none has
+     * been negotiated.
+     */
+    public static String getNegotiatedProtocol(final SSLEngine engine) {
+        SSLSession session = engine.getHandshakeSession();
+        if (session == null) {
+            session = engine.getSession();
+        }
+        final NegotiatedProtocol negotiated = getNegotiationResult(session);
+        return negotiated != null ? negotiated.getProtocol() : null;
+    }
+
+    /**
+     * @return the {@link NegotiatedProtocol} recorded for the session, or
+     * <code>null</code> if none.
+     */
+    public static NegotiatedProtocol getNegotiationResult(final SSLSession session) {
+        return session != null ? negotiatedProtocols.get(session) : null;
+    }
+
+    /**
+     * Record the outcome of the negotiation of a session.  It is held
+     * weakly against the session.  This method is meant to be invoked by
+     * the SSL implementation.
+     *
+     * @param negotiated the {@link NegotiatedProtocol}, <code>null</code>
+     *  removes the existing one.
+     */
+    public static void setNegotiationResult(final SSLSession session,
+                                            final NegotiatedProtocol negotiated) {
+        if (negotiated != null) {
+            negotiatedProtocols.put(session, negotiated);
+        } else {
+            negotiatedProtocols.remove(session);
+        }
+    }
+
+    /**
+     * @return the RFC 5077 session ticket received for the client session,
+     * or <code>null</code> if none.
+     */
+    public static byte[] getSessionTicket(final SSLSession session) {
+        return session != null ? sessionTickets.get(session) : null;
+    }
+
+    /**
+     * Record the RFC 5077 session ticket received for a client session.  It
+     * is held weakly against the session.  This method is meant to be
+     * invoked by the SSL implementation.
+     *
+     * @param ticket the opaque ticket, <code>null</code> removes the
+     *  existing one.
+     */
+    public static void setSessionTicket(final SSLSession session,
+                                        final byte[] ticket) {
+        if (ticket != null) {
+            sessionTickets.put(session, ticket);
+        } else {
+            sessionTickets.remove(session);
+        }
+    }
+
+    /**
+     * Enable RFC 5077 session tickets for the servers of the specified
+     * {@link SSLContext}, protected by the keys of the specified provider.
+     *
+     * @param provider the {@link SessionTicketKeyProvider}, <code>null</code>
+     *  disables session tickets.
+     */
+    public static void setSessionTicketKeyProvider(final SSLContext sslContext,
+                                                   final SessionTicketKeyProvider provider) {
+        if (provider != null) {
+            ticketKeyProviders.put(sslContext.getServerSessionContext(), provider);
+        } else {
+            ticketKeyProviders.remove(sslContext.getServerSessionContext());
+        }
+    }
+
+    /**
+     * @return the {@link SessionTicketKeyProvider} of the {@link SSLContext}
+     * of the specified server session context, or <code>null</code> if
+     * session tickets are disabled.
+     */
+    public static SessionTicketKeyProvider getSessionTicketKeyProvider(final SSLSessionContext serverSessionContext) {
+        return serverSessionContext != null
+                ? ticketKeyProviders.get(serverSessionContext)
+                : null;
+    }
+
+    /**
+     * Share the sessions of the servers of the specified {@link SSLContext}
+     * through the specified store.
+     *
+     * @param store the {@link ServerSessionStore}, <code>null</code> to only
+     *  use the local session cache.
+     */
+    public static void setServerSessionStore(final SSLContext sslContext,
+                                             final ServerSessionStore store) {
+        if (store != null) {
+            sessionStores.put(sslContext.getServerSessionContext(), store);
+        } else {
+            sessionStores.remove(sslContext.getServerSessionContext());
+        }
+    }
+
+    /**
+     * @return the {@link ServerSessionStore} of the {@link SSLContext} of the
+     * specified server session context, or <code>null</code> if none.
+     */
+    public static ServerSessionStore getServerSessionStore(final SSLSessionContext serverSessionContext) {
+        return serverSessionContext != null
+                ? sessionStores.get(serverSessionContext)
+                : null;
+    }
+
+    /**
+     * Invalidate a server session, and remove it from the
+     * {@link ServerSessionStore} of its {@link SSLContext}, so that no
+     * server sharing the store resumes it anymore.
+     * {@link SSLSession#invalidate()} only drops the session from the local
+     * session cache, from which the store then resumes it.  A session
+     * resumed from a session ticket can still be resumed from the ticket
+     * until the ticket expires.
+     */
+    public static void invalidateSession(final SSLSession session) {
+        final SSLSessionContext context = session.getSessionContext();
+        session.invalidate();
+        final ServerSessionStore store = getServerSessionStore(context);
+        if (store != null && session.getId().length != 0) {
+            store.remove(session.getId());
+        }
+    }
+
+    /**
+     * Keep the sessions of the clients of the specified {@link SSLContext}
+     * in the specified store, in place of the client session cache.
+     *
+     * @param store the {@link ClientSessionStore}, <code>null</code> to use
+     *  the client session cache.
+     */
+    public static void setClientSessionStore(final SSLContext sslContext,
+                                             final ClientSessionStore store) {
+        if (store != null) {
+            clientSessionStores.put(sslContext.getClientSessionContext(), store);
+        } else {
+            clientSessionStores.remove(sslContext.getClientSessionContext());
+        }
+    }
+
+    /**
+     * @return the {@link ClientSessionStore} of the {@link SSLContext} of the
+     * specified client session context, or <code>null</code> if none.
+     */
+    public static ClientSessionStore getClientSessionStore(final SSLSessionContext clientSessionContext) {
+        return clientSessionContext != null
+                ? clientSessionStores.get(clientSessionContext)
+                : null;
+    }
+
+    /**
+     * Sign the ServerKeyExchange messages of the servers of the specified
+     * {@link SSLContext} asynchronously with the specified signer.
+     *
+     * @param signer the {@link AsyncSigner}, <code>null</code> to sign
+     *  synchronously.
+     */
+    public static void setAsyncSigner(final SSLContext sslContext,
+                                      final AsyncSigner signer) {
+        if (signer != null) {
+            asyncSigners.put(sslContext.getServerSessionContext(), signer);
+        } else {
+            asyncSigners.remove(sslContext.getServerSessionContext());
+        }
+    }
+
+    /**
+     * @return the {@link AsyncSigner} of the {@link SSLContext} of the
+     * specified server session context, or <code>null</code> if none.
+     */
+    public static AsyncSigner getAsyncSigner(final SSLSessionContext serverSessionContext) {
+        return serverSessionContext != null
+                ? asyncSigners.get(serverSessionContext)
+                : null;
+    }
+
+    /**
+     * Cache the peer certificate chains accepted by the trust manager of
+     * the specified {@link SSLContext}, for both its servers and clients.
+     *
+     * @param cache the {@link TrustVerificationCache}, <code>null</code>
+     *  to validate every chain.
+     */
+    public static void setTrustVerificationCache(final SSLContext sslContext,
+                                                 final TrustVerificationCache cache) {
+        if (cache != null) {
+            trustVerificationCaches.put(sslContext.getServerSessionContext(), cache);
+            trustVerificationCaches.put(sslContext.getClientSessionContext(), cache);
+        } else {
+            trustVerificationCaches.remove(sslContext.getServerSessionContext());
+            trustVerificationCaches.remove(sslContext.getClientSessionContext());
+        }
+    }
+
+    /**
+     * @return the {@link TrustVerificationCache} of the {@link SSLContext}
+     * of the specified server or client session context, or
+     * <code>null</code> if none.
+     */
+    public static TrustVerificationCache getTrustVerificationCache(final SSLSessionContext sessionContext) {
+        return sessionContext != null
+                ? trustVerificationCaches.get(sessionContext)
+                : null;
+    }
+
+    /**
+     * Install the cache used to memoize the selections of
+     * {@link PureNegotiator} {@link AlpnServerNegotiator}s.  Caching is
+     * disabled by default; a <code>null</code> cache disables it.
+     */
+    public static void setAlpnSelectionCache(final AlpnSelectionCache cache) {
+        alpnSelectionCache = cache;
+    }
+
+    /**
+     * @return the installed {@link AlpnSelectionCache}, or <code>null</code>
+     * if caching is disabled.
+     */
+    public static AlpnSelectionCache getAlpnSelectionCache() {
+        return alpnSelectionCache;
+    }
+
+    /**
+     * Register a {@link NegotiationListener} that will be notified of the
+     * negotiations of all connections.
+     */
+    public static void addNegotiationListener(final NegotiationListener listener) {
+        NegotiationEvents.addListener(listener);
+    }
+
+    /**
+     * Deregister a {@link NegotiationListener}.
+     *
+     * @return <code>true</code> if the listener was registered.
+     */
+    public static boolean removeNegotiationListener(final NegotiationListener listener) {
+        return NegotiationEvents.removeListener(listener);
+    }
+
+    /**
+     * @return the registry backing the per {@link SSLEngine} negotiators.
+     * The returned instance may be used to monitor the registry.
+     */
+    public static NegotiatorRegistry<SSLEngine, NegotiationHandle> getNegotiatorRegistry() {
+        return negotiators;
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private static NegotiationHandle getDefaults(final SSLSessionContext sessionContext) {
+        final NegotiationHandle handle = sessionContext != null
+                ? contextNegotiators.get(sessionContext)
+                : null;
+        return handle != null
+                ? handle.withDefaults(defaultNegotiators.get())
+                : defaultNegotiators.get();
+    }
+
+    /*
+     * Sets (or, if negotiator is null, clears) one kind of negotiator of the
+     * handle associated with the key and returns the previous negotiator of
+     * that kind.  If onlyIfAbsent is true, an existing negotiator is kept.
+     */
+    private static <K> Object update(final NegotiatorRegistry<K, NegotiationHandle> registry,
+                                     final K key,
+                                     final Kind kind,
+                                     final Object negotiator,
+                                     final boolean onlyIfAbsent) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        for (;;) {
+            final NegotiationHandle current = registry.get(key);
+            final NegotiationHandle base = current != null ? current : NegotiationHandle.EMPTY;
+            final Object previous = kind.get(base);
+            if (onlyIfAbsent && previous != null) {
+                return previous;
+            }
+            final NegotiationHandle updated = kind.with(base, negotiator);
+            if (updated == base) {
+                return previous;
+            }
+            if (registry.replace(key, current, updated.isEmpty() ? null : updated)) {
+                return previous;
+            }
+        }
+    }
+
+    private static void updateDefault(final Kind kind, final Object negotiator) {
+        for (;;) {
+            final NegotiationHandle current = defaultNegotiators.get();
+            if (defaultNegotiators.compareAndSet(current, kind.with(current, negotiator))) {
+                return;
+            }
+        }
+    }
+
+
+    // ---------------------------------------------------------- Nested Classes
+
+
+    private enum Kind {
+
+        SERVER_SIDE {
+            @Override
+            Object get(final NegotiationHandle handle) {
+                return handle.getServerSideNegotiator();
+            }
+
+            @Override
+            NegotiationHandle with(final NegotiationHandle handle, final Object negotiator) {
+                return handle.withServerSideNegotiator((ServerSideNegotiator) negotiator);
+            }
+        },
+        CLIENT_SIDE {
+            @Override
+            Object get(final NegotiationHandle handle) {
+                return handle.getClientSideNegotiator();
+            }
+
+            @Override
+            NegotiationHandle with(final NegotiationHandle handle, final Object negotiator) {
+                return handle.withClientSideNegotiator((ClientSideNegotiator) negotiator);
+            }
+        },
+        ALPN_SERVER {
+            @Override
+            Object get(final NegotiationHandle handle) {
+                return handle.getAlpnServerNegotiator();
+            }
+
+            @Override
+            NegotiationHandle with(final NegotiationHandle handle, final Object negotiator) {
+                return handle.withAlpnServerNegotiator((AlpnServerNegotiator) negotiator);
+            }
+        },
+        ALPN_CLIENT {
+            @Override
+            Object get(final NegotiationHandle handle) {
+                return handle.getAlpnClientNegotiator();
+            }
+
+            @Override
+            NegotiationHandle with(final NegotiationHandle handle, final Object negotiator) {
+                return handle.withAlpnClientNegotiator((AlpnClientNegotiator) negotiator);
+            }
+        },
+        CLIENT_HELLO_INSPECTOR {
+            @Override
+            Object get(final NegotiationHandle handle) {
+                return handle.getClientHelloInspector();
+            }
+
+            @Override
+            NegotiationHandle with(final NegotiationHandle handle, final Object inspector) {
+                return handle.withClientHelloInspector((ClientHelloInspector) inspector);
+            }
+        },
+        ATTACHMENT {
+            @Override
+            Object get(final NegotiationHandle handle) {
+                return handle.getAttachment();
+            }
+
+            @Override
+            NegotiationHandle with(final NegotiationHandle handle, final Object attachment) {
+                return handle.withAttachment(attachment);
+            }
+        };
+
+        abstract Object get(NegotiationHandle handle);
+
+        abstract NegotiationHandle with(NegotiationHandle handle, Object negotiator);
+
+    } // END Kind
+
 }
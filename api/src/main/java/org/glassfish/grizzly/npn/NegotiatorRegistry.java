@@ -0,0 +1,453 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A weak, identity keyed registry used by {@link NegotiationSupport} to
+ * associate negotiators with their owners (typically an {@code SSLEngine}).
+ *
+ * Entries are removed automatically once their key has been garbage
+ * collected, so an owner that is never explicitly deregistered won't be
+ * retained by the registry.  The registry is split into stripes; lookups
+ * never lock, and updates only lock the stripe the key hashes to.  The
+ * counters are {@link LongAdder}s, so lookups don't contend on them either.
+ *
+ * The registry keeps live counters that may be used to monitor leaks
+ * ({@link #size()}) and lock contention ({@link #getContentionCount()}).
+ */
+public final class NegotiatorRegistry<K, V> {
+
+    private static final int MAX_STRIPES = 1 << 8;
+    private static final int INITIAL_STRIPE_CAPACITY = 8;
+
+    private final Stripe<K, V>[] stripes;
+    private final int stripeShift;
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    NegotiatorRegistry() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    @SuppressWarnings("unchecked")
+    NegotiatorRegistry(final int concurrencyLevel) {
+        int n = 1;
+        int shift = 0;
+        while (n < concurrencyLevel && n < MAX_STRIPES) {
+            n <<= 1;
+            shift++;
+        }
+        stripes = (Stripe<K, V>[]) new Stripe<?, ?>[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe<K, V>();
+        }
+        stripeShift = 32 - shift;
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * @return the number of entries whose key is still reachable.  Entries
+     *  belonging to collected keys are purged before counting.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.expunge();
+                size += stripe.count;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the total number of lookups performed against this registry.
+     */
+    public long getLookupCount() {
+        long count = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            count += stripe.lookups.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of lookups that found an entry.
+     */
+    public long getHitCount() {
+        long count = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            count += stripe.hits.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of updates that had to wait for another thread
+     *  updating the same stripe.
+     */
+    public long getContentionCount() {
+        long count = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            count += stripe.contended.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of entries that were purged because their key
+     *  was garbage collected before being removed explicitly.
+     */
+    public long getExpungedCount() {
+        long count = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            count += stripe.expunged.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "NegotiatorRegistry[stripes=" + stripes.length
+                + ", size=" + size()
+                + ", lookups=" + getLookupCount()
+                + ", hits=" + getHitCount()
+                + ", contended=" + getContentionCount()
+                + ", expunged=" + getExpungedCount() + ']';
+    }
+
+
+    // ------------------------------------------------- Package Private Methods
+
+
+    V get(final K key) {
+        if (key == null) {
+            return null;
+        }
+        final int hash = hash(key);
+        return stripeFor(hash).get(key, hash);
+    }
+
+    V putIfAbsent(final K key, final V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        final int hash = hash(key);
+        return stripeFor(hash).put(key, hash, value, true);
+    }
+
+    V put(final K key, final V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        final int hash = hash(key);
+        return stripeFor(hash).put(key, hash, value, false);
+    }
+
+    V remove(final K key) {
+        if (key == null) {
+            return null;
+        }
+        final int hash = hash(key);
+        return stripeFor(hash).remove(key, hash);
+    }
+
+    /*
+     * Atomically replaces the value associated with the key if, and only if,
+     * the current value is <code>expected</code> (by identity).  A
+     * <code>null</code> expected value means that no entry may exist, and a
+     * <code>null</code> replacement removes the entry.
+     */
+    boolean replace(final K key, final V expected, final V value) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        final int hash = hash(key);
+        return stripeFor(hash).replace(key, hash, expected, value);
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private Stripe<K, V> stripeFor(final int hash) {
+        return stripeShift == 32 ? stripes[0] : stripes[hash >>> stripeShift];
+    }
+
+    private static int hash(final Object key) {
+        // Spread the identity hash so both the high bits (stripe selection)
+        // and the low bits (bucket selection) are well distributed.
+        int h = System.identityHashCode(key);
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h * 0x9E3779B9;
+    }
+
+
+    // ---------------------------------------------------------- Nested Classes
+
+
+    private static final class Entry<K, V> extends WeakReference<K> {
+
+        final int hash;
+        final V value;
+        final Entry<K, V> next;
+
+        Entry(final K key, final int hash, final V value,
+              final Entry<K, V> next, final ReferenceQueue<K> queue) {
+            super(key, queue);
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+
+    } // END Entry
+
+
+    private static final class Stripe<K, V> {
+
+        final ReentrantLock lock = new ReentrantLock();
+        final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+
+        final LongAdder lookups = new LongAdder();
+        final LongAdder hits = new LongAdder();
+        final LongAdder contended = new LongAdder();
+        final LongAdder expunged = new LongAdder();
+
+        // Bucket chains are immutable; readers walk them without locking.
+        volatile AtomicReferenceArray<Entry<K, V>> table =
+                new AtomicReferenceArray<Entry<K, V>>(INITIAL_STRIPE_CAPACITY);
+
+        // Guarded by lock.
+        int count;
+
+        V get(final K key, final int hash) {
+            lookups.increment();
+            final AtomicReferenceArray<Entry<K, V>> t = table;
+            for (Entry<K, V> e = t.get(hash & (t.length() - 1)); e != null; e = e.next) {
+                if (e.hash == hash && e.get() == key) {
+                    hits.increment();
+                    return e.value;
+                }
+            }
+            return null;
+        }
+
+        V put(final K key, final int hash, final V value, final boolean onlyIfAbsent) {
+            lock();
+            try {
+                expunge();
+                AtomicReferenceArray<Entry<K, V>> t = table;
+                int idx = hash & (t.length() - 1);
+                final Entry<K, V> first = t.get(idx);
+                for (Entry<K, V> e = first; e != null; e = e.next) {
+                    if (e.hash == hash && e.get() == key) {
+                        if (onlyIfAbsent) {
+                            return e.value;
+                        }
+                        final Entry<K, V> head = unlink(first, e);
+                        t.set(idx, new Entry<K, V>(key, hash, value, head, queue));
+                        return e.value;
+                    }
+                }
+                if (count + 1 > (t.length() >> 1) + (t.length() >> 2)) {
+                    t = resize(t);
+                    idx = hash & (t.length() - 1);
+                }
+                t.set(idx, new Entry<K, V>(key, hash, value, t.get(idx), queue));
+                count++;
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        V remove(final K key, final int hash) {
+            lock();
+            try {
+                expunge();
+                final AtomicReferenceArray<Entry<K, V>> t = table;
+                final int idx = hash & (t.length() - 1);
+                final Entry<K, V> first = t.get(idx);
+                for (Entry<K, V> e = first; e != null; e = e.next) {
+                    if (e.hash == hash && e.get() == key) {
+                        t.set(idx, unlink(first, e));
+                        count--;
+                        return e.value;
+                    }
+                }
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean replace(final K key, final int hash,
+                        final V expected, final V value) {
+            lock();
+            try {
+                expunge();
+                AtomicReferenceArray<Entry<K, V>> t = table;
+                int idx = hash & (t.length() - 1);
+                final Entry<K, V> first = t.get(idx);
+                for (Entry<K, V> e = first; e != null; e = e.next) {
+                    if (e.hash == hash && e.get() == key) {
+                        if (e.value != expected) {
+                            return false;
+                        }
+                        final Entry<K, V> head = unlink(first, e);
+                        if (value == null) {
+                            t.set(idx, head);
+                            count--;
+                        } else {
+                            t.set(idx, new Entry<K, V>(key, hash, value, head, queue));
+                        }
+                        return true;
+                    }
+                }
+                if (expected != null) {
+                    return false;
+                }
+                if (value != null) {
+                    if (count + 1 > (t.length() >> 1) + (t.length() >> 2)) {
+                        t = resize(t);
+                        idx = hash & (t.length() - 1);
+                    }
+                    t.set(idx, new Entry<K, V>(key, hash, value, t.get(idx), queue));
+                    count++;
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /*
+         * Must be called while holding the lock.
+         */
+        @SuppressWarnings("unchecked")
+        void expunge() {
+            Entry<K, V> stale;
+            while ((stale = (Entry<K, V>) queue.poll()) != null) {
+                final AtomicReferenceArray<Entry<K, V>> t = table;
+                final int idx = stale.hash & (t.length() - 1);
+                final Entry<K, V> first = t.get(idx);
+                for (Entry<K, V> e = first; e != null; e = e.next) {
+                    if (e == stale) {
+                        t.set(idx, unlink(first, e));
+                        count--;
+                        expunged.increment();
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void lock() {
+            if (!lock.tryLock()) {
+                contended.increment();
+                lock.lock();
+            }
+        }
+
+        /*
+         * Copies the chain preceding the removed entry, as chains are never
+         * mutated in place (readers may still be walking the old one).
+         * Entries whose key has already been collected are dropped while
+         * copying.
+         */
+        private Entry<K, V> unlink(final Entry<K, V> first,
+                                   final Entry<K, V> removed) {
+            Entry<K, V> head = removed.next;
+            for (Entry<K, V> e = first; e != removed; e = e.next) {
+                final K k = e.get();
+                if (k == null) {
+                    // it will show up in the queue again, but as it is no
+                    // longer linked it won't be counted twice.
+                    count--;
+                    expunged.increment();
+                    continue;
+                }
+                head = new Entry<K, V>(k, e.hash, e.value, head, queue);
+            }
+            return head;
+        }
+
+        private AtomicReferenceArray<Entry<K, V>> resize(
+                final AtomicReferenceArray<Entry<K, V>> old) {
+            final int newLength = old.length() << 1;
+            final AtomicReferenceArray<Entry<K, V>> t =
+                    new AtomicReferenceArray<Entry<K, V>>(newLength);
+            int live = 0;
+            for (int i = 0, len = old.length(); i < len; i++) {
+                for (Entry<K, V> e = old.get(i); e != null; e = e.next) {
+                    final K k = e.get();
+                    if (k == null) {
+                        expunged.increment();
+                        continue;
+                    }
+                    final int idx = e.hash & (newLength - 1);
+                    t.set(idx, new Entry<K, V>(k, e.hash, e.value, t.get(idx), queue));
+                    live++;
+                }
+            }
+            count = live;
+            table = t;
+            return t;
+        }
+
+    } // END Stripe
+
+}
@@ -0,0 +1,537 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A {@link LocalServerSessionStore} keeping the session states off the
+ * heap, for servers resuming the sessions of a very large number of
+ * clients.
+ *
+ * The store is split in stripes selected by the hash of the session id.
+ * Each stripe holds its sessions in fixed size slots of a direct buffer,
+ * indexed by an open addressing table of primitive arrays, so the store
+ * adds no objects per session for the garbage collector to trace.
+ * Lookups don't lock: they validate an optimistic read of the stripe, and
+ * only fall back to a read lock if it raced with an update.
+ * Each hit copies the state out of the buffer, so is slower than a hit of
+ * an on-heap cache: the store trades hit latency for a heap that doesn't
+ * grow with the number of sessions, as measured by the
+ * {@code ServerSessionStoreBenchmark} of the benchmarks module.
+ *
+ * Once a stripe is full, the slot to reuse is chosen by a clock sweep
+ * over small per-slot frequency counters: each resumption increments the
+ * counter of the session, each pass of the clock hand decrements it, and
+ * the first expired session or session with a zero count is evicted.
+ * Sessions that are resumed repeatedly thus survive bursts of sessions
+ * that are never resumed, which a plain LRU policy would let flush them.
+ *
+ * Session states longer than the maximum state length aren't stored.
+ */
+public final class OffHeapServerSessionStore implements LocalServerSessionStore {
+
+    /**
+     * The default maximum length of a session state, enough for sessions
+     * with a server name of up to about 200 characters.
+     */
+    public static final int DEFAULT_MAX_STATE_LENGTH = 320;
+
+    // Slot layout: id length, id, expiration time, state length, state
+    private static final int MAX_ID_LENGTH = 32;
+    private static final int EXPIRATION_OFFSET = 1 + MAX_ID_LENGTH;
+    private static final int STATE_LENGTH_OFFSET = EXPIRATION_OFFSET + 8;
+    private static final int STATE_OFFSET = STATE_LENGTH_OFFSET + 2;
+
+    private static final int MAX_STRIPES = 64;
+    private static final int MAX_FREQUENCY = 3;
+
+    private final Stripe[] stripes;
+    private final int stripeShift;
+    private final int maxStateLength;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    /**
+     * Create a store of (at least) the specified number of sessions, of at
+     * most {@link #DEFAULT_MAX_STATE_LENGTH} bytes each.
+     */
+    public OffHeapServerSessionStore(final int maxSessions) {
+        this(maxSessions, DEFAULT_MAX_STATE_LENGTH);
+    }
+
+    /**
+     * Create a store of (at least) the specified number of sessions.
+     *
+     * @param maxSessions the number of sessions held.
+     * @param maxStateLength the maximum length of a session state.
+     */
+    public OffHeapServerSessionStore(final int maxSessions,
+                                     final int maxStateLength) {
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("maxSessions must be positive");
+        }
+        if (maxStateLength <= 0 || maxStateLength > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid maxStateLength");
+        }
+        int n = 1;
+        while (n < MAX_STRIPES && n * 256 < maxSessions) {
+            n <<= 1;
+        }
+        final int slotsPerStripe = (maxSessions + n - 1) / n;
+        if ((long) slotsPerStripe * (STATE_OFFSET + maxStateLength)
+                > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Store too large");
+        }
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe(slotsPerStripe,
+                    STATE_OFFSET + maxStateLength);
+        }
+        stripeShift = 64 - Integer.numberOfTrailingZeros(n);
+        this.maxStateLength = maxStateLength;
+    }
+
+
+    // ---------------------------------- Methods from LocalServerSessionStore
+
+
+    @Override
+    public byte[] get(final byte[] sessionId) {
+        if (sessionId.length > MAX_ID_LENGTH) {
+            misses.increment();
+            return null;
+        }
+        final long hash = hash(sessionId);
+        final byte[] state = stripe(hash).get(sessionId, hash);
+        if (state != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return state;
+    }
+
+    @Override
+    public void put(final byte[] sessionId, final byte[] state,
+                    final long expirationTime) {
+        if (sessionId.length > MAX_ID_LENGTH
+                || state.length > maxStateLength) {
+            return;
+        }
+        final long hash = hash(sessionId);
+        if (stripe(hash).put(sessionId, hash, state, expirationTime)) {
+            evictions.increment();
+        }
+    }
+
+    @Override
+    public void remove(final byte[] sessionId) {
+        if (sessionId.length <= MAX_ID_LENGTH) {
+            final long hash = hash(sessionId);
+            stripe(hash).remove(sessionId, hash);
+        }
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * Remove all sessions.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * @return the number of sessions held, expired ones included.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of sessions the store can hold.
+     */
+    public int capacity() {
+        return stripes.length * stripes[0].capacity;
+    }
+
+    /**
+     * @return the number of lookups that found a session.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that didn't find a session.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of sessions evicted to make room for new ones.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapServerSessionStore[capacity=" + capacity()
+                + ", size=" + size()
+                + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ']';
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private Stripe stripe(final long hash) {
+        return stripes.length == 1
+                ? stripes[0]
+                : stripes[(int) (hash >>> stripeShift)];
+    }
+
+    /*
+     * FNV-1a, then a final mix so that both the high bits (selecting the
+     * stripe) and the low bits (indexing the table) are well distributed.
+     */
+    static long hash(final byte[] id) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : id) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        return h ^ (h >>> 33);
+    }
+
+
+    // ---------------------------------------------------------- Nested Classes
+
+
+    private static final class Stripe {
+
+        final int capacity;
+        final int slotSize;
+        final ByteBuffer slab;
+
+        // slots of the sessions by hash, slot + 1 (0 if empty), and the
+        // hashes they're stored with
+        final int[] table;
+        final long[] tableHashes;
+        final int tableMask;
+
+        // per slot: the hash of the session and its frequency count
+        final long[] slotHashes;
+        final byte[] frequencies;
+
+        // slots freed by removals
+        final int[] freeSlots;
+        int freeCount;
+
+        // slots used at least once, and the clock hand
+        int used;
+        int hand;
+
+        final StampedLock lock = new StampedLock();
+
+        Stripe(final int capacity, final int slotSize) {
+            this.capacity = capacity;
+            this.slotSize = slotSize;
+            slab = ByteBuffer.allocateDirect(capacity * slotSize);
+            int n = 2;
+            while (n < capacity * 2) {
+                n <<= 1;
+            }
+            table = new int[n];
+            tableHashes = new long[n];
+            tableMask = n - 1;
+            slotHashes = new long[capacity];
+            frequencies = new byte[capacity];
+            freeSlots = new int[capacity];
+        }
+
+        byte[] get(final byte[] id, final long hash) {
+            final long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                final int slot = find(id, hash);
+                final byte[] state = slot >= 0 ? read(slot) : null;
+                if (lock.validate(stamp)) {
+                    if (state != null) {
+                        touch(slot);
+                    }
+                    return state;
+                }
+            }
+            final long readStamp = lock.readLock();
+            try {
+                final int slot = find(id, hash);
+                final byte[] state = slot >= 0 ? read(slot) : null;
+                if (state != null) {
+                    touch(slot);
+                }
+                return state;
+            } finally {
+                lock.unlockRead(readStamp);
+            }
+        }
+
+        /*
+         * Returns true if a session has been evicted.
+         */
+        boolean put(final byte[] id, final long hash, final byte[] state,
+                    final long expirationTime) {
+            final long stamp = lock.writeLock();
+            try {
+                boolean evicted = false;
+                int slot = find(id, hash);
+                if (slot < 0) {
+                    if (freeCount > 0) {
+                        slot = freeSlots[--freeCount];
+                    } else if (used < capacity) {
+                        slot = used++;
+                    } else {
+                        slot = evict();
+                        evicted = true;
+                    }
+                    slotHashes[slot] = hash;
+                    frequencies[slot] = 0;
+                    index(slot, hash);
+                }
+                write(slot, id, state, expirationTime);
+                return evicted;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void remove(final byte[] id, final long hash) {
+            final long stamp = lock.writeLock();
+            try {
+                final int slot = find(id, hash);
+                if (slot >= 0) {
+                    unindex(slot);
+                    slab.put(slot * slotSize, (byte) 0);
+                    freeSlots[freeCount++] = slot;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            final long stamp = lock.writeLock();
+            try {
+                Arrays.fill(table, 0);
+                for (int slot = 0; slot < used; slot++) {
+                    slab.put(slot * slotSize, (byte) 0);
+                }
+                freeCount = 0;
+                used = 0;
+                hand = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            final long stamp = lock.readLock();
+            try {
+                return used - freeCount;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /*
+         * Returns the slot of the session, or -1.  May be invoked by
+         * optimistic readers, so it must terminate whatever it reads.
+         */
+        private int find(final byte[] id, final long hash) {
+            for (int i = (int) hash & tableMask, probes = 0;
+                 probes <= tableMask; i = (i + 1) & tableMask, probes++) {
+                final int entry = table[i];
+                if (entry == 0) {
+                    return -1;
+                }
+                if (tableHashes[i] == hash && hasId(entry - 1, id)) {
+                    return entry - 1;
+                }
+            }
+            return -1;
+        }
+
+        private boolean hasId(final int slot, final byte[] id) {
+            final int base = slot * slotSize;
+            if (slab.get(base) != id.length) {
+                return false;
+            }
+            for (int i = 0; i < id.length; i++) {
+                if (slab.get(base + 1 + i) != id[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /*
+         * Returns a copy of the state held by the slot, or null if it has
+         * expired.  May be invoked by optimistic readers.
+         */
+        private byte[] read(final int slot) {
+            final int base = slot * slotSize;
+            if (slab.getLong(base + EXPIRATION_OFFSET)
+                    <= System.currentTimeMillis()) {
+                return null;
+            }
+            final int length = slab.getShort(base + STATE_LENGTH_OFFSET) & 0xFFFF;
+            if (STATE_OFFSET + length > slotSize) {
+                return null;
+            }
+            final byte[] state = new byte[length];
+            for (int i = 0, offset = base + STATE_OFFSET; i < length; i++) {
+                state[i] = slab.get(offset + i);
+            }
+            return state;
+        }
+
+        private void write(final int slot, final byte[] id,
+                           final byte[] state, final long expirationTime) {
+            final int base = slot * slotSize;
+            slab.put(base, (byte) id.length);
+            for (int i = 0; i < id.length; i++) {
+                slab.put(base + 1 + i, id[i]);
+            }
+            slab.putLong(base + EXPIRATION_OFFSET, expirationTime);
+            slab.putShort(base + STATE_LENGTH_OFFSET, (short) state.length);
+            for (int i = 0, offset = base + STATE_OFFSET; i < state.length; i++) {
+                slab.put(offset + i, state[i]);
+            }
+        }
+
+        /*
+         * Racy by design: a lost increment only makes the session a bit
+         * more likely to be evicted.
+         */
+        private void touch(final int slot) {
+            if (frequencies[slot] < MAX_FREQUENCY) {
+                frequencies[slot]++;
+            }
+        }
+
+        /*
+         * Clock sweep: returns the slot of the first session that has
+         * expired or whose frequency count has dropped to zero, having
+         * unindexed it.
+         */
+        private int evict() {
+            final long now = System.currentTimeMillis();
+            for (;;) {
+                final int slot = hand;
+                hand = hand + 1 < capacity ? hand + 1 : 0;
+                if (frequencies[slot] == 0
+                        || slab.getLong(slot * slotSize + EXPIRATION_OFFSET)
+                                <= now) {
+                    unindex(slot);
+                    return slot;
+                }
+                frequencies[slot]--;
+            }
+        }
+
+        private void index(final int slot, final long hash) {
+            int i = (int) hash & tableMask;
+            while (table[i] != 0) {
+                i = (i + 1) & tableMask;
+            }
+            tableHashes[i] = hash;
+            table[i] = slot + 1;
+        }
+
+        /*
+         * Removes the slot from the table, shifting back the entries that
+         * follow it so that no tombstone is needed.
+         */
+        private void unindex(final int slot) {
+            int i = (int) slotHashes[slot] & tableMask;
+            while (table[i] != slot + 1) {
+                i = (i + 1) & tableMask;
+            }
+            for (int j = (i + 1) & tableMask; table[j] != 0;
+                 j = (j + 1) & tableMask) {
+                final int home = (int) tableHashes[j] & tableMask;
+                // move the entry into the hole unless its home lies
+                // cyclically within (i, j]
+                if (i <= j ? home <= i || home > j : home <= i && home > j) {
+                    table[i] = table[j];
+                    tableHashes[i] = tableHashes[j];
+                    i = j;
+                }
+            }
+            table[i] = 0;
+        }
+
+    } // END Stripe
+
+}
@@ -0,0 +1,82 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import javax.net.ssl.SSLEngine;
+
+/**
+ * <p>
+ *
+ * An {@link AlpnServerNegotiator} that selects the protocol from the
+ * encoded protocol list sent by the client, rather than from decoded
+ * protocol names.  The SSL framework uses
+ * {@link #selectProtocol(javax.net.ssl.SSLEngine, byte[], int, int)} in place
+ * of {@link #selectProtocol(javax.net.ssl.SSLEngine, String[])}.
+ * Implementations will typically delegate to an {@link AlpnProtocolMatcher}.
+ *
+ * <p>
+ */
+public interface RawAlpnServerNegotiator extends AlpnServerNegotiator {
+
+    /**
+     * <p>
+     *
+     * Take the necessary actions to declare support for the client protocols
+     * and return the selected protocol.
+     *
+     * <p>
+     *
+     * The buffer must not be modified or retained past this call.
+     *
+     * @param sslEngine the {@code SSLEngine} for this connection.
+     * @param clientProtocols the buffer holding the client's encoded
+     *  <code>protocol_name_list</code>: a concatenation of 8-bit length
+     *  prefixed protocol names.
+     * @param offset the offset of the list within the buffer.
+     * @param length the length of the list.
+     * @return the selected protocol, as a single protocol
+     *  {@link AlpnProtocols}, or <code>null</code> if there is no protocol in
+     *  common.
+     */
+    AlpnProtocols selectProtocol(SSLEngine sslEngine, byte[] clientProtocols,
+                                 int offset, int length);
+
+}
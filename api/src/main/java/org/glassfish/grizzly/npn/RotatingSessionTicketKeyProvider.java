@@ -0,0 +1,138 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+/**
+ * A {@link SessionTicketKeyProvider} holding a bounded list of keys: the
+ * first one encrypts new tickets, and all of them are accepted to decrypt
+ * tickets.  {@link #rotate(SessionTicketKey)} installs a new key, retiring
+ * the oldest one once more than the configured number of keys are held.
+ *
+ * In a cluster, keys are typically generated by a single node or a key
+ * management service and pushed to all nodes with
+ * {@link #setKeys(SessionTicketKey...)}.
+ */
+public final class RotatingSessionTicketKeyProvider
+        implements SessionTicketKeyProvider {
+
+    private static final SessionTicketKey[] NO_KEYS = new SessionTicketKey[0];
+
+    private final int maxKeys;
+    private volatile SessionTicketKey[] keys = NO_KEYS;
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    /**
+     * @param maxKeys the maximum number of keys held, the current one
+     *  included.
+     */
+    public RotatingSessionTicketKeyProvider(final int maxKeys) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys must be positive");
+        }
+        this.maxKeys = maxKeys;
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * Make the specified key the one new tickets are encrypted with.
+     */
+    public synchronized void rotate(final SessionTicketKey key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        final SessionTicketKey[] current = keys;
+        final SessionTicketKey[] updated =
+                new SessionTicketKey[Math.min(maxKeys, current.length + 1)];
+        updated[0] = key;
+        System.arraycopy(current, 0, updated, 1, updated.length - 1);
+        keys = updated;
+    }
+
+    /**
+     * Replace all keys.  The first key encrypts new tickets; keys beyond
+     * the maximum number of keys are ignored.
+     */
+    public synchronized void setKeys(final SessionTicketKey... keys) {
+        final SessionTicketKey[] updated =
+                new SessionTicketKey[Math.min(maxKeys, keys.length)];
+        for (int i = 0; i < updated.length; i++) {
+            if (keys[i] == null) {
+                throw new NullPointerException();
+            }
+            updated[i] = keys[i];
+        }
+        this.keys = updated;
+    }
+
+    /**
+     * @return the keys, the current one first.
+     */
+    public SessionTicketKey[] getKeys() {
+        return keys.clone();
+    }
+
+
+    // ---------------------------------- Methods from SessionTicketKeyProvider
+
+
+    @Override
+    public SessionTicketKey getEncryptionKey() {
+        final SessionTicketKey[] current = keys;
+        return current.length != 0 ? current[0] : null;
+    }
+
+    @Override
+    public SessionTicketKey getDecryptionKey(final byte[] name, final int offset) {
+        for (SessionTicketKey key : keys) {
+            if (key.hasName(name, offset)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+/**
+ * A store of server sessions shared beyond the JVM-local session cache,
+ * for example by the nodes of a cluster.  A store is registered for an
+ * {@link javax.net.ssl.SSLContext} with
+ * {@link NegotiationSupport#setServerSessionStore(javax.net.ssl.SSLContext, ServerSessionStore)}.
+ *
+ * When a client asks to resume a session the local cache doesn't hold,
+ * the store is looked up; sessions created by full handshakes are written
+ * through to the store once the handshake completes.  Sessions are stored
+ * as opaque state, which includes the master secret: backends leaving the
+ * JVM must protect it.  The state doesn't include the peer certificates,
+ * so sessions authenticating the client aren't stored: they can only be
+ * resumed from the local session cache of the server that created them.
+ *
+ * {@link javax.net.ssl.SSLSession#invalidate()} only drops a session from
+ * the local session cache: sessions are removed from the store when they
+ * are invalidated with
+ * {@link NegotiationSupport#invalidateSession(javax.net.ssl.SSLSession)},
+ * or by a fatal handshake or record error.
+ *
+ * Implementations must be thread safe.  Their methods are invoked during
+ * handshakes so must not block; stores backed by remote services should
+ * implement {@link AsyncServerSessionStore}, and write asynchronously.
+ */
+public interface ServerSessionStore {
+
+    /**
+     * @param sessionId the id of the session.
+     *
+     * @return the state of the session, or <code>null</code> if unknown,
+     *  in which case a full handshake is performed, as it is if the lookup
+     *  fails.  The state must not be modified.
+     */
+    byte[] get(byte[] sessionId);
+
+    /**
+     * Store the state of a session.  The arrays are handed over to the
+     * store, the caller doesn't modify them afterwards.
+     *
+     * @param sessionId the id of the session.
+     * @param state the state of the session.
+     * @param expirationTime the time, in milliseconds since the epoch,
+     *  after which the session can't be resumed anymore.
+     */
+    void put(byte[] sessionId, byte[] state, long expirationTime);
+
+    /**
+     * Remove a session, so that it can't be resumed anymore.  Nothing
+     * happens if the session is unknown.
+     *
+     * @param sessionId the id of the session.
+     */
+    void remove(byte[] sessionId);
+
+}
@@ -0,0 +1,148 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A key protecting RFC 5077 session tickets: tickets are encrypted with
+ * AES in CBC mode and authenticated with HMAC-SHA256, and carry the
+ * {@link #getName() name} of the key so that any server holding the key can
+ * decrypt them.
+ *
+ * To resume sessions across a cluster, the same keys must be installed, in
+ * the same order, on all nodes (see {@link RotatingSessionTicketKeyProvider}).
+ */
+public final class SessionTicketKey {
+
+    /**
+     * The length, in bytes, of the name of a key.
+     */
+    public static final int NAME_LENGTH = 16;
+
+    private final byte[] name;
+    private final SecretKey encryptionKey;
+    private final SecretKey macKey;
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    /**
+     * @param name the {@link #NAME_LENGTH} bytes identifying the key.
+     * @param encryptionKey the 16 or 32 bytes of the AES key.
+     * @param macKey the HMAC-SHA256 key, at least 16 bytes.
+     */
+    public SessionTicketKey(final byte[] name,
+                            final byte[] encryptionKey,
+                            final byte[] macKey) {
+        if (name.length != NAME_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Key name must be " + NAME_LENGTH + " bytes long");
+        }
+        if (encryptionKey.length != 16 && encryptionKey.length != 32) {
+            throw new IllegalArgumentException(
+                    "Encryption key must be 16 or 32 bytes long");
+        }
+        if (macKey.length < 16) {
+            throw new IllegalArgumentException(
+                    "MAC key must be at least 16 bytes long");
+        }
+        this.name = name.clone();
+        this.encryptionKey = new SecretKeySpec(encryptionKey, "AES");
+        this.macKey = new SecretKeySpec(macKey, "HmacSHA256");
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * @return a new random key.
+     */
+    public static SessionTicketKey generate(final SecureRandom random) {
+        final byte[] name = new byte[NAME_LENGTH];
+        final byte[] encryptionKey = new byte[16];
+        final byte[] macKey = new byte[32];
+        random.nextBytes(name);
+        random.nextBytes(encryptionKey);
+        random.nextBytes(macKey);
+        return new SessionTicketKey(name, encryptionKey, macKey);
+    }
+
+    public byte[] getName() {
+        return name.clone();
+    }
+
+    /**
+     * @return <code>true</code> if the {@link #NAME_LENGTH} bytes at the
+     * specified offset are the name of this key.
+     */
+    public boolean hasName(final byte[] b, final int offset) {
+        if (b.length - offset < NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < NAME_LENGTH; i++) {
+            if (name[i] != b[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public SecretKey getEncryptionKey() {
+        return encryptionKey;
+    }
+
+    public SecretKey getMacKey() {
+        return macKey;
+    }
+
+    @Override
+    public String toString() {
+        // never expose the key material
+        return "SessionTicketKey" + Arrays.toString(name);
+    }
+
+}
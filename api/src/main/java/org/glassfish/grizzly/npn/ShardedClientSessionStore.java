@@ -0,0 +1,414 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * A {@link ClientSessionStore} for clients talking to many servers.
+ *
+ * Servers (origins) are spread over shards by the hash of their host name
+ * and port, each shard being locked independently and evicting its least
+ * recently used origins.  Each origin holds its own bounded list of
+ * sessions, so that no origin can evict the sessions of the others.  The
+ * most recent valid session is resumed, older ones taking over once it is
+ * invalidated or times out.
+ *
+ * {@link #prewarm(SSLContext, SSLParameters, Collection, Executor, int)}
+ * performs a handshake with each of a list of origins in the background,
+ * so that the first connections to them are abbreviated handshakes.
+ */
+public final class ShardedClientSessionStore implements ClientSessionStore {
+
+    /**
+     * The default maximum number of origins.
+     */
+    public static final int DEFAULT_MAX_ORIGINS = 4096;
+
+    /**
+     * The default maximum number of sessions per origin.
+     */
+    public static final int DEFAULT_MAX_SESSIONS_PER_ORIGIN = 4;
+
+    /**
+     * The default session timeout, in seconds.
+     */
+    public static final int DEFAULT_SESSION_TIMEOUT = 86400;
+
+    private static final int MAX_SHARDS = 64;
+
+    private final Shard[] shards;
+    private final int maxSessionsPerOrigin;
+    private final long sessionTimeoutMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    /**
+     * Create a store with the default limits.
+     */
+    public ShardedClientSessionStore() {
+        this(DEFAULT_MAX_ORIGINS, DEFAULT_MAX_SESSIONS_PER_ORIGIN,
+                DEFAULT_SESSION_TIMEOUT);
+    }
+
+    /**
+     * @param maxOrigins the maximum number of origins, approximately as
+     *  each shard is bounded separately.
+     * @param maxSessionsPerOrigin the maximum number of sessions per origin.
+     * @param sessionTimeout the time, in seconds, after which a session
+     *  isn't resumed anymore; <code>0</code> for no limit.
+     */
+    public ShardedClientSessionStore(final int maxOrigins,
+                                     final int maxSessionsPerOrigin,
+                                     final int sessionTimeout) {
+        if (maxOrigins <= 0 || maxSessionsPerOrigin <= 0) {
+            throw new IllegalArgumentException("Limits must be positive");
+        }
+        if (sessionTimeout < 0) {
+            throw new IllegalArgumentException("Invalid sessionTimeout");
+        }
+        int n = 1;
+        while (n < MAX_SHARDS && n * 64 < maxOrigins) {
+            n <<= 1;
+        }
+        shards = new Shard[n];
+        for (int i = 0; i < n; i++) {
+            shards[i] = new Shard((maxOrigins + n - 1) / n);
+        }
+        this.maxSessionsPerOrigin = maxSessionsPerOrigin;
+        this.sessionTimeoutMillis = sessionTimeout * 1000L;
+    }
+
+
+    // --------------------------------------- Methods from ClientSessionStore
+
+
+    @Override
+    public SSLSession get(final String host, final int port) {
+        if (host == null || port == -1) {
+            return null;
+        }
+        final String origin = origin(host, port);
+        final Shard shard = shard(origin);
+        final long now = System.currentTimeMillis();
+        synchronized (shard) {
+            final Origin sessions = shard.get(origin);
+            if (sessions != null) {
+                final SSLSession session = sessions.get(now);
+                if (session != null) {
+                    hits.increment();
+                    return session;
+                }
+                if (sessions.isEmpty()) {
+                    shard.remove(origin);
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    public void put(final String host, final int port,
+                    final SSLSession session) {
+        if (host == null || port == -1) {
+            return;
+        }
+        final String origin = origin(host, port);
+        final Shard shard = shard(origin);
+        synchronized (shard) {
+            Origin sessions = shard.get(origin);
+            if (sessions == null) {
+                sessions = new Origin();
+                shard.put(origin, sessions);
+            }
+            sessions.put(session);
+        }
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * Perform a handshake with each origin in the background, so that a
+     * session to resume is available.  The store must be registered for the
+     * {@link SSLContext}.  Failures are ignored.
+     *
+     * @param sslContext the context of the clients.
+     * @param sslParameters the parameters of the clients, or
+     *  <code>null</code> for the defaults.  Sessions are only resumed by
+     *  clients using the same endpoint identification algorithm.
+     * @param origins the origins.
+     * @param executor the executor running the handshakes.
+     * @param timeout the connect and read timeout, in milliseconds.
+     *
+     * @return a future completing, once all handshakes are done, with the
+     *  number of origins that have a session to resume.
+     */
+    public CompletableFuture<Integer> prewarm(final SSLContext sslContext,
+                                              final SSLParameters sslParameters,
+                                              final Collection<InetSocketAddress> origins,
+                                              final Executor executor,
+                                              final int timeout) {
+        if (NegotiationSupport.getClientSessionStore(
+                sslContext.getClientSessionContext()) != this) {
+            throw new IllegalStateException(
+                    "Store not registered for the SSLContext");
+        }
+        final CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+        final List<InetSocketAddress> pending =
+                new ArrayList<InetSocketAddress>(origins);
+        if (pending.isEmpty()) {
+            result.complete(0);
+            return result;
+        }
+        final AtomicInteger remaining = new AtomicInteger(pending.size());
+        final AtomicInteger warmed = new AtomicInteger();
+        for (final InetSocketAddress origin : pending) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handshake(sslContext, sslParameters, origin, timeout);
+                        if (hasSession(origin.getHostString(),
+                                origin.getPort())) {
+                            warmed.incrementAndGet();
+                        }
+                    } catch (IOException | RuntimeException ignored) {
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            result.complete(warmed.get());
+                        }
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Remove the sessions of an origin.
+     */
+    public void remove(final String host, final int port) {
+        final String origin = origin(host, port);
+        final Shard shard = shard(origin);
+        synchronized (shard) {
+            shard.remove(origin);
+        }
+    }
+
+    /**
+     * Remove all sessions.
+     */
+    public void clear() {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                shard.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of origins with sessions.
+     */
+    public int getOriginCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                count += shard.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of lookups that found a session.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that didn't find a session.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedClientSessionStore[origins=" + getOriginCount()
+                + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ']';
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private static String origin(final String host, final int port) {
+        return host.toLowerCase(Locale.ENGLISH) + ':' + port;
+    }
+
+    /*
+     * Like get(), without counting a hit or a miss.
+     */
+    private boolean hasSession(final String host, final int port) {
+        final String origin = origin(host, port);
+        final Shard shard = shard(origin);
+        synchronized (shard) {
+            final Origin sessions = shard.get(origin);
+            return sessions != null
+                    && sessions.get(System.currentTimeMillis()) != null;
+        }
+    }
+
+    private Shard shard(final String origin) {
+        int h = origin.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return shards[h & (shards.length - 1)];
+    }
+
+    private static void handshake(final SSLContext sslContext,
+                                  final SSLParameters sslParameters,
+                                  final InetSocketAddress origin,
+                                  final int timeout) throws IOException {
+        final SSLSocket socket =
+                (SSLSocket) sslContext.getSocketFactory().createSocket();
+        try {
+            if (sslParameters != null) {
+                socket.setSSLParameters(sslParameters);
+            }
+            socket.connect(origin.isUnresolved()
+                    ? new InetSocketAddress(origin.getHostString(),
+                            origin.getPort())
+                    : origin, timeout);
+            socket.setSoTimeout(timeout);
+            socket.startHandshake();
+        } finally {
+            socket.close();
+        }
+    }
+
+
+    // ---------------------------------------------------------- Nested Classes
+
+
+    private static final class Shard extends LinkedHashMap<String, Origin> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxOrigins;
+
+        Shard(final int maxOrigins) {
+            super(16, 0.75f, true);
+            this.maxOrigins = maxOrigins;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Origin> eldest) {
+            return size() > maxOrigins;
+        }
+
+    } // END Shard
+
+    /*
+     * The sessions of an origin, most recent first.  Guarded by the shard.
+     */
+    private final class Origin {
+
+        private final SSLSession[] sessions = new SSLSession[maxSessionsPerOrigin];
+        private int size;
+
+        SSLSession get(final long now) {
+            while (size > 0) {
+                final SSLSession session = sessions[0];
+                if (session.isValid() && (sessionTimeoutMillis == 0
+                        || now - session.getCreationTime() < sessionTimeoutMillis)) {
+                    return session;
+                }
+                System.arraycopy(sessions, 1, sessions, 0, --size);
+                sessions[size] = null;
+            }
+            return null;
+        }
+
+        void put(final SSLSession session) {
+            int i = 0;
+            while (i < size && sessions[i] != session) {
+                i++;
+            }
+            if (i == size && size < sessions.length) {
+                size++;
+            }
+            System.arraycopy(sessions, 0, sessions, 1, Math.min(i, size - 1));
+            sessions[0] = session;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+    } // END Origin
+
+}
@@ -0,0 +1,286 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.security.AlgorithmConstraints;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * A bounded cache of the peer certificate chains recently accepted by the
+ * trust manager of an {@link javax.net.ssl.SSLContext}, sparing handshakes
+ * with repeated peers the PKIX path validation done by
+ * {@code checkClientTrusted} on servers requiring client authentication
+ * and by {@code checkServerTrusted} on clients.
+ *
+ * Validations are keyed by a SHA-256 digest of the encoded chain and of
+ * the validation parameters: the authentication type, the protocol
+ * version, the endpoint identification algorithm and peer host, the
+ * requested server names and the local signature algorithms, as well as
+ * by the identity of the trust manager and of the algorithm constraints
+ * of the connection.  Only successful validations are cached, for at most
+ * the configured time to live, and never beyond the expiration of a
+ * certificate of the chain.
+ *
+ * As a cached validation isn't repeated, a certificate revoked in the
+ * meantime is only rejected once the validation expires, unless
+ * {@link #invalidate(X509Certificate)} or {@link #clear()} is called.
+ *
+ * The cache is direct mapped, like {@link AlpnSelectionCache}: lookups
+ * and updates never lock.  Install a cache with
+ * {@link NegotiationSupport#setTrustVerificationCache(javax.net.ssl.SSLContext, TrustVerificationCache)}.
+ */
+public final class TrustVerificationCache {
+
+    /**
+     * The default number of slots.
+     */
+    public static final int DEFAULT_SIZE = 4096;
+
+    /**
+     * The default time to live of validations, in seconds.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 300;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final long timeToLive;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+
+    // ------------------------------------------------------------ Constructors
+
+
+    /**
+     * Create a cache with {@link #DEFAULT_SIZE} slots, keeping validations
+     * for {@link #DEFAULT_TIME_TO_LIVE} seconds.
+     */
+    public TrustVerificationCache() {
+        this(DEFAULT_SIZE, DEFAULT_TIME_TO_LIVE, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Create a cache with (at least) the specified number of slots.
+     *
+     * @param timeToLive how long validations are kept.
+     */
+    public TrustVerificationCache(final int size, final long timeToLive,
+                                  final TimeUnit unit) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be positive");
+        }
+        int n = 1;
+        while (n < size && n < (1 << 20)) {
+            n <<= 1;
+        }
+        slots = new AtomicReferenceArray<Entry>(n);
+        mask = n - 1;
+        this.timeToLive = unit.toMillis(timeToLive);
+    }
+
+
+    // ---------------------------------------------------------- Public Methods
+
+
+    /**
+     * Look up the validation of a chain.  This method is meant to be
+     * invoked by the SSL implementation.
+     *
+     * @param trustManager the trust manager validating the chain.
+     * @param constraints the algorithm constraints of the connection, or
+     *  <code>null</code>.
+     * @param digest the SHA-256 digest of the chain and of the validation
+     *  parameters.
+     *
+     * @return <code>true</code> if the trust manager accepted the chain
+     *  recently.
+     */
+    public boolean isTrusted(final X509TrustManager trustManager,
+                             final AlgorithmConstraints constraints,
+                             final byte[] digest) {
+        final Entry e = slots.get(index(digest));
+        if (e != null && e.matches(trustManager, constraints, digest)) {
+            if (System.currentTimeMillis() < e.expiration) {
+                hits.increment();
+                return true;
+            }
+            slots.compareAndSet(index(digest), e, null);
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Cache that the trust manager accepted the chain.  This method is
+     * meant to be invoked by the SSL implementation.
+     *
+     * @see #isTrusted(X509TrustManager, AlgorithmConstraints, byte[])
+     */
+    public void trusted(final X509TrustManager trustManager,
+                        final AlgorithmConstraints constraints,
+                        final byte[] digest, final X509Certificate[] chain) {
+        long expiration = System.currentTimeMillis() + timeToLive;
+        for (X509Certificate cert : chain) {
+            expiration = Math.min(expiration, cert.getNotAfter().getTime());
+        }
+        slots.set(index(digest), new Entry(trustManager, constraints,
+                digest, chain.clone(), expiration));
+    }
+
+    /**
+     * Remove the validations of the chains including the specified
+     * certificate, for example once it has been revoked.
+     */
+    public void invalidate(final X509Certificate certificate) {
+        for (int i = 0, len = slots.length(); i < len; i++) {
+            final Entry e = slots.get(i);
+            if (e != null && e.includes(certificate)) {
+                slots.compareAndSet(i, e, null);
+            }
+        }
+    }
+
+    /**
+     * Remove all cached validations, for example once the trust material
+     * or revocation settings change.
+     */
+    public void clear() {
+        for (int i = 0, len = slots.length(); i < len; i++) {
+            slots.set(i, null);
+        }
+    }
+
+    /**
+     * @return the number of slots.
+     */
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * @return the time to live of validations, in milliseconds.
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * @return the number of lookups that found a validation.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that didn't find a validation.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "TrustVerificationCache[capacity=" + capacity()
+                + ", timeToLive=" + timeToLive
+                + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ']';
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private int index(final byte[] digest) {
+        return ((digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16
+                | (digest[2] & 0xff) << 8 | (digest[3] & 0xff)) & mask;
+    }
+
+
+    // ---------------------------------------------------------- Nested Classes
+
+
+    private static final class Entry {
+
+        private final X509TrustManager trustManager;
+        private final AlgorithmConstraints constraints;
+        private final byte[] digest;
+        private final X509Certificate[] chain;
+        final long expiration;
+
+        Entry(final X509TrustManager trustManager,
+              final AlgorithmConstraints constraints,
+              final byte[] digest, final X509Certificate[] chain,
+              final long expiration) {
+            this.trustManager = trustManager;
+            this.constraints = constraints;
+            this.digest = digest;
+            this.chain = chain;
+            this.expiration = expiration;
+        }
+
+        boolean matches(final X509TrustManager trustManager,
+                        final AlgorithmConstraints constraints,
+                        final byte[] digest) {
+            return this.trustManager == trustManager
+                    && this.constraints == constraints
+                    && MessageDigest.isEqual(this.digest, digest);
+        }
+
+        boolean includes(final X509Certificate certificate) {
+            for (X509Certificate cert : chain) {
+                if (cert.equals(certificate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
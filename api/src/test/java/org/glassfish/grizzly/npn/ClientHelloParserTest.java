@@ -0,0 +1,344 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.glassfish.grizzly.npn.ClientHelloParser.Result;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ClientHelloParserTest {
+
+    private static final int EXT_SERVER_NAME = 0x0000;
+    private static final int EXT_ALPN = 0x0010;
+    private static final int EXT_SUPPORTED_VERSIONS = 0x002B;
+    private static final int EXT_PADDING = 0x0015;
+
+    private final ClientHelloParser parser = new ClientHelloParser();
+
+
+    // ------------------------------------------------------------ Test Methods
+
+
+    @Test
+    public void parsesClientHello() {
+        final byte[] records = records(clientHello(serverName("Example.com"),
+                alpn("h2", "http/1.1"), supportedVersions(0x0304, 0x0303)),
+                16384);
+        assertEquals(Result.COMPLETE, parser.parse(ByteBuffer.wrap(records)));
+        assertEquals(records.length, parser.getRecordsLength());
+        assertEquals(0x0301, parser.getRecordVersion());
+        assertEquals(0x0303, parser.getProtocolVersion());
+        assertEquals(2, parser.getCipherSuiteCount());
+        assertEquals(0xC02F, parser.getCipherSuite(0));
+        assertEquals("Example.com", parser.getServerName());
+        assertTrue(parser.isServerName("example.COM"));
+        assertEquals(2, parser.getAlpnProtocolCount());
+        assertEquals("http/1.1", parser.getAlpnProtocol(1));
+        assertTrue(parser.isAlpnProtocolOffered("h2"));
+        assertFalse(parser.isAlpnProtocolOffered("h3"));
+        assertEquals(2, parser.getSupportedVersionCount());
+        assertEquals(0x0304, parser.getSupportedVersion(0));
+        assertEquals(3, parser.getExtensionCount());
+        assertEquals(EXT_SERVER_NAME, parser.getExtensionType(0));
+        assertEquals(EXT_ALPN, parser.getExtensionType(1));
+        assertEquals(EXT_SUPPORTED_VERSIONS, parser.getExtensionType(2));
+        assertTrue(parser.hasExtension(EXT_ALPN));
+        assertFalse(parser.hasExtension(EXT_PADDING));
+    }
+
+    @Test
+    public void parsesClientHelloWithoutExtensions() {
+        final byte[] records = records(clientHello(), 16384);
+        assertEquals(Result.COMPLETE, parser.parse(ByteBuffer.wrap(records)));
+        assertEquals(0, parser.getExtensionCount());
+        assertNull(parser.getServerName());
+        assertFalse(parser.isAlpnOffered());
+    }
+
+    @Test
+    public void recordSplitAcrossCalls() {
+        final byte[] records = records(clientHello(serverName("example.com"),
+                alpn("h2")), 16384);
+        checkIncremental(records);
+        assertEquals("example.com", parser.getServerName());
+    }
+
+    @Test
+    public void clientHelloFragmentedOverSeveralRecords() {
+        final byte[] hello = clientHello(serverName("example.com"),
+                alpn("h2", "http/1.1"), padding(300));
+        final byte[] records = records(hello, 64);
+        assertEquals(Result.COMPLETE, parser.parse(ByteBuffer.wrap(records)));
+        assertEquals(records.length, parser.getRecordsLength());
+        assertEquals("example.com", parser.getServerName());
+        assertTrue(parser.isAlpnProtocolOffered("http/1.1"));
+        assertEquals(3, parser.getExtensionCount());
+
+        checkIncremental(records);
+        assertEquals("example.com", parser.getServerName());
+    }
+
+    @Test
+    public void tooManyRecordsAreMalformed() {
+        final byte[] records = records(clientHello(padding(300)), 32);
+        assertEquals(Result.MALFORMED, parser.parse(ByteBuffer.wrap(records)));
+    }
+
+    @Test
+    public void trailingRecordsAreIgnored() {
+        final byte[] hello = records(clientHello(alpn("h2")), 16384);
+        final byte[] records = new byte[hello.length + 10];
+        System.arraycopy(hello, 0, records, 0, hello.length);
+        records[hello.length] = 20;
+        assertEquals(Result.COMPLETE, parser.parse(ByteBuffer.wrap(records)));
+        assertEquals(hello.length, parser.getRecordsLength());
+    }
+
+    @Test
+    public void otherDataIsNotClientHello() {
+        final byte[] records = records(clientHello(), 16384);
+        records[0] = 23;
+        assertEquals(Result.NOT_CLIENT_HELLO, parser.parse(ByteBuffer.wrap(records)));
+        records[0] = 22;
+        records[5] = 2;
+        assertEquals(Result.NOT_CLIENT_HELLO, parser.parse(ByteBuffer.wrap(records)));
+    }
+
+    @Test
+    public void malformedLengths() {
+        // empty record
+        assertMalformed(new byte[] {22, 3, 1, 0, 0});
+
+        // extension longer than the extensions
+        byte[] hello = clientHello(alpn("h2"));
+        hello[hello.length - 6]++;
+        assertMalformed(records(hello, 16384));
+
+        // extensions length not matching the message
+        hello = clientHello(alpn("h2"));
+        hello[hello.length - 10]--;
+        assertMalformed(records(hello, 16384));
+
+        // protocol list length not matching the extension
+        hello = clientHello(alpn("h2"));
+        hello[hello.length - 4]--;
+        assertMalformed(records(hello, 16384));
+
+        // empty protocol name
+        assertMalformed(records(clientHello(alpn("h2", "")), 16384));
+
+        // session id longer than 32 bytes
+        hello = clientHello();
+        hello[4 + 2 + 32] = 33;
+        assertMalformed(records(hello, 16384));
+
+        // message longer than its records can be
+        hello = clientHello();
+        hello[1] = (byte) 0xFF;
+        assertMalformed(records(hello, 16384));
+    }
+
+    @Test
+    public void duplicateExtensionsAreMalformed() {
+        assertMalformed(records(clientHello(alpn("h2"), alpn("http/1.1")), 16384));
+        assertMalformed(records(clientHello(serverName("a.example"),
+                alpn("h2"), serverName("b.example")), 16384));
+        assertMalformed(records(clientHello(padding(1), padding(2)), 16384));
+    }
+
+    @Test
+    public void largeExtensionCount() {
+        // 16000 empty extensions fill a ClientHello of 64 KB
+        final byte[][] extensions = new byte[16000][];
+        for (int i = 0; i < extensions.length; i++) {
+            extensions[i] = extension(0x1000 + i, new byte[0]);
+        }
+        final byte[] records = records(clientHello(extensions), 16384);
+        assertEquals(Result.COMPLETE, parser.parse(ByteBuffer.wrap(records)));
+        assertEquals(16000, parser.getExtensionCount());
+        assertEquals(0x1000 + 15999, parser.getExtensionType(15999));
+        assertTrue(parser.hasExtension(0x1000 + 8000));
+        assertFalse(parser.hasExtension(0x1000 + 16000));
+
+        extensions[15999] = extension(0x1000, new byte[0]);
+        assertMalformed(records(clientHello(extensions), 16384));
+    }
+
+    @Test
+    public void resetForgetsExtensions() {
+        assertEquals(Result.COMPLETE, parser.parse(ByteBuffer.wrap(
+                records(clientHello(alpn("h2"), padding(1)), 16384))));
+        assertTrue(parser.hasExtension(EXT_PADDING));
+        // another buffer resets the parser
+        assertEquals(Result.COMPLETE, parser.parse(ByteBuffer.wrap(
+                records(clientHello(padding(1), alpn("h2")), 16384))));
+        assertEquals(EXT_PADDING, parser.getExtensionType(0));
+        parser.reset();
+        assertEquals(Result.COMPLETE, parser.parse(ByteBuffer.wrap(
+                records(clientHello(alpn("h2")), 16384))));
+        assertFalse(parser.hasExtension(EXT_PADDING));
+        assertEquals(1, parser.getExtensionCount());
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    /*
+     * Makes the records available one byte at a time.
+     */
+    private void checkIncremental(final byte[] records) {
+        final ByteBuffer buffer = ByteBuffer.wrap(records);
+        for (int limit = 0; limit < records.length; limit++) {
+            buffer.limit(limit);
+            assertEquals(Result.UNDERFLOW, parser.parse(buffer));
+        }
+        buffer.limit(records.length);
+        assertEquals(Result.COMPLETE, parser.parse(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    private void assertMalformed(final byte[] records) {
+        assertEquals(Result.MALFORMED, parser.parse(ByteBuffer.wrap(records)));
+    }
+
+    private static byte[] records(final byte[] message, final int fragmentLength) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int pos = 0; pos < message.length; pos += fragmentLength) {
+            final int length = Math.min(fragmentLength, message.length - pos);
+            out.write(22);
+            out.write(3);
+            out.write(1);
+            writeU16(out, length);
+            out.write(message, pos, length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] clientHello(final byte[]... extensions) {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeU16(body, 0x0303);
+        body.write(new byte[32], 0, 32);
+        body.write(0);
+        writeU16(body, 4);
+        writeU16(body, 0xC02F);
+        writeU16(body, 0x009C);
+        body.write(1);
+        body.write(0);
+        if (extensions.length > 0) {
+            final byte[] list = concat(extensions);
+            writeU16(body, list.length);
+            body.write(list, 0, list.length);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(1);
+        out.write(body.size() >> 16);
+        writeU16(out, body.size() & 0xFFFF);
+        out.write(body.toByteArray(), 0, body.size());
+        return out.toByteArray();
+    }
+
+    private static byte[] serverName(final String name) {
+        final byte[] host = name.getBytes(StandardCharsets.US_ASCII);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeU16(out, host.length + 3);
+        out.write(0);
+        writeU16(out, host.length);
+        out.write(host, 0, host.length);
+        return extension(EXT_SERVER_NAME, out.toByteArray());
+    }
+
+    private static byte[] alpn(final String... protocols) {
+        final ByteArrayOutputStream list = new ByteArrayOutputStream();
+        for (String protocol : protocols) {
+            final byte[] name = protocol.getBytes(StandardCharsets.US_ASCII);
+            list.write(name.length);
+            list.write(name, 0, name.length);
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeU16(out, list.size());
+        out.write(list.toByteArray(), 0, list.size());
+        return extension(EXT_ALPN, out.toByteArray());
+    }
+
+    private static byte[] supportedVersions(final int... versions) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(versions.length * 2);
+        for (int version : versions) {
+            writeU16(out, version);
+        }
+        return extension(EXT_SUPPORTED_VERSIONS, out.toByteArray());
+    }
+
+    private static byte[] padding(final int length) {
+        return extension(EXT_PADDING, new byte[length]);
+    }
+
+    private static byte[] extension(final int type, final byte[] data) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeU16(out, type);
+        writeU16(out, data.length);
+        out.write(data, 0, data.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(final byte[]... arrays) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array : arrays) {
+            out.write(array, 0, array.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeU16(final ByteArrayOutputStream out, final int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+}
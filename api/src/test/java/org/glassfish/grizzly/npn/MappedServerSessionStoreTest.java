@@ -0,0 +1,244 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MappedServerSessionStoreTest {
+
+    // A store of 4 sessions has a single set, whose first free slot is
+    // filled first: the encrypted state of the first session stored starts
+    // after the header (64 bytes) and the slot fields (64 bytes)
+    private static final int SESSIONS = 4;
+    private static final int FIRST_STATE_OFFSET = 128;
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+    private Path file;
+    private SecretKey key;
+
+
+    // ------------------------------------------------------------ Test Methods
+
+
+    @Before
+    public void setUp() throws IOException, GeneralSecurityException {
+        file = new File(folder.getRoot(), "sessions").toPath();
+        key = newKey();
+    }
+
+    @Test
+    public void reopeningRestoresSessions() throws IOException {
+        final byte[] a = id();
+        final byte[] b = id();
+        MappedServerSessionStore store =
+                new MappedServerSessionStore(file, key, SESSIONS);
+        store.put(a, state(a), NEVER);
+        store.put(b, state(b), NEVER);
+        store.close();
+
+        store = new MappedServerSessionStore(file, key, SESSIONS);
+        try {
+            assertArrayEquals(state(a), store.get(a));
+            assertArrayEquals(state(b), store.get(b));
+            assertEquals(2, store.getHitCount());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void anotherKeyMisses() throws IOException,
+            GeneralSecurityException {
+        final byte[] id = id();
+        MappedServerSessionStore store =
+                new MappedServerSessionStore(file, key, SESSIONS);
+        store.put(id, state(id), NEVER);
+        store.close();
+
+        store = new MappedServerSessionStore(file, newKey(), SESSIONS);
+        try {
+            assertNull(store.get(id));
+            assertEquals(1, store.getMissCount());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void anotherGeometryMisses() throws IOException {
+        final byte[] id = id();
+        MappedServerSessionStore store =
+                new MappedServerSessionStore(file, key, SESSIONS);
+        store.put(id, state(id), NEVER);
+        store.close();
+
+        // more sessions
+        store = new MappedServerSessionStore(file, key, SESSIONS * 2);
+        try {
+            assertNull(store.get(id));
+            store.put(id, state(id), NEVER);
+        } finally {
+            store.close();
+        }
+
+        // longer states
+        store = new MappedServerSessionStore(file, key, SESSIONS * 2,
+                OffHeapServerSessionStore.DEFAULT_MAX_STATE_LENGTH * 2);
+        try {
+            assertNull(store.get(id));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void removedSessionStaysRemoved() throws IOException {
+        final byte[] a = id();
+        final byte[] b = id();
+        MappedServerSessionStore store =
+                new MappedServerSessionStore(file, key, SESSIONS);
+        store.put(a, state(a), NEVER);
+        store.put(b, state(b), NEVER);
+        store.remove(a);
+        assertNull(store.get(a));
+        store.close();
+
+        store = new MappedServerSessionStore(file, key, SESSIONS);
+        try {
+            assertNull(store.get(a));
+            assertArrayEquals(state(b), store.get(b));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void corruptedSlotMisses() throws IOException {
+        final byte[] a = id();
+        final byte[] b = id();
+        MappedServerSessionStore store =
+                new MappedServerSessionStore(file, key, SESSIONS);
+        store.put(a, state(a), NEVER);
+        store.put(b, state(b), NEVER);
+        store.close();
+
+        final FileChannel channel =
+                FileChannel.open(file, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+        try {
+            final ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, FIRST_STATE_OFFSET);
+            buffer.put(0, (byte) ~buffer.get(0));
+            buffer.rewind();
+            channel.write(buffer, FIRST_STATE_OFFSET);
+        } finally {
+            channel.close();
+        }
+
+        store = new MappedServerSessionStore(file, key, SESSIONS);
+        try {
+            assertNull(store.get(a));
+            assertArrayEquals(state(b), store.get(b));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void closedStoreMisses() throws IOException {
+        final byte[] id = id();
+        final MappedServerSessionStore store =
+                new MappedServerSessionStore(file, key, SESSIONS);
+        store.put(id, state(id), NEVER);
+        store.close();
+        assertNull(store.get(id));
+        store.put(id, state(id), NEVER);
+        store.remove(id);
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private byte[] id() {
+        final byte[] id = new byte[32];
+        random.nextBytes(id);
+        return id;
+    }
+
+    private static byte[] state(final byte[] id) {
+        final byte[] state = new byte[id.length * 2];
+        for (int i = 0; i < state.length; i++) {
+            state[i] = (byte) (id[i % id.length] + i);
+        }
+        return state;
+    }
+
+    private static SecretKey newKey() throws GeneralSecurityException {
+        final KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        return generator.generateKey();
+    }
+
+}
@@ -0,0 +1,303 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class OffHeapServerSessionStoreTest {
+
+    // A store of 8 sessions has a single stripe indexed by a table of 16
+    private static final int SESSIONS = 8;
+    private static final int TABLE_MASK = 15;
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private final Random random = new Random(42);
+
+
+    // ------------------------------------------------------------ Test Methods
+
+
+    @Test
+    public void putGetRemove() {
+        final OffHeapServerSessionStore store =
+                new OffHeapServerSessionStore(SESSIONS);
+        final byte[] id = id(-1);
+        assertNull(store.get(id));
+        store.put(id, state(id), NEVER);
+        assertArrayEquals(state(id), store.get(id));
+        assertEquals(1, store.size());
+        store.remove(id);
+        assertNull(store.get(id));
+        assertEquals(0, store.size());
+        assertEquals(1, store.getHitCount());
+        assertEquals(2, store.getMissCount());
+    }
+
+    @Test
+    public void putReplacesTheSession() {
+        final OffHeapServerSessionStore store =
+                new OffHeapServerSessionStore(SESSIONS);
+        final byte[] id = id(-1);
+        store.put(id, new byte[] {1}, NEVER);
+        store.put(id, new byte[] {2, 3}, NEVER);
+        assertArrayEquals(new byte[] {2, 3}, store.get(id));
+        assertEquals(1, store.size());
+        assertEquals(0, store.getEvictionCount());
+    }
+
+    @Test
+    public void removeShiftsBackAcrossTheEndOfTheTable() {
+        final OffHeapServerSessionStore store =
+                new OffHeapServerSessionStore(SESSIONS);
+        final byte[] c = id(14);
+        final byte[] a1 = id(15);
+        final byte[] a2 = id(15);
+        final byte[] b = id(0);
+        // indexed at 14, 15, then wrapping around to 0 and 1
+        for (byte[] id : new byte[][] {c, a1, a2, b}) {
+            store.put(id, state(id), NEVER);
+        }
+
+        // a2 moves back to 15, then b to its home 0
+        store.remove(a1);
+        assertNull(store.get(a1));
+        assertArrayEquals(state(a2), store.get(a2));
+        assertArrayEquals(state(b), store.get(b));
+        assertArrayEquals(state(c), store.get(c));
+
+        // a2 is at its home, so stays there
+        store.remove(c);
+        assertNull(store.get(c));
+        assertArrayEquals(state(a2), store.get(a2));
+        assertArrayEquals(state(b), store.get(b));
+
+        store.remove(a2);
+        assertNull(store.get(a2));
+        assertArrayEquals(state(b), store.get(b));
+
+        // the freed slots are reused
+        for (byte[] id : new byte[][] {a1, a2, c}) {
+            store.put(id, state(id), NEVER);
+        }
+        for (byte[] id : new byte[][] {c, a1, a2, b}) {
+            assertArrayEquals(state(id), store.get(id));
+        }
+        assertEquals(4, store.size());
+        assertEquals(0, store.getEvictionCount());
+    }
+
+    @Test
+    public void randomOperationsMatchAMap() {
+        checkRandomOperations(SESSIONS, 20000);
+        checkRandomOperations(200, 20000);
+    }
+
+    @Test
+    public void fullStoreEvictsSessionsThatAreNotResumed() {
+        final OffHeapServerSessionStore store =
+                new OffHeapServerSessionStore(SESSIONS);
+        final List<byte[]> ids = fill(store, NEVER);
+        // the first half is resumed twice, so survives a pass of the clock
+        for (int i = 0; i < SESSIONS / 2; i++) {
+            store.get(ids.get(i));
+            store.get(ids.get(i));
+        }
+
+        final List<byte[]> added = new ArrayList<byte[]>();
+        for (int i = 0; i < SESSIONS / 2; i++) {
+            final byte[] id = id(-1);
+            store.put(id, state(id), NEVER);
+            added.add(id);
+        }
+        assertEquals(SESSIONS / 2, store.getEvictionCount());
+        assertEquals(SESSIONS, store.size());
+        for (int i = 0; i < SESSIONS; i++) {
+            if (i < SESSIONS / 2) {
+                assertArrayEquals(state(ids.get(i)), store.get(ids.get(i)));
+            } else {
+                assertNull(store.get(ids.get(i)));
+            }
+        }
+        for (byte[] id : added) {
+            assertArrayEquals(state(id), store.get(id));
+        }
+    }
+
+    @Test
+    public void fullStoreEvictsExpiredSessionsFirst() {
+        final OffHeapServerSessionStore store =
+                new OffHeapServerSessionStore(SESSIONS);
+        final List<byte[]> ids = fill(store, NEVER);
+        final byte[] expired = ids.get(3);
+        store.put(expired, state(expired), System.currentTimeMillis() - 1);
+        assertNull(store.get(expired));
+        for (byte[] id : ids) {
+            store.get(id);
+        }
+
+        final byte[] id = id(-1);
+        store.put(id, state(id), NEVER);
+        assertEquals(1, store.getEvictionCount());
+        assertArrayEquals(state(id), store.get(id));
+        for (byte[] other : ids) {
+            if (other != expired) {
+                assertArrayEquals(state(other), store.get(other));
+            }
+        }
+    }
+
+    @Test
+    public void oversizedSessionsAreNotStored() {
+        final OffHeapServerSessionStore store =
+                new OffHeapServerSessionStore(SESSIONS, 16);
+        final byte[] longId = new byte[33];
+        store.put(longId, new byte[1], NEVER);
+        assertNull(store.get(longId));
+        final byte[] id = id(-1);
+        store.put(id, new byte[17], NEVER);
+        assertNull(store.get(id));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void clearRemovesAllSessions() {
+        final OffHeapServerSessionStore store =
+                new OffHeapServerSessionStore(SESSIONS);
+        final List<byte[]> ids = fill(store, NEVER);
+        store.clear();
+        assertEquals(0, store.size());
+        for (byte[] id : ids) {
+            assertNull(store.get(id));
+        }
+        fill(store, NEVER);
+        assertEquals(0, store.getEvictionCount());
+    }
+
+
+    // --------------------------------------------------------- Private Methods
+
+
+    private void checkRandomOperations(final int sessions, final int count) {
+        final OffHeapServerSessionStore store =
+                new OffHeapServerSessionStore(sessions);
+        final Map<String, byte[]> expected = new HashMap<String, byte[]>();
+        final List<byte[]> ids = new ArrayList<byte[]>();
+        for (int i = 0; i < sessions * 2; i++) {
+            ids.add(id(-1));
+        }
+        for (int i = 0; i < count; i++) {
+            final byte[] id = ids.get(random.nextInt(ids.size()));
+            final String key = Arrays.toString(id);
+            switch (random.nextInt(3)) {
+                case 0:
+                    if (expected.size() < sessions
+                            || expected.containsKey(key)) {
+                        final byte[] state = new byte[random.nextInt(64)];
+                        random.nextBytes(state);
+                        store.put(id, state, NEVER);
+                        expected.put(key, state);
+                    }
+                    break;
+                case 1:
+                    store.remove(id);
+                    expected.remove(key);
+                    break;
+                default:
+                    assertArrayEquals(expected.get(key), store.get(id));
+            }
+        }
+        assertEquals(expected.size(), store.size());
+        for (byte[] id : ids) {
+            assertArrayEquals(expected.get(Arrays.toString(id)), store.get(id));
+        }
+        assertEquals(0, store.getEvictionCount());
+    }
+
+    private List<byte[]> fill(final OffHeapServerSessionStore store,
+                              final long expirationTime) {
+        final List<byte[]> ids = new ArrayList<byte[]>();
+        for (int i = 0; i < SESSIONS; i++) {
+            final byte[] id = id(-1);
+            store.put(id, state(id), expirationTime);
+            ids.add(id);
+        }
+        assertEquals(SESSIONS, store.size());
+        assertEquals(0, store.getEvictionCount());
+        return ids;
+    }
+
+    /*
+     * Returns a random session id indexed at the specified position of the
+     * table of a single stripe store of SESSIONS sessions, or anywhere if
+     * negative.
+     */
+    private byte[] id(final int home) {
+        for (;;) {
+            final byte[] id = new byte[1 + random.nextInt(32)];
+            random.nextBytes(id);
+            if (home < 0 || ((int) OffHeapServerSessionStore.hash(id)
+                    & TABLE_MASK) == home) {
+                return id;
+            }
+        }
+    }
+
+    private static byte[] state(final byte[] id) {
+        final byte[] state = new byte[id.length * 2];
+        for (int i = 0; i < state.length; i++) {
+            state[i] = (byte) (id[i % id.length] + i);
+        }
+        return state;
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import javax.net.ssl.SSLSession;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ShardedClientSessionStoreTest {
+
+    private static final String HOST = "example.com";
+    private static final int PORT = 443;
+
+
+    // ------------------------------------------------------------ Test Methods
+
+
+    @Test
+    public void mostRecentSessionIsResumed() {
+        final ShardedClientSessionStore store =
+                new ShardedClientSessionStore(16, 4, 0);
+        final Session a = new Session();
+        final Session b = new Session();
+        final Session c = new Session();
+        store.put(HOST, PORT, a.session);
+        store.put(HOST, PORT, b.session);
+        store.put(HOST, PORT, c.session);
+        assertSame(c.session, store.get(HOST, PORT));
+
+        // older sessions take over as the recent ones are invalidated
+        c.valid = false;
+        assertSame(b.session, store.get(HOST, PORT));
+        b.valid = false;
+        assertSame(a.session, store.get(HOST, PORT));
+        a.valid = false;
+        assertNull(store.get(HOST, PORT));
+        assertEquals(0, store.getOriginCount());
+        assertEquals(3, store.getHitCount());
+        assertEquals(1, store.getMissCount());
+    }
+
+    @Test
+    public void storedAgainSessionMovesFirst() {
+        final ShardedClientSessionStore store =
+                new ShardedClientSessionStore(16, 4, 0);
+        final Session a = new Session();
+        final Session b = new Session();
+        final Session c = new Session();
+        store.put(HOST, PORT, a.session);
+        store.put(HOST, PORT, b.session);
+        store.put(HOST, PORT, c.session);
+        store.put(HOST, PORT, b.session);
+        assertSame(b.session, store.get(HOST, PORT));
+        b.valid = false;
+        assertSame(c.session, store.get(HOST, PORT));
+        c.valid = false;
+        assertSame(a.session, store.get(HOST, PORT));
+        a.valid = false;
+        assertNull(store.get(HOST, PORT));
+    }
+
+    @Test
+    public void oldestSessionIsDropped() {
+        final ShardedClientSessionStore store =
+                new ShardedClientSessionStore(16, 2, 0);
+        final Session a = new Session();
+        final Session b = new Session();
+        final Session c = new Session();
+        store.put(HOST, PORT, a.session);
+        store.put(HOST, PORT, b.session);
+        store.put(HOST, PORT, c.session);
+        assertSame(c.session, store.get(HOST, PORT));
+        c.valid = false;
+        assertSame(b.session, store.get(HOST, PORT));
+        b.valid = false;
+        assertNull(store.get(HOST, PORT));
+    }
+
+    @Test
+    public void timedOutSessionsAreSkipped() {
+        final ShardedClientSessionStore store =
+                new ShardedClientSessionStore(16, 4, 1);
+        final Session a = new Session();
+        final Session b = new Session();
+        b.creationTime -= 2000;
+        store.put(HOST, PORT, a.session);
+        store.put(HOST, PORT, b.session);
+        assertSame(a.session, store.get(HOST, PORT));
+    }
+
+    @Test
+    public void leastRecentlyUsedOriginIsEvicted() {
+        // a single shard of two origins
+        final ShardedClientSessionStore store =
+                new ShardedClientSessionStore(2, 4, 0);
+        final Session a = new Session();
+        final Session b = new Session();
+        final Session c = new Session();
+        store.put("a", PORT, a.session);
+        store.put("b", PORT, b.session);
+        assertSame(a.session, store.get("a", PORT));
+        store.put("c", PORT, c.session);
+        assertEquals(2, store.getOriginCount());
+        assertSame(a.session, store.get("a", PORT));
+        assertNull(store.get("b", PORT));
+        assertSame(c.session, store.get("c", PORT));
+    }
+
+    @Test
+    public void originsAreCaseInsensitive() {
+        final ShardedClientSessionStore store =
+                new ShardedClientSessionStore();
+        final Session a = new Session();
+        store.put("Example.COM", PORT, a.session);
+        assertSame(a.session, store.get(HOST, PORT));
+        assertNull(store.get(HOST, PORT + 1));
+        store.remove("EXAMPLE.com", PORT);
+        assertNull(store.get(HOST, PORT));
+    }
+
+
+    // ---------------------------------------------------------- Nested Classes
+
+
+    private static final class Session implements InvocationHandler {
+
+        final SSLSession session = (SSLSession) Proxy.newProxyInstance(
+                SSLSession.class.getClassLoader(),
+                new Class<?>[] { SSLSession.class }, this);
+        volatile boolean valid = true;
+        volatile long creationTime = System.currentTimeMillis();
+
+        @Override
+        public Object invoke(final Object proxy, final Method method,
+                             final Object[] args) {
+            final String name = method.getName();
+            if ("isValid".equals(name)) {
+                return valid;
+            } else if ("getCreationTime".equals(name)) {
+                return creationTime;
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("toString".equals(name)) {
+                return "Session@" + Integer.toHexString(
+                        System.identityHashCode(proxy));
+            }
+            throw new UnsupportedOperationException(name);
+        }
+
+    } // END Session
+
+}
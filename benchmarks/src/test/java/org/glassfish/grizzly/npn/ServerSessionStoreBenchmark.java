@@ -0,0 +1,212 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.grizzly.npn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sun.security.util.Cache;
+
+/**
+ * Compares the hit latency of the {@link OffHeapServerSessionStore} with
+ * that of the {@link InMemoryServerSessionStore} and of the
+ * {@link Cache} backing the JDK server session cache, holding the same
+ * number of sessions.  Running with <code>-prof gc</code> reports the
+ * allocation rate and the time spent collecting a heap holding each of
+ * them.
+ *
+ * The JDK cache holds the session states as byte arrays here, not as
+ * session objects, so it retains fewer objects than it does in a server.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ServerSessionStoreBenchmark {
+
+    private static final int ID_LENGTH = 32;
+    private static final long NEVER = Long.MAX_VALUE;
+
+
+    // ---------------------------------------------------------- Benchmarks
+
+
+    @Benchmark
+    public byte[] stockCacheHit(final StockCache cache) {
+        return cache.cache.get(new Key(cache.randomId()));
+    }
+
+    @Benchmark
+    public byte[] inMemoryStoreHit(final InMemoryStore store) {
+        return store.store.get(store.randomId());
+    }
+
+    @Benchmark
+    public byte[] offHeapStoreHit(final OffHeapStore store) {
+        return store.store.get(store.randomId());
+    }
+
+
+    // ---------------------------------------------------------- Nested Classes
+
+
+    @State(Scope.Benchmark)
+    public abstract static class Sessions {
+
+        @Param({"10000", "1000000"})
+        public int sessions;
+
+        @Param("200")
+        public int stateLength;
+
+        byte[][] ids;
+
+        @Setup
+        public void setUp() {
+            final Random random = new Random(42);
+            create();
+            ids = new byte[sessions][ID_LENGTH];
+            for (int i = 0; i < sessions; i++) {
+                random.nextBytes(ids[i]);
+                final byte[] state = new byte[stateLength];
+                random.nextBytes(state);
+                put(ids[i], state);
+            }
+        }
+
+        byte[] randomId() {
+            return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        }
+
+        abstract void create();
+
+        abstract void put(byte[] id, byte[] state);
+
+    }
+
+    public static class StockCache extends Sessions {
+
+        Cache<Key, byte[]> cache;
+
+        @Override
+        void create() {
+            cache = Cache.newSoftMemoryCache(sessions, 0);
+        }
+
+        @Override
+        void put(final byte[] id, final byte[] state) {
+            cache.put(new Key(id), state);
+        }
+
+    }
+
+    public static class InMemoryStore extends Sessions {
+
+        InMemoryServerSessionStore store;
+
+        @Override
+        void create() {
+            store = new InMemoryServerSessionStore(sessions, null);
+        }
+
+        @Override
+        void put(final byte[] id, final byte[] state) {
+            store.put(id, state, NEVER);
+        }
+
+    }
+
+    public static class OffHeapStore extends Sessions {
+
+        OffHeapServerSessionStore store;
+
+        @Override
+        void create() {
+            store = new OffHeapServerSessionStore(sessions, stateLength);
+        }
+
+        @Override
+        void put(final byte[] id, final byte[] state) {
+            store.put(id, state, NEVER);
+        }
+
+    }
+
+    /*
+     * The equivalent of the session id keying the JDK session cache.
+     */
+    static final class Key {
+
+        final byte[] id;
+        final int hash;
+
+        Key(final byte[] id) {
+            this.id = id;
+            hash = Arrays.hashCode(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Key && Arrays.equals(id, ((Key) o).id);
+        }
+
+    }
+
+}
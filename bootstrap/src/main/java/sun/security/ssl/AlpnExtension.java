@@ -42,9 +42,13 @@ package sun.security.ssl;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import javax.net.ssl.SSLException;
+
+import org.glassfish.grizzly.npn.AlpnProtocols;
 
 final class AlpnExtension extends HelloExtension {
 
@@ -58,7 +62,11 @@ final class AlpnExtension extends HelloExtension {
 
     String selectedProtocol;
     String[] protocols;
+    // the encoded protocol list received from the peer, see protocols()
+    byte[] rawProtocols;
     byte[] outData;
+    // pre-encoded protocols, written in place of outData when set
+    AlpnProtocols encodedProtocols;
 
     AlpnExtension(ExtensionType extensionType) {
         super(extensionType);
@@ -71,15 +79,44 @@ final class AlpnExtension extends HelloExtension {
         // - Two bytes for the extension length
         // - Two bytes for the name list length
         // - length of the encoded protocols
-        return 6 + (short) outData.length;
+        return 6 + (short) dataLength();
     }
 
     @Override
     void send(HandshakeOutStream handshakeOutStream) throws IOException {
+        final int dataLength = dataLength();
         handshakeOutStream.putInt16(ID);
-        handshakeOutStream.putInt16(outData.length + 2);
-        handshakeOutStream.putInt16(outData.length);
-        handshakeOutStream.write(outData);
+        handshakeOutStream.putInt16(dataLength + 2);
+        handshakeOutStream.putInt16(dataLength);
+        if (encodedProtocols != null) {
+            encodedProtocols.writeTo(handshakeOutStream);
+        } else {
+            handshakeOutStream.write(outData);
+        }
+    }
+
+    /*
+     * The protocols received from the peer are only decoded on demand.
+     */
+    String[] protocols() {
+        if (protocols == null && rawProtocols != null) {
+            final List<String> list = new ArrayList<>(4);
+            int pos = 0;
+            while (pos < rawProtocols.length) {
+                final int len = rawProtocols[pos++] & 0xFF;
+                // the character encoding currently specified is UTF-8.
+                list.add(new String(rawProtocols, pos, len, StandardCharsets.UTF_8));
+                pos += len;
+            }
+            protocols = list.toArray(new String[list.size()]);
+        }
+        return protocols;
+    }
+
+    private int dataLength() {
+        return encodedProtocols != null
+                ? encodedProtocols.encodedLength()
+                : outData.length;
     }
 
     @Override
@@ -87,7 +124,9 @@ final class AlpnExtension extends HelloExtension {
         return String.format(ALPN_TO_STRING_MSG,
                              ID,
                              ID,
-                             Arrays.toString(protocols),
+                             encodedProtocols != null
+                                     ? encodedProtocols.toString()
+                                     : Arrays.toString(protocols()),
                              selectedProtocol,
                              Debug.toString(outData));
     }
@@ -119,9 +158,13 @@ final class AlpnExtension extends HelloExtension {
             return this;
         }
 
+        Builder protocols(final AlpnProtocols protocols) {
+            extension.encodedProtocols = protocols;
+            return this;
+        }
+
         Builder handshakeIn(final HandshakeInStream in, final int len) {
             this.in = in;
-            // TODO len shouldn't be more than 2^16-1
             this.len = len;
             return this;
         }
@@ -129,26 +172,15 @@ final class AlpnExtension extends HelloExtension {
         AlpnExtension build() throws IOException {
             if (in != null) {
                 if (len > 0) {
-                    final List<String> list = new ArrayList<>(4);
-                    int read = 0;
-                    int newLen = in.getInt16();
-                    while (read != newLen) {
-                        // Draft-03, section 3 states:
-                        //    "Protocols are named by opaque, non-empty byte strings
-                        //     and the list of protocols is serialized as a concatenation
-                        //     of 8-bit length prefixed byte strings."
-                        byte[] protocol = new byte[in.getInt8()];
-                        in.read(protocol);
-                        // the character encoding currently specified is UTF-8.
-                        // TODO, make this lazy.
-                        list.add(new String(protocol, "UTF-8"));
-                        read += protocol.length + 1; // add one for the length prefix
-                    }
-                    extension.protocols = list.toArray(new String[list.size()]);
+                    // Only the structure is checked here, the names are
+                    // decoded lazily (see protocols()).
+                    extension.rawProtocols =
+                            ProtocolNameListDecoder.readAlpn(in, len);
                 } else {
+                    extension.rawProtocols = EMPTY_DATA;
                     extension.protocols = NO_PROTOCOLS;
                 }
-            } else {
+            } else if (extension.encodedProtocols == null) {
                 if (extension.selectedProtocol != null) {
                     final byte[] selectedProtocolBytes =
                             extension.selectedProtocol.getBytes("UTF-8");
@@ -173,7 +205,10 @@ final class AlpnExtension extends HelloExtension {
                                 // protocol is an empty string or greater than 2^8-1.
                             }
                         }
-                        // TODO len of outData shouldn't be more than 2^16-1
+                        if (out.size() > 0xFFFF - 2) {
+                            throw new SSLException(
+                                    "ALPN protocol list too long: " + out.size());
+                        }
                         extension.outData = out.toByteArray();
                     }
                 }
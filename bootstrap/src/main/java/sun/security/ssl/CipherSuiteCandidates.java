@@ -0,0 +1,195 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package sun.security.ssl;
+
+import java.security.AccessController;
+import java.security.AlgorithmConstraints;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import sun.security.action.GetIntegerAction;
+
+import static sun.security.ssl.CipherSuite.KeyExchange.K_DH_ANON;
+import static sun.security.ssl.CipherSuite.KeyExchange.K_ECDH_ANON;
+
+/**
+ * The cipher suites a server may choose for a ClientHello, in order of
+ * preference: those negotiable with the client, permitted for the client
+ * authentication mode, and not restricted by the legacy algorithm
+ * constraints, followed by the legacy ones.
+ *
+ * As clients send few distinct cipher suite lists, candidates are
+ * memoized in a small direct mapped cache, keyed by the suites of the
+ * client, the server's active suites, the protocol version, the cipher
+ * suite order and whether client authentication is required.  The cache
+ * size may be set with
+ * <code>org.glassfish.grizzly.npn.cipherSuiteCacheSize</code>, 0 to
+ * disable it.
+ */
+final class CipherSuiteCandidates {
+
+    private static final int CACHE_SIZE = Math.max(0,
+            AccessController.doPrivileged(new GetIntegerAction(
+                    "org.glassfish.grizzly.npn.cipherSuiteCacheSize", 64)));
+
+    private static final int PREFER_LOCAL = 1;
+    private static final int CLIENT_AUTH_REQUIRED = 2;
+
+    private static final AtomicReferenceArray<CipherSuiteCandidates> cache =
+            new AtomicReferenceArray<CipherSuiteCandidates>(
+                    Integer.highestOneBit(Math.max(1, CACHE_SIZE)));
+
+    private final int hash;
+    private final int[] clientSuites;
+    private final int[] activeSuites;
+    private final int version;
+    private final int flags;
+
+    // the standard candidates, then the legacy ones
+    final CipherSuite[] suites;
+    final int legacyIndex;
+
+    private CipherSuiteCandidates(int hash, int[] clientSuites,
+                                  int[] activeSuites, int version, int flags,
+                                  CipherSuite[] suites, int legacyIndex) {
+        this.hash = hash;
+        this.clientSuites = clientSuites;
+        this.activeSuites = activeSuites;
+        this.version = version;
+        this.flags = flags;
+        this.suites = suites;
+        this.legacyIndex = legacyIndex;
+    }
+
+    /*
+     * Returns the candidates for the suites of the client.
+     */
+    static CipherSuiteCandidates get(CipherSuiteList clientSuites,
+            CipherSuiteList activeSuites, ProtocolVersion protocolVersion,
+            boolean preferLocalCipherSuites, boolean clientAuthRequired,
+            AlgorithmConstraints legacyConstraints) {
+        final int flags = (preferLocalCipherSuites ? PREFER_LOCAL : 0)
+                | (clientAuthRequired ? CLIENT_AUTH_REQUIRED : 0);
+        if (CACHE_SIZE == 0) {
+            return select(clientSuites, activeSuites, 0, null, null,
+                    protocolVersion, flags, legacyConstraints);
+        }
+        final int[] clientIds = ids(clientSuites);
+        final int[] activeIds = ids(activeSuites);
+        int h = Arrays.hashCode(clientIds);
+        h = 31 * h + Arrays.hashCode(activeIds);
+        h = 31 * h + protocolVersion.v;
+        h = 31 * h + flags;
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+
+        final int index = h & (cache.length() - 1);
+        final CipherSuiteCandidates cached = cache.get(index);
+        if (cached != null && cached.hash == h
+                && cached.version == protocolVersion.v
+                && cached.flags == flags
+                && Arrays.equals(cached.clientSuites, clientIds)
+                && Arrays.equals(cached.activeSuites, activeIds)) {
+            return cached;
+        }
+        final CipherSuiteCandidates candidates = select(clientSuites,
+                activeSuites, h, clientIds, activeIds, protocolVersion, flags,
+                legacyConstraints);
+        cache.set(index, candidates);
+        return candidates;
+    }
+
+    private static CipherSuiteCandidates select(CipherSuiteList clientSuites,
+            CipherSuiteList activeSuites, int hash, int[] clientIds,
+            int[] activeIds, ProtocolVersion protocolVersion, int flags,
+            AlgorithmConstraints legacyConstraints) {
+        CipherSuiteList prefered;
+        CipherSuiteList proposed;
+        if ((flags & PREFER_LOCAL) != 0) {
+            prefered = activeSuites;
+            proposed = clientSuites;
+        } else {
+            prefered = clientSuites;
+            proposed = activeSuites;
+        }
+
+        List<CipherSuite> standardSuites = new ArrayList<>();
+        List<CipherSuite> legacySuites = new ArrayList<>();
+        for (CipherSuite suite : prefered.collection()) {
+            if (Handshaker.isNegotiable(proposed, suite) == false) {
+                continue;
+            }
+
+            if ((flags & CLIENT_AUTH_REQUIRED) != 0) {
+                if ((suite.keyExchange == K_DH_ANON) ||
+                        (suite.keyExchange == K_ECDH_ANON)) {
+                    continue;
+                }
+            }
+
+            if (!legacyConstraints.permits(null, suite.name, null)) {
+                legacySuites.add(suite);
+            } else {
+                standardSuites.add(suite);
+            }
+        }
+
+        final int legacyIndex = standardSuites.size();
+        standardSuites.addAll(legacySuites);
+        return new CipherSuiteCandidates(hash, clientIds, activeIds,
+                protocolVersion.v, flags,
+                standardSuites.toArray(new CipherSuite[standardSuites.size()]),
+                legacyIndex);
+    }
+
+    private static int[] ids(CipherSuiteList suites) {
+        final Collection<CipherSuite> collection = suites.collection();
+        final int[] ids = new int[collection.size()];
+        int i = 0;
+        for (CipherSuite suite : collection) {
+            ids[i++] = suite.id;
+        }
+        return ids;
+    }
+
+}
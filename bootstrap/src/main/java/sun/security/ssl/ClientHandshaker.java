@@ -62,9 +62,16 @@ import javax.net.ssl.*;
 import javax.security.auth.Subject;
 
 import org.glassfish.grizzly.npn.AlpnClientNegotiator;
+import org.glassfish.grizzly.npn.ClientSessionStore;
 import org.glassfish.grizzly.npn.ClientSideNegotiator;
+import org.glassfish.grizzly.npn.NegotiatedProtocol;
+import org.glassfish.grizzly.npn.NegotiationEvents;
+import org.glassfish.grizzly.npn.NegotiationListener.Callback;
+import org.glassfish.grizzly.npn.NegotiationListener.Mechanism;
+import org.glassfish.grizzly.npn.NegotiationListener.Outcome;
 import org.glassfish.grizzly.npn.NegotiationSupport;
 import sun.security.ssl.HandshakeMessage.*;
+import sun.security.ssl.CipherSuite.CipherType;
 import static sun.security.ssl.CipherSuite.KeyExchange.*;
 
 /**
@@ -99,6 +106,25 @@ final class ClientHandshaker extends Handshaker {
 
     private boolean serverKeyExchangeReceived;
 
+    // BEGIN GRIZZLY NPN
+    // the outcome of the negotiation, recorded on the session once known
+    private NegotiatedProtocol negotiated;
+
+    // TLS False Start (RFC 7918), disabled by default
+    private static final boolean enableFalseStart = Debug.getBooleanProperty(
+            "org.glassfish.grizzly.npn.enableFalseStart", false);
+
+    // set once our Finished has been sent, if False Start is allowed
+    private boolean falseStarted;
+
+    // RFC 5077 session tickets, disabled by default
+    private static final boolean enableSessionTickets = Debug.getBooleanProperty(
+            "org.glassfish.grizzly.npn.enableClientSessionTickets", false);
+
+    // set if the ServerHello announced a NewSessionTicket
+    private boolean ticketExpected;
+    // END GRIZZLY NPN
+
     /*
      * The RSA PreMasterSecret needs to know the version of
      * ClientHello that was used on this handshake.  This represents
@@ -209,6 +235,25 @@ final class ClientHandshaker extends Handshaker {
      */
     @Override
     void processMessage(byte type, int messageLen) throws IOException {
+        // BEGIN GRIZZLY NPN
+        // NewSessionTicket is unknown to the handshake state manager.  It is
+        // only accepted once, if announced by the ServerHello, and precedes
+        // the server's ChangeCipherSpec.
+        if (type == HandshakeMessage.ht_new_session_ticket) {
+            if (!ticketExpected) {
+                fatalSE(Alerts.alert_unexpected_message,
+                        "Unexpected NewSessionTicket");
+            }
+            ticketExpected = false;
+            NewSessionTicket newSessionTicket = new NewSessionTicket(input);
+            if (debug != null && Debug.isOn("handshake")) {
+                newSessionTicket.print(System.out);
+            }
+            SessionTickets.setClientTicket(session, newSessionTicket.ticket);
+            return;
+        }
+        // END GRIZZLY NPN
+
         // check the handshake state
         List<Byte> ignoredOptStates = handshakeState.check(type);
 
@@ -465,6 +510,47 @@ final class ClientHandshaker extends Handshaker {
      * is a more expensive "full" handshake, with key exchange and
      * probably authentication getting done.
      */
+    // BEGIN GRIZZLY NPN
+    @Override
+    boolean isFalseStarted() {
+        return falseStarted;
+    }
+
+    /*
+     * RFC 7918: False Start is only used for full initial handshakes that
+     * negotiated an application protocol with ALPN, a forward secret key
+     * exchange and an AEAD cipher.
+     */
+    private boolean isFalseStartAllowed() {
+        if (!isInitialHandshake || resumingSession || negotiated == null
+                || negotiated.getMechanism() != Mechanism.ALPN
+                || protocolVersion.v < ProtocolVersion.TLS12.v
+                || cipherSuite.cipher.cipherType != CipherType.AEAD_CIPHER) {
+            return false;
+        }
+        switch (cipherSuite.keyExchange) {
+            case K_ECDHE_ECDSA:
+            case K_ECDHE_RSA:
+            case K_DHE_RSA:
+            case K_DHE_DSS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * Records the negotiated protocol on the handshake session.  A resumed
+     * session keeps the protocol negotiated by its initial handshake if
+     * the server didn't select one again.
+     */
+    private void recordNegotiatedProtocol() {
+        if (negotiated != null) {
+            NegotiationSupport.setNegotiationResult(session, negotiated);
+        }
+    }
+    // END GRIZZLY NPN
+
     private void serverHello(ServerHello mesg) throws IOException {
         serverKeyExchangeReceived = false;
         if (debug != null && Debug.isOn("handshake")) {
@@ -566,15 +652,31 @@ final class ClientHandshaker extends Handshaker {
             // BEGIN GRIZZLY NPN
             // check for alpn protocol selection
             if (engine != null) {
-                AlpnClientNegotiator negotiator =
-                        NegotiationSupport.getAlpnClientNegotiator(engine);
+                AlpnClientNegotiator negotiator = getAlpnClientNegotiator();
                 if (negotiator != null) {
                     AlpnExtension serverHelloAlpn = (AlpnExtension)
                             mesg.extensions.get(
                                     ExtensionType.EXT_APPLICATION_LEVEL_PROTOCOL_NEGOTIATION);
                     if (serverHelloAlpn != null) {
-                        negotiator.protocolSelected(engine,
-                                serverHelloAlpn.protocols[0]);
+                        final String[] selected = serverHelloAlpn.protocols();
+                        if (selected.length != 1) {
+                            // RFC 7301: the server response holds exactly
+                            // one protocol
+                            fatalSE(Alerts.alert_illegal_parameter,
+                                    "Server selected " + selected.length
+                                    + " ALPN protocols");
+                        }
+                        final String protocol = selected[0];
+                        negotiated = NegotiatedProtocol.alpn(protocol, null);
+                        final long start = NegotiationEvents.start();
+                        negotiator.protocolSelected(engine, protocol);
+                        NegotiationEvents.callback(engine,
+                                Callback.ALPN_CLIENT_PROTOCOL_SELECTED, start);
+                        NegotiationEvents.negotiated(engine, Mechanism.ALPN,
+                                Outcome.SELECTED, protocol);
+                    } else {
+                        NegotiationEvents.negotiated(engine, Mechanism.ALPN,
+                                Outcome.NO_DEAL, null);
                     }
                 }
             }
@@ -673,6 +775,11 @@ final class ClientHandshaker extends Handshaker {
             }
         }
 
+        // BEGIN GRIZZLY NPN
+        ticketExpected = enableSessionTickets
+                && mesg.extensions.get(ExtensionType.EXT_SESSION_TICKET) != null;
+        // END GRIZZLY NPN
+
         // check the "extended_master_secret" extension
         ExtendedMasterSecretExtension extendedMasterSecretExt =
                 (ExtendedMasterSecretExtension)mesg.extensions.get(
@@ -723,6 +830,9 @@ final class ClientHandshaker extends Handshaker {
 
         if (resumingSession && session != null) {
             setHandshakeSessionSE(session);
+            // BEGIN GRIZZLY NPN
+            recordNegotiatedProtocol();
+            // END GRIZZLY NPN
             // Reserve the handshake state if this is a session-resumption
             // abbreviated initial handshake.
             if (isInitialHandshake) {
@@ -745,6 +855,8 @@ final class ClientHandshaker extends Handshaker {
                     // Include NPN as a supported extension.
                     && (type != ExtensionType.EXT_NEXT_PROTOCOL_NEGOTIATION)
                     && (type != ExtensionType.EXT_APPLICATION_LEVEL_PROTOCOL_NEGOTIATION)
+                    && (type != ExtensionType.EXT_SESSION_TICKET
+                            || !enableSessionTickets)
                     // END GRIZZLY NPN
                     && (type != ExtensionType.EXT_EXTENDED_MASTER_SECRET)){
                 fatalSE(Alerts.alert_unsupported_extension,
@@ -762,14 +874,30 @@ final class ClientHandshaker extends Handshaker {
                     mesg.extensions.get(ExtensionType.EXT_NEXT_PROTOCOL_NEGOTIATION);
             if (npnExt != null && engine != null) {
                 ClientSideNegotiator clientSideNegotiator =
-                        NegotiationSupport.getClientSideNegotiator(engine);
+                        getClientSideNegotiator();
                 if (clientSideNegotiator != null) {
-                    if (npnExt.protocols.isEmpty()) {
+                    long start;
+                    if (npnExt.protocols().isEmpty()) {
+                        start = NegotiationEvents.start();
                         clientSideNegotiator.onNoDeal(engine);
+                        NegotiationEvents.callback(engine,
+                                Callback.NPN_CLIENT_ON_NO_DEAL, start);
                     }
-                    selectedProtocol = clientSideNegotiator.selectProtocol(engine, npnExt.protocols);
+                    start = NegotiationEvents.start();
+                    selectedProtocol = clientSideNegotiator.selectProtocol(engine, npnExt.protocols());
+                    NegotiationEvents.callback(engine,
+                            Callback.NPN_CLIENT_SELECT_PROTOCOL, start);
                     if (selectedProtocol == null) {
+                        start = NegotiationEvents.start();
                         clientSideNegotiator.onNoDeal(engine);
+                        NegotiationEvents.callback(engine,
+                                Callback.NPN_CLIENT_ON_NO_DEAL, start);
+                        NegotiationEvents.negotiated(engine, Mechanism.NPN,
+                                Outcome.NO_DEAL, null);
+                    } else {
+                        negotiated = NegotiatedProtocol.npn(selectedProtocol);
+                        NegotiationEvents.negotiated(engine, Mechanism.NPN,
+                                Outcome.SELECTED, selectedProtocol);
                     }
                 }
             }
@@ -784,6 +912,9 @@ final class ClientHandshaker extends Handshaker {
                 getEndpointIdentificationAlgorithmSE());
         session.setRequestedServerNames(requestedServerNames);
         setHandshakeSessionSE(session);
+        // BEGIN GRIZZLY NPN
+        recordNegotiatedProtocol();
+        // END GRIZZLY NPN
         if (debug != null && Debug.isOn("handshake")) {
             System.out.println("** " + cipherSuite);
         }
@@ -1249,6 +1380,9 @@ final class ClientHandshaker extends Handshaker {
          * OK, that's that!
          */
         sendChangeCipherAndFinish(false);
+        // BEGIN GRIZZLY NPN
+        falseStarted = enableFalseStart && isFalseStartAllowed();
+        // END GRIZZLY NPN
     }
 
 
@@ -1301,14 +1435,26 @@ final class ClientHandshaker extends Handshaker {
             sendChangeCipherAndFinish(true);
         } else {
             handshakeFinished = true;
+            // BEGIN GRIZZLY NPN
+            falseStarted = false;
+            // END GRIZZLY NPN
         }
         session.setLastAccessedTime(System.currentTimeMillis());
 
         if (!resumingSession) {
             if (session.isRejoinable()) {
-                ((SSLSessionContextImpl) sslContext
-                        .engineGetClientSessionContext())
-                        .put(session);
+                // BEGIN GRIZZLY NPN
+                final ClientSessionStore sessionStore =
+                        NegotiationSupport.getClientSessionStore(
+                                sslContext.engineGetClientSessionContext());
+                if (sessionStore != null) {
+                    sessionStore.put(getHostSE(), getPortSE(), session);
+                } else {
+                    ((SSLSessionContextImpl) sslContext
+                            .engineGetClientSessionContext())
+                            .put(session);
+                }
+                // END GRIZZLY NPN
                 if (debug != null && Debug.isOn("session")) {
                     System.out.println("%% Cached client session: " + session);
                 }
@@ -1367,9 +1513,22 @@ final class ClientHandshaker extends Handshaker {
         // Try to resume an existing session.  This might be mandatory,
         // given certain API options.
         //
-        session = ((SSLSessionContextImpl)sslContext
-                .engineGetClientSessionContext())
-                .get(getHostSE(), getPortSE());
+        // BEGIN GRIZZLY NPN
+        final ClientSessionStore sessionStore =
+                NegotiationSupport.getClientSessionStore(
+                        sslContext.engineGetClientSessionContext());
+        if (sessionStore != null) {
+            final SSLSession stored =
+                    sessionStore.get(getHostSE(), getPortSE());
+            session = stored instanceof SSLSessionImpl
+                    ? (SSLSessionImpl) stored
+                    : null;
+        } else {
+            session = ((SSLSessionContextImpl)sslContext
+                    .engineGetClientSessionContext())
+                    .get(getHostSE(), getPortSE());
+        }
+        // END GRIZZLY NPN
         if (debug != null && Debug.isOn("session")) {
             if (session != null) {
                 System.out.println("%% Client cached "
@@ -1616,11 +1775,24 @@ final class ClientHandshaker extends Handshaker {
         if (engine != null) { // ClientHandshaker might have been initialized by SSLSocketImpl
             // Add the NPN extension to the ClientHello if the ClientSideNegotiator
             // wants to attempt negotiation.
-            clientHelloMessage.addNextProtocolNegotiationExtension(engine);
+            clientHelloMessage.addNextProtocolNegotiationExtension(engine,
+                    getClientSideNegotiator());
 
             // Add the ALPN extension to the ClientHello if the AlpnClientNegotiator
             // wants to attempt negotiation.
-            clientHelloMessage.addAlpnExtension(engine);
+            clientHelloMessage.addAlpnExtension(engine,
+                    getAlpnClientNegotiator());
+        }
+
+        // Offer the ticket of the session to resume, if any, or announce
+        // that session tickets are supported.
+        if (enableSessionTickets) {
+            final byte[] ticket = session != null
+                    ? SessionTickets.getClientTicket(session)
+                    : null;
+            clientHelloMessage.extensions.add(ticket != null
+                    ? new SessionTicketExtension(ticket)
+                    : new SessionTicketExtension());
         }
         // END GRIZZLY NPN
 
@@ -1679,6 +1851,9 @@ final class ClientHandshaker extends Handshaker {
 
         // ask the trust manager to verify the chain
         X509TrustManager tm = sslContext.getX509TrustManager();
+        // BEGIN GRIZZLY NPN
+        TrustVerification verification = null;
+        // END GRIZZLY NPN
         try {
             // find out the key exchange algorithm used
             // use "RSA" for non-ephemeral "RSA_EXPORT"
@@ -1689,6 +1864,16 @@ final class ClientHandshaker extends Handshaker {
                 keyExchangeString = keyExchange.name;
             }
 
+            // BEGIN GRIZZLY NPN
+            verification = TrustVerification.of(this, tm, peerCerts,
+                    keyExchangeString, requestedServerNames);
+            if (verification != null && verification.isTrusted()) {
+                // the same chain was accepted recently
+                session.setPeerCertificates(peerCerts);
+                return;
+            }
+            // END GRIZZLY NPN
+
             if (tm instanceof X509ExtendedTrustManager) {
                 if (conn != null) {
                     ((X509ExtendedTrustManager)tm).checkServerTrusted(
@@ -1711,6 +1896,11 @@ final class ClientHandshaker extends Handshaker {
             // This will throw an exception, so include the original error.
             fatalSE(Alerts.alert_certificate_unknown, e);
         }
+        // BEGIN GRIZZLY NPN
+        if (verification != null) {
+            verification.trusted();
+        }
+        // END GRIZZLY NPN
         session.setPeerCertificates(peerCerts);
     }
 
@@ -0,0 +1,173 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package sun.security.ssl;
+
+import java.util.Iterator;
+import java.util.List;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+
+import org.glassfish.grizzly.npn.ClientHelloView;
+import sun.security.ssl.HandshakeMessage.ClientHello;
+
+/**
+ * A {@link ClientHelloView} over a parsed ClientHello.  Values are
+ * extracted on demand.
+ */
+final class ClientHelloViewImpl implements ClientHelloView {
+
+    private final ClientHello clientHello;
+    private int[] cipherSuites;
+
+    ClientHelloViewImpl(ClientHello clientHello) {
+        this.clientHello = clientHello;
+    }
+
+    @Override
+    public int getProtocolVersion() {
+        return clientHello.protocolVersion.v;
+    }
+
+    @Override
+    public String getServerName() {
+        ServerNameExtension sniExt = (ServerNameExtension)
+                clientHello.extensions.get(ExtensionType.EXT_SERVER_NAME);
+        if (sniExt != null) {
+            for (SNIServerName serverName : sniExt.getServerNames()) {
+                if (serverName instanceof SNIHostName) {
+                    return ((SNIHostName) serverName).getAsciiName();
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getCipherSuiteCount() {
+        return cipherSuites().length;
+    }
+
+    @Override
+    public int getCipherSuite(int index) {
+        return cipherSuites()[index];
+    }
+
+    @Override
+    public int getExtensionCount() {
+        return clientHello.extensions.list().size();
+    }
+
+    @Override
+    public int getExtensionType(int index) {
+        return clientHello.extensions.list().get(index).type.id;
+    }
+
+    @Override
+    public boolean hasExtension(int type) {
+        List<HelloExtension> extensions = clientHello.extensions.list();
+        for (int i = 0, size = extensions.size(); i < size; i++) {
+            if (extensions.get(i).type.id == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isAlpnOffered() {
+        return alpn() != null;
+    }
+
+    @Override
+    public int getAlpnProtocolCount() {
+        AlpnExtension alpnExt = alpn();
+        return alpnExt != null ? alpnExt.protocols().length : 0;
+    }
+
+    @Override
+    public String getAlpnProtocol(int index) {
+        AlpnExtension alpnExt = alpn();
+        if (alpnExt == null) {
+            throw new IndexOutOfBoundsException();
+        }
+        return alpnExt.protocols()[index];
+    }
+
+    @Override
+    public boolean isAlpnProtocolOffered(String protocol) {
+        AlpnExtension alpnExt = alpn();
+        if (alpnExt != null) {
+            for (String offered : alpnExt.protocols()) {
+                if (offered.equals(protocol)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientHelloView[version=" + clientHello.protocolVersion
+                + ", serverName=" + getServerName()
+                + ", cipherSuites=" + getCipherSuiteCount()
+                + ", extensions=" + getExtensionCount() + ']';
+    }
+
+    private AlpnExtension alpn() {
+        return (AlpnExtension) clientHello.extensions.get(
+                ExtensionType.EXT_APPLICATION_LEVEL_PROTOCOL_NEGOTIATION);
+    }
+
+    private int[] cipherSuites() {
+        if (cipherSuites == null) {
+            CipherSuiteList list = clientHello.getCipherSuites();
+            int[] ids = new int[list.size()];
+            Iterator<CipherSuite> it = list.iterator();
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = it.next().id;
+            }
+            cipherSuites = ids;
+        }
+        return cipherSuites;
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package sun.security.ssl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.net.ssl.X509KeyManager;
+import javax.net.ssl.X509TrustManager;
+
+import sun.security.ssl.CipherSuite.KeyExchange;
+import sun.security.ssl.HandshakeMessage.CertificateMsg;
+import sun.security.ssl.HandshakeMessage.CertificateRequest;
+import sun.security.ssl.HandshakeMessage.DistinguishedName;
+
+/**
+ * Caches the encoded certificate chains of the Certificate messages sent
+ * by servers, per key manager and alias, and the encoded
+ * certificate_authorities of their CertificateRequest messages, per trust
+ * manager.
+ *
+ * The key manager and trust manager are still asked for the chain and
+ * the accepted issuers by every handshake.  Cached encodings are used as
+ * long as these are the same certificates, and replaced as soon as the
+ * key or trust material changes.  Entries are dropped once their manager
+ * is garbage collected.
+ *
+ * Caching may be disabled by setting
+ * <code>org.glassfish.grizzly.npn.cacheEncodedMessages</code> to false.
+ */
+final class EncodedMessageCache {
+
+    private static final boolean enabled = Debug.getBooleanProperty(
+            "org.glassfish.grizzly.npn.cacheEncodedMessages", true);
+
+    // bounds the cache should a key manager hand out unbounded aliases
+    private static final int MAX_ENTRIES = 1024;
+
+    private static final ConcurrentHashMap<Key, Encoded> cache =
+            new ConcurrentHashMap<Key, Encoded>();
+    private static final ReferenceQueue<Object> collected =
+            new ReferenceQueue<Object>();
+
+    private EncodedMessageCache() {
+    }
+
+    /*
+     * Returns the Certificate message of the chain of the specified alias.
+     */
+    static CertificateMsg certificateMsg(X509KeyManager km, String alias,
+                                         X509Certificate[] chain)
+            throws IOException {
+        if (!enabled || alias == null) {
+            return new CertificateMsg(chain);
+        }
+        final Key key = new Key(km, alias, null);
+        Encoded encoded = cache.get(key);
+        if (encoded == null || !encoded.encodes(chain)) {
+            encoded = new Encoded(chain, null, encodeChain(chain));
+            put(new Key(km, alias, collected), encoded);
+        }
+        return new CertificateMsg(chain, encoded.bytes);
+    }
+
+    /*
+     * Returns a CertificateRequest message for the issuers accepted by the
+     * specified trust manager.
+     */
+    static CertificateRequest certificateRequest(X509TrustManager tm,
+            KeyExchange keyExchange,
+            Collection<SignatureAndHashAlgorithm> signAlgs,
+            ProtocolVersion protocolVersion) throws IOException {
+        final X509Certificate[] caCerts = tm.getAcceptedIssuers();
+        if (!enabled) {
+            return new CertificateRequest(caCerts, keyExchange, signAlgs,
+                    protocolVersion);
+        }
+        final Key key = new Key(tm, null, null);
+        Encoded encoded = cache.get(key);
+        if (encoded == null || !encoded.encodes(caCerts)) {
+            final DistinguishedName[] authorities =
+                    CertificateRequest.authorities(caCerts);
+            encoded = new Encoded(caCerts, authorities,
+                    encodeAuthorities(authorities));
+            put(new Key(tm, null, collected), encoded);
+        }
+        return new CertificateRequest(encoded.authorities, encoded.bytes,
+                keyExchange, signAlgs, protocolVersion);
+    }
+
+    private static void put(Key key, Encoded encoded) {
+        Object stale;
+        while ((stale = collected.poll()) != null) {
+            cache.remove(stale);
+        }
+        if (cache.size() >= MAX_ENTRIES) {
+            cache.clear();
+        }
+        cache.put(key, encoded);
+    }
+
+    /*
+     * Encodes a certificate_list, including its length.
+     */
+    private static byte[] encodeChain(X509Certificate[] chain)
+            throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                chain.length * 1024);
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        try {
+            for (X509Certificate cert : chain) {
+                final byte[] b = cert.getEncoded();
+                putLength24(out, b.length);
+                out.write(b);
+            }
+        } catch (CertificateEncodingException e) {
+            throw new RuntimeException("Could not encode certificates", e);
+        }
+        final byte[] bytes = out.toByteArray();
+        final int len = bytes.length - 3;
+        bytes[0] = (byte) (len >> 16);
+        bytes[1] = (byte) (len >> 8);
+        bytes[2] = (byte) len;
+        return bytes;
+    }
+
+    /*
+     * Encodes certificate_authorities, including its length.
+     */
+    private static byte[] encodeAuthorities(DistinguishedName[] authorities) {
+        int len = 0;
+        for (DistinguishedName authority : authorities) {
+            len += authority.length();
+        }
+        final byte[] bytes = new byte[2 + len];
+        bytes[0] = (byte) (len >> 8);
+        bytes[1] = (byte) len;
+        int offset = 2;
+        for (DistinguishedName authority : authorities) {
+            final byte[] name = authority.name;
+            bytes[offset++] = (byte) (name.length >> 8);
+            bytes[offset++] = (byte) name.length;
+            System.arraycopy(name, 0, bytes, offset, name.length);
+            offset += name.length;
+        }
+        return bytes;
+    }
+
+    private static void putLength24(ByteArrayOutputStream out, int len) {
+        out.write(len >> 16);
+        out.write(len >> 8);
+        out.write(len);
+    }
+
+
+    /*
+     * Identifies a key manager alias, or a trust manager if the alias is
+     * null, without retaining the manager.
+     */
+    private static final class Key extends WeakReference<Object> {
+
+        private final String alias;
+        private final int hash;
+
+        Key(Object manager, String alias, ReferenceQueue<Object> queue) {
+            super(manager, queue);
+            this.alias = alias;
+            this.hash = System.identityHashCode(manager) * 31
+                    + (alias != null ? alias.hashCode() : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            final Object manager = get();
+            return manager != null && manager == other.get()
+                    && (alias == null
+                            ? other.alias == null
+                            : alias.equals(other.alias));
+        }
+    }
+
+    /*
+     * The encoding of certificates, and their distinguished names for
+     * certificate_authorities.
+     */
+    private static final class Encoded {
+
+        private final X509Certificate[] certs;
+        final DistinguishedName[] authorities;
+        final byte[] bytes;
+
+        Encoded(X509Certificate[] certs, DistinguishedName[] authorities,
+                byte[] bytes) {
+            this.certs = certs.clone();
+            this.authorities = authorities;
+            this.bytes = bytes;
+        }
+
+        boolean encodes(X509Certificate[] certs) {
+            if (certs.length != this.certs.length) {
+                return false;
+            }
+            for (int i = 0; i < certs.length; i++) {
+                // the same instances, unless the manager copies them
+                if (certs[i] != this.certs[i]
+                        && !certs[i].equals(this.certs[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
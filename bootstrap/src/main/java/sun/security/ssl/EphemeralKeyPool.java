@@ -0,0 +1,265 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package sun.security.ssl;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import sun.security.action.GetIntegerAction;
+
+/**
+ * Pools of ephemeral ECDH and DH keys, one per curve and per DH key size,
+ * generated ahead of time by a low priority background thread so that
+ * servers don't generate them while processing ClientHellos.
+ *
+ * Pooling is enabled by setting
+ * <code>org.glassfish.grizzly.npn.ephemeralKeyPoolSize</code> to the
+ * number of keys kept ready per pool.  By default every key is used by a
+ * single handshake.  Setting
+ * <code>org.glassfish.grizzly.npn.ephemeralKeyMaxUses</code> above 1 lets a
+ * key be used by that many handshakes, for at most
+ * <code>org.glassfish.grizzly.npn.ephemeralKeyMaxReuseTime</code> seconds
+ * after its first use (0, the default, for no time bound), trading
+ * forward secrecy for fewer key generations.
+ *
+ * Should a pool be empty, the key is generated inline.  Keys are generated
+ * with the pool's own SecureRandom rather than the SSLContext's.
+ */
+final class EphemeralKeyPool {
+
+    private static final int POOL_SIZE = Math.max(0,
+            AccessController.doPrivileged(new GetIntegerAction(
+                    "org.glassfish.grizzly.npn.ephemeralKeyPoolSize", 0)));
+
+    private static final int MAX_USES = Math.max(1,
+            AccessController.doPrivileged(new GetIntegerAction(
+                    "org.glassfish.grizzly.npn.ephemeralKeyMaxUses", 1)));
+
+    private static final long MAX_REUSE_TIME = 1000L * Math.max(0,
+            AccessController.doPrivileged(new GetIntegerAction(
+                    "org.glassfish.grizzly.npn.ephemeralKeyMaxReuseTime", 0)));
+
+    private static final ConcurrentHashMap<Integer, Pool<ECDHCrypt>> ecdhPools =
+            new ConcurrentHashMap<Integer, Pool<ECDHCrypt>>();
+    private static final ConcurrentHashMap<Integer, Pool<DHCrypt>> dhPools =
+            new ConcurrentHashMap<Integer, Pool<DHCrypt>>();
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private static volatile ThreadPoolExecutor generator;
+
+    private EphemeralKeyPool() {
+    }
+
+    /*
+     * Returns an ephemeral ECDH key on the specified curve.
+     */
+    static ECDHCrypt ecdh(final int curveId, final SecureRandom inlineRandom) {
+        if (POOL_SIZE == 0) {
+            return new ECDHCrypt(curveId, inlineRandom);
+        }
+        Pool<ECDHCrypt> pool = ecdhPools.get(curveId);
+        if (pool == null) {
+            final Pool<ECDHCrypt> created = new Pool<ECDHCrypt>() {
+                @Override
+                ECDHCrypt generate(SecureRandom random) {
+                    return new ECDHCrypt(curveId, random);
+                }
+            };
+            pool = ecdhPools.putIfAbsent(curveId, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        return pool.take(inlineRandom);
+    }
+
+    /*
+     * Returns an ephemeral DH key of the specified size.
+     */
+    static DHCrypt dh(final int keySize, final SecureRandom inlineRandom) {
+        if (POOL_SIZE == 0) {
+            return new DHCrypt(keySize, inlineRandom);
+        }
+        Pool<DHCrypt> pool = dhPools.get(keySize);
+        if (pool == null) {
+            final Pool<DHCrypt> created = new Pool<DHCrypt>() {
+                @Override
+                DHCrypt generate(SecureRandom random) {
+                    return new DHCrypt(keySize, random);
+                }
+            };
+            pool = dhPools.putIfAbsent(keySize, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        return pool.take(inlineRandom);
+    }
+
+    private static ThreadPoolExecutor generator() {
+        ThreadPoolExecutor executor = generator;
+        if (executor == null) {
+            synchronized (EphemeralKeyPool.class) {
+                executor = generator;
+                if (executor == null) {
+                    executor = new ThreadPoolExecutor(1, 1,
+                            60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(),
+                            new ThreadFactory() {
+                                @Override
+                                public Thread newThread(final Runnable r) {
+                                    return AccessController.doPrivileged(
+                                            new PrivilegedAction<Thread>() {
+                                                @Override
+                                                public Thread run() {
+                                                    final Thread t = new Thread(r,
+                                                            "grizzly-npn-ephemeral-keys");
+                                                    t.setDaemon(true);
+                                                    t.setPriority(Thread.MIN_PRIORITY);
+                                                    t.setContextClassLoader(null);
+                                                    return t;
+                                                }
+                                            });
+                                }
+                            });
+                    executor.allowCoreThreadTimeOut(true);
+                    generator = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+
+    // ---------------------------------------------------------- Nested Classes
+
+
+    private abstract static class Pool<T> implements Runnable {
+
+        private final ArrayBlockingQueue<T> ready =
+                new ArrayBlockingQueue<T>(POOL_SIZE);
+        private final AtomicBoolean filling = new AtomicBoolean();
+
+        // the key being reused, if reuse is allowed
+        private final AtomicReference<Reused<T>> current =
+                new AtomicReference<Reused<T>>();
+
+        abstract T generate(SecureRandom random);
+
+        T take(final SecureRandom inlineRandom) {
+            if (MAX_USES > 1) {
+                final Reused<T> reused = current.get();
+                if (reused != null && reused.use()) {
+                    return reused.key;
+                }
+            }
+            T key = ready.poll();
+            if (ready.size() <= POOL_SIZE / 2) {
+                fill();
+            }
+            if (key == null) {
+                key = generate(inlineRandom);
+            }
+            if (MAX_USES > 1) {
+                final Reused<T> reused = new Reused<T>(key);
+                reused.use();
+                current.set(reused);
+            }
+            return key;
+        }
+
+        private void fill() {
+            if (filling.compareAndSet(false, true)) {
+                generator().execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (ready.remainingCapacity() > 0) {
+                    if (!ready.offer(generate(random))) {
+                        break;
+                    }
+                }
+            } finally {
+                filling.set(false);
+            }
+        }
+
+    } // END Pool
+
+    private static final class Reused<T> {
+
+        final T key;
+        private final AtomicInteger uses = new AtomicInteger();
+        private volatile long firstUse;
+
+        Reused(final T key) {
+            this.key = key;
+        }
+
+        boolean use() {
+            final int n = uses.incrementAndGet();
+            if (n > MAX_USES) {
+                return false;
+            }
+            if (n == 1) {
+                firstUse = System.currentTimeMillis();
+                return true;
+            }
+            return MAX_REUSE_TIME == 0
+                    || System.currentTimeMillis() - firstUse < MAX_REUSE_TIME;
+        }
+
+    } // END Reused
+
+}
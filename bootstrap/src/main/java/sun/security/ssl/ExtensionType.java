@@ -42,15 +42,25 @@ package sun.security.ssl;
 
 import java.util.ArrayList;
 import java.util.List;
+// BEGIN GRIZZLY NPN
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+// END GRIZZLY NPN
 
 final class ExtensionType {
 
     final int id;
     final String name;
+    // BEGIN GRIZZLY NPN
+    // index of a known extension within HelloExtensions, -1 if unknown
+    final int slot;
+    // END GRIZZLY NPN
 
-    private ExtensionType(int id, String name) {
+    private ExtensionType(int id, String name, int slot) {
         this.id = id;
         this.name = name;
+        this.slot = slot;
     }
 
     @Override
@@ -60,20 +70,59 @@ final class ExtensionType {
 
     static List<ExtensionType> knownExtensions = new ArrayList<ExtensionType>(14);
 
+    // BEGIN GRIZZLY NPN
+    // Known extensions with a low id are looked up in a dense table, the
+    // others, as well as a bounded number of unknown ids (GREASE values,
+    // extensions we don't support), are interned in a map so that parsing
+    // a ClientHello doesn't allocate a new ExtensionType for each of them.
+    private static final int DENSE_IDS = 64;
+    private static final int MAX_INTERNED = 256;
+
+    private static final ExtensionType[] denseTypes =
+            new ExtensionType[DENSE_IDS];
+    private static final ConcurrentMap<Integer, ExtensionType> sparseTypes =
+            new ConcurrentHashMap<Integer, ExtensionType>();
+    private static final AtomicInteger interned = new AtomicInteger();
+
     static ExtensionType get(int id) {
-        for (ExtensionType ext : knownExtensions) {
-            if (ext.id == id) {
+        if (id >= 0 && id < DENSE_IDS) {
+            final ExtensionType ext = denseTypes[id];
+            if (ext != null) {
                 return ext;
             }
         }
-        return new ExtensionType(id, "type_" + id);
+        final Integer key = id;
+        ExtensionType ext = sparseTypes.get(key);
+        if (ext == null) {
+            ext = new ExtensionType(id, "type_" + id, -1);
+            if (interned.get() < MAX_INTERNED) {
+                final ExtensionType existing = sparseTypes.putIfAbsent(key, ext);
+                if (existing != null) {
+                    ext = existing;
+                } else {
+                    interned.incrementAndGet();
+                }
+            }
+        }
+        return ext;
+    }
+
+    // number of known extensions, see slot
+    static int knownCount() {
+        return knownExtensions.size();
     }
 
     private static ExtensionType e(int id, String name) {
-        ExtensionType ext = new ExtensionType(id, name);
+        ExtensionType ext = new ExtensionType(id, name, knownExtensions.size());
         knownExtensions.add(ext);
+        if (id < DENSE_IDS) {
+            denseTypes[id] = ext;
+        } else {
+            sparseTypes.put(id, ext);
+        }
         return ext;
     }
+    // END GRIZZLY NPN
 
     // extensions defined in RFC 3546
     final static ExtensionType EXT_SERVER_NAME =
@@ -129,5 +178,9 @@ final class ExtensionType {
     final static ExtensionType EXT_NEXT_PROTOCOL_NEGOTIATION =
             e(NextProtocolNegotiationExtension.EXTENSION_ID,
               "next_protocol_negotiation");
+
+    // extension defined in RFC 5077
+    final static ExtensionType EXT_SESSION_TICKET =
+            e(SessionTicketExtension.ID, "session_ticket"); // IANA registry value: 35
     // END GRIZZLY NPN
 }
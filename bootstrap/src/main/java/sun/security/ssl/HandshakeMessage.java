@@ -61,8 +61,9 @@ import javax.crypto.spec.DHPublicKeySpec;
 import javax.net.ssl.*;
 
 import org.glassfish.grizzly.npn.AlpnClientNegotiator;
+import org.glassfish.grizzly.npn.AlpnProtocols;
 import org.glassfish.grizzly.npn.ClientSideNegotiator;
-import org.glassfish.grizzly.npn.NegotiationSupport;
+import org.glassfish.grizzly.npn.EncodedAlpnClientNegotiator;
 import sun.security.internal.spec.TlsPrfParameterSpec;
 import sun.security.ssl.CipherSuite.*;
 import static sun.security.ssl.CipherSuite.PRF.*;
@@ -113,6 +114,9 @@ public abstract class HandshakeMessage {
     // Defined by Draft03, section 3:
     //  A new handshake message type ("next_protocol(67)") is defined.
     static final byte   ht_next_protocol = 67;
+
+    // Defined by RFC 5077, section 3.3
+    static final byte   ht_new_session_ticket = 4;
     // END GRIZZLY NPN
 
     /* Class and subclass dynamic debugging support */
@@ -191,6 +195,52 @@ public abstract class HandshakeMessage {
 //
 
     // BEGIN GRIZZLY NPN
+    /*
+     * NewSessionTicket, defined by RFC 5077:
+     *
+     *     struct {
+     *         uint32 ticket_lifetime_hint;
+     *         opaque ticket<0..2^16-1>;
+     *     } NewSessionTicket;
+     */
+    static final class NewSessionTicket extends HandshakeMessage {
+
+        final long lifetimeHint;
+        final byte[] ticket;
+
+        NewSessionTicket(long lifetimeHint, byte[] ticket) {
+            this.lifetimeHint = lifetimeHint;
+            this.ticket = ticket;
+        }
+
+        NewSessionTicket(HandshakeInStream in) throws IOException {
+            lifetimeHint = in.getInt32() & 0xFFFFFFFFL;
+            ticket = in.getBytes16();
+        }
+
+        @Override
+        int messageType() {
+            return ht_new_session_ticket;
+        }
+
+        @Override
+        int messageLength() {
+            return 4 + 2 + ticket.length;
+        }
+
+        @Override
+        void send(HandshakeOutStream s) throws IOException {
+            s.putInt32((int) lifetimeHint);
+            s.putBytes16(ticket);
+        }
+
+        @Override
+        void print(PrintStream p) throws IOException {
+            p.println("*** NewSessionTicket, lifetime hint: " + lifetimeHint
+                    + "s, ticket length: " + ticket.length);
+        }
+    }
+
     /**
      * A new handshake message type ("next_protocol(67)") is defined.  If,
      * and only if, the server included a "next_protocol_negotiation"
@@ -409,10 +459,8 @@ public abstract class HandshakeMessage {
         }
 
         // BEGIN GRIZZLY NPN
-        void addNextProtocolNegotiationExtension(final SSLEngineImpl sslEngine) {
-            ClientSideNegotiator npnNegotiator =
-                    NegotiationSupport.getClientSideNegotiator(sslEngine);
-
+        void addNextProtocolNegotiationExtension(final SSLEngineImpl sslEngine,
+                                                 final ClientSideNegotiator npnNegotiator) {
             if (npnNegotiator != null && npnNegotiator.wantNegotiate(sslEngine)) {
                 try {
                     // PER Draft03, the client must advertise an empty extension.
@@ -423,10 +471,21 @@ public abstract class HandshakeMessage {
             }
         }
 
-        void addAlpnExtension(final SSLEngineImpl sslEngine) {
-            AlpnClientNegotiator clientNegotiator =
-                    NegotiationSupport.getAlpnClientNegotiator(sslEngine);
-            if (clientNegotiator != null) {
+        void addAlpnExtension(final SSLEngineImpl sslEngine,
+                              final AlpnClientNegotiator clientNegotiator) {
+            if (clientNegotiator instanceof EncodedAlpnClientNegotiator) {
+                final AlpnProtocols protocols = ((EncodedAlpnClientNegotiator)
+                        clientNegotiator).getAlpnProtocols(sslEngine);
+                if (protocols != null && !protocols.isEmpty()) {
+                    try {
+                        extensions.add(AlpnExtension.builder()
+                                .protocols(protocols)
+                                .build());
+                    } catch (IOException ignored) {
+                        // this won't occur with this particular invocation.
+                    }
+                }
+            } else if (clientNegotiator != null) {
                 final String[] protocols = clientNegotiator.getProtocols(sslEngine);
                 if (protocols.length != 0) {
                     try {
@@ -601,10 +660,26 @@ public abstract class HandshakeMessage {
 
         private int messageLength;
 
+        // BEGIN GRIZZLY NPN
+        // the certificate_list, pre-encoded by EncodedMessageCache
+        private byte[] encoded;
+        // END GRIZZLY NPN
+
         CertificateMsg(X509Certificate[] certs) {
             chain = certs;
         }
 
+        // BEGIN GRIZZLY NPN
+        /*
+         * Construct from the encoded certificate_list of the chain,
+         * including its length.
+         */
+        CertificateMsg(X509Certificate[] certs, byte[] encoded) {
+            chain = certs;
+            this.encoded = encoded;
+        }
+        // END GRIZZLY NPN
+
         CertificateMsg(HandshakeInStream input) throws IOException {
             int chainLen = input.getInt24();
             List<Certificate> v = new ArrayList<>(4);
@@ -629,6 +704,11 @@ public abstract class HandshakeMessage {
 
         @Override
         int messageLength() {
+            // BEGIN GRIZZLY NPN
+            if (encoded != null) {
+                return encoded.length;
+            }
+            // END GRIZZLY NPN
             if (encodedChain == null) {
                 messageLength = 3;
                 encodedChain = new ArrayList<byte[]>(chain.length);
@@ -648,6 +728,12 @@ public abstract class HandshakeMessage {
 
         @Override
         void send(HandshakeOutStream s) throws IOException {
+            // BEGIN GRIZZLY NPN
+            if (encoded != null) {
+                s.write(encoded, 0, encoded.length);
+                return;
+            }
+            // END GRIZZLY NPN
             s.putInt24(messageLength() - 3);
             for (byte[] b : encodedChain) {
                 s.putBytes24(b);
@@ -923,6 +1009,48 @@ public abstract class HandshakeMessage {
             signature = sig.sign();
         }
 
+        // BEGIN GRIZZLY NPN
+        /*
+         * Construct from initialized DH key object for DHE_DSS and DHE_RSA
+         * key exchange, leaving the signature of signedData() to be set
+         * once computed.  (Constructor called by server.)
+         */
+        DH_ServerKeyExchange(DHCrypt obj,
+                             SignatureAndHashAlgorithm signAlgorithm,
+                             ProtocolVersion protocolVersion) {
+            this.protocolVersion = protocolVersion;
+            this.preferableSignatureAlgorithm =
+                    protocolVersion.v >= ProtocolVersion.TLS12.v
+                            ? signAlgorithm
+                            : null;
+
+            // The DH key has been validated in the constructor of DHCrypt.
+            setValues(obj);
+        }
+
+        /*
+         * Return the data signed with the nonces and Diffie-Hellman
+         * public key, as fed to the signature by updateSignature().
+         */
+        byte[] signedData(byte clntNonce[], byte svrNonce[]) {
+            ByteArrayOutputStream data = new ByteArrayOutputStream(
+                    clntNonce.length + svrNonce.length + 6
+                            + dh_p.length + dh_g.length + dh_Ys.length);
+            data.write(clntNonce, 0, clntNonce.length);
+            data.write(svrNonce, 0, svrNonce.length);
+            for (byte[] value : new byte[][] {dh_p, dh_g, dh_Ys}) {
+                data.write(value.length >> 8);
+                data.write(value.length & 0x0ff);
+                data.write(value, 0, value.length);
+            }
+            return data.toByteArray();
+        }
+
+        void setSignature(byte[] signature) {
+            this.signature = signature;
+        }
+        // END GRIZZLY NPN
+
         /*
          * Construct a DH_ServerKeyExchange message from an input
          * stream, as if sent from server to client for use with
@@ -1201,6 +1329,50 @@ public abstract class HandshakeMessage {
             signatureBytes = sig.sign();
         }
 
+        // BEGIN GRIZZLY NPN
+        /*
+         * Construct for ECDHE key exchange, leaving the signature of
+         * signedData() to be set once computed.
+         */
+        ECDH_ServerKeyExchange(ECDHCrypt obj,
+                               SignatureAndHashAlgorithm signAlgorithm,
+                               ProtocolVersion protocolVersion) {
+
+            this.protocolVersion = protocolVersion;
+            if (protocolVersion.v >= ProtocolVersion.TLS12.v) {
+                this.preferableSignatureAlgorithm = signAlgorithm;
+            }
+
+            publicKey = (ECPublicKey)obj.getPublicKey();
+            ECParameterSpec params = publicKey.getParams();
+            ECPoint point = publicKey.getW();
+            pointBytes = JsseJce.encodePoint(point, params.getCurve());
+            curveId = EllipticCurvesExtension.getCurveIndex(params);
+        }
+
+        /*
+         * Return the data signed with the nonces and the ECDH parameters,
+         * as fed to the signature by updateSignature().
+         */
+        byte[] signedData(byte[] clntNonce, byte[] svrNonce) {
+            ByteArrayOutputStream data = new ByteArrayOutputStream(
+                    clntNonce.length + svrNonce.length + 4
+                            + pointBytes.length);
+            data.write(clntNonce, 0, clntNonce.length);
+            data.write(svrNonce, 0, svrNonce.length);
+            data.write(CURVE_NAMED_CURVE);
+            data.write(curveId >> 8);
+            data.write(curveId);
+            data.write(pointBytes.length);
+            data.write(pointBytes, 0, pointBytes.length);
+            return data.toByteArray();
+        }
+
+        void setSignature(byte[] signature) {
+            this.signatureBytes = signature;
+        }
+        // END GRIZZLY NPN
+
         /*
          * Parse an ECDH server key exchange message.
          */
@@ -1464,18 +1636,32 @@ public abstract class HandshakeMessage {
         // length of supported_signature_algorithms
         private int algorithmsLen;
 
+        // BEGIN GRIZZLY NPN
+        // the certificate_authorities, pre-encoded by EncodedMessageCache
+        private byte[] encodedAuthorities;
+        // END GRIZZLY NPN
+
         CertificateRequest(X509Certificate ca[], KeyExchange keyExchange,
                            Collection<SignatureAndHashAlgorithm> signAlgs,
                            ProtocolVersion protocolVersion) throws IOException {
+            // BEGIN GRIZZLY NPN
+            this(authorities(ca), null, keyExchange, signAlgs,
+                    protocolVersion);
+        }
 
-            this.protocolVersion = protocolVersion;
+        /*
+         * Construct from the authorities and their encoded
+         * certificate_authorities, including its length, if known.
+         */
+        CertificateRequest(DistinguishedName[] authorities,
+                           byte[] encodedAuthorities, KeyExchange keyExchange,
+                           Collection<SignatureAndHashAlgorithm> signAlgs,
+                           ProtocolVersion protocolVersion) throws IOException {
 
-            // always use X500Principal
-            authorities = new DistinguishedName[ca.length];
-            for (int i = 0; i < ca.length; i++) {
-                X500Principal x500Principal = ca[i].getSubjectX500Principal();
-                authorities[i] = new DistinguishedName(x500Principal);
-            }
+            this.protocolVersion = protocolVersion;
+            this.authorities = authorities;
+            this.encodedAuthorities = encodedAuthorities;
+            // END GRIZZLY NPN
             // we support RSA, DSS, and ECDSA client authentication and they
             // can be used with all ciphersuites. If this changes, the code
             // needs to be adapted to take keyExchange into account.
@@ -1498,6 +1684,18 @@ public abstract class HandshakeMessage {
             }
         }
 
+        // BEGIN GRIZZLY NPN
+        static DistinguishedName[] authorities(X509Certificate ca[]) {
+            // always use X500Principal
+            DistinguishedName[] authorities = new DistinguishedName[ca.length];
+            for (int i = 0; i < ca.length; i++) {
+                X500Principal x500Principal = ca[i].getSubjectX500Principal();
+                authorities[i] = new DistinguishedName(x500Principal);
+            }
+            return authorities;
+        }
+        // END GRIZZLY NPN
+
         CertificateRequest(HandshakeInStream input,
                            ProtocolVersion protocolVersion) throws IOException {
 
@@ -1581,6 +1779,11 @@ public abstract class HandshakeMessage {
                 len += algorithmsLen + 2;
             }
 
+            // BEGIN GRIZZLY NPN
+            if (encodedAuthorities != null) {
+                return len - 2 + encodedAuthorities.length;
+            }
+            // END GRIZZLY NPN
             for (int i = 0; i < authorities.length; i++) {
                 len += authorities[i].length();
             }
@@ -1603,6 +1806,12 @@ public abstract class HandshakeMessage {
             }
 
             // put certificate_authorities
+            // BEGIN GRIZZLY NPN
+            if (encodedAuthorities != null) {
+                output.write(encodedAuthorities, 0, encodedAuthorities.length);
+                return;
+            }
+            // END GRIZZLY NPN
             int len = 0;
             for (int i = 0; i < authorities.length; i++) {
                 len += authorities[i].length();
@@ -49,6 +49,10 @@ import java.security.AlgorithmConstraints;
 import java.security.AccessControlContext;
 import java.security.PrivilegedExceptionAction;
 import java.security.PrivilegedActionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import javax.crypto.*;
 import javax.crypto.spec.*;
@@ -57,7 +61,14 @@ import javax.net.ssl.*;
 import sun.misc.HexDumpEncoder;
 
 import sun.security.internal.spec.*;
-
+import sun.security.action.GetIntegerAction;
+
+import org.glassfish.grizzly.npn.AlpnClientNegotiator;
+import org.glassfish.grizzly.npn.AlpnServerNegotiator;
+import org.glassfish.grizzly.npn.ClientSideNegotiator;
+import org.glassfish.grizzly.npn.NegotiationHandle;
+import org.glassfish.grizzly.npn.NegotiationSupport;
+import org.glassfish.grizzly.npn.ServerSideNegotiator;
 import sun.security.ssl.HandshakeMessage.*;
 import sun.security.ssl.CipherSuite.*;
 
@@ -176,6 +187,19 @@ abstract class Handshaker {
     // BEGIN GRIZZLY NPN
     // This is the agreed upon protocol, if any.
     protected String selectedProtocol;
+
+    // The negotiators for this handshake, see getNegotiators().
+    private NegotiationHandle negotiators;
+
+    // Set while processing of a message is suspended, see
+    // suspendProcessing().  Protected by the SSLEngine.this lock.
+    private boolean suspended;
+    private byte suspendedMessageType;
+    private int suspendedMessageLen;
+
+    // Set while the end of the processing of a message is deferred, see
+    // deferProcessing().  Protected by the SSLEngine.this lock.
+    private boolean deferred;
     // END GRIZZLY NPN
 
     /*
@@ -233,6 +257,16 @@ abstract class Handshaker {
     static final boolean allowLegacyMasterSecret =
             Debug.getBooleanProperty("jdk.tls.allowLegacyMasterSecret", true);
 
+    // BEGIN GRIZZLY NPN
+    // How long, in milliseconds, a delegated task waits for an asynchronous
+    // step (ALPN selection, session lookup, signature) before failing the
+    // handshake.
+    static final long asyncHandshakeTimeout = Math.max(1,
+            AccessController.doPrivileged(new GetIntegerAction(
+                    "org.glassfish.grizzly.npn.asyncHandshakeTimeout",
+                    30000)));
+    // END GRIZZLY NPN
+
     // Is it requested to use extended master secret extension?
     boolean requestedToUseEMS = false;
 
@@ -925,6 +959,16 @@ abstract class Handshaker {
         return started() && handshakeState.isEmpty() && handshakeFinished;
     }
 
+    // BEGIN GRIZZLY NPN
+    /*
+     * Returns true iff application data may be sent although the handshake
+     * isn't done yet (TLS False Start).
+     */
+    boolean isFalseStarted() {
+        return false;
+    }
+    // END GRIZZLY NPN
+
 
     /*
      * Returns the session which was created through this
@@ -1058,13 +1102,110 @@ abstract class Handshaker {
                 processMessage(messageType, messageLen);
                 input.ignore(4 + messageLen);
             } else {
-                input.mark(messageLen);
-                processMessage(messageType, messageLen);
-                input.digestNow();
+                // BEGIN GRIZZLY NPN
+                if (!processMessageAndDigest(messageType, messageLen)) {
+                    return;
+                }
+                // END GRIZZLY NPN
             }
         }
     }
 
+    // BEGIN GRIZZLY NPN
+    /*
+     * Processes a message whose header has already been read.  If the
+     * message suspended processing, it isn't digested but rewound, so it
+     * can be processed again once resumed.
+     *
+     * Returns false if processing has been suspended or deferred.
+     */
+    private boolean processMessageAndDigest(byte messageType, int messageLen)
+            throws IOException {
+        input.mark(messageLen);
+        processMessage(messageType, messageLen);
+        if (suspended) {
+            input.reset();
+            suspendedMessageType = messageType;
+            suspendedMessageLen = messageLen;
+            return false;
+        }
+        input.digestNow();
+        // the following messages are processed once the deferred
+        // processing completes
+        return !deferred;
+    }
+
+    /*
+     * Suspends handshake processing until the specified stage completes.
+     *
+     * May only be called by processMessage(), for SSLEngine based
+     * connections, before the message has changed any handshake state.
+     * The message is then rewound and a delegated task, reported as
+     * NEED_TASK by the engine, waits for the stage to complete (without
+     * holding the engine's lock) before processing the message again.
+     * The message handler must use the outcome of the stage, rather than
+     * suspend again, when it is invoked a second time.
+     */
+    void suspendProcessing(final CompletionStage<?> stage) {
+        final CountDownLatch completed = completion(stage);
+        suspended = true;
+        delegatedTask = new DelegatedTask<Void>(
+                new PrivilegedExceptionAction<Void>() {
+                    @Override
+                    public Void run() throws Exception {
+                        suspended = false;
+                        if (processMessageAndDigest(suspendedMessageType,
+                                suspendedMessageLen)) {
+                            processLoop();
+                        }
+                        return null;
+                    }
+                }, completed);
+        taskDelegated = false;
+        thrown = null;
+    }
+
+    /*
+     * Defers the end of the processing of the current message until the
+     * specified stage completes.
+     *
+     * May only be called by processMessage(), for SSLEngine based
+     * connections, once the message has been fully read.  The message is
+     * digested as usual, and a delegated task, reported as NEED_TASK by
+     * the engine, waits for the stage to complete (without holding the
+     * engine's lock) before running the continuation, then processing
+     * the messages received in the meantime.
+     */
+    void deferProcessing(final CompletionStage<?> stage,
+                         final PrivilegedExceptionAction<Void> continuation) {
+        final CountDownLatch completed = completion(stage);
+        deferred = true;
+        delegatedTask = new DelegatedTask<Void>(
+                new PrivilegedExceptionAction<Void>() {
+                    @Override
+                    public Void run() throws Exception {
+                        deferred = false;
+                        continuation.run();
+                        processLoop();
+                        return null;
+                    }
+                }, completed);
+        taskDelegated = false;
+        thrown = null;
+    }
+
+    private static CountDownLatch completion(final CompletionStage<?> stage) {
+        final CountDownLatch completed = new CountDownLatch(1);
+        stage.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object result, Throwable failure) {
+                completed.countDown();
+            }
+        });
+        return completed;
+    }
+    // END GRIZZLY NPN
+
 
     /**
      * Returns true iff the handshaker has been activated.
@@ -1479,12 +1620,32 @@ abstract class Handshaker {
     class DelegatedTask<E> implements Runnable {
 
         private PrivilegedExceptionAction<E> pea;
+        // BEGIN GRIZZLY NPN
+        // if set, the task waits for it before running the action
+        private final CountDownLatch ready;
+        // END GRIZZLY NPN
 
         DelegatedTask(PrivilegedExceptionAction<E> pea) {
+            this(pea, null);
+        }
+
+        // BEGIN GRIZZLY NPN
+        DelegatedTask(PrivilegedExceptionAction<E> pea, CountDownLatch ready) {
             this.pea = pea;
+            this.ready = ready;
         }
+        // END GRIZZLY NPN
 
         public void run() {
+            // BEGIN GRIZZLY NPN
+            if (ready != null) {
+                String failure = await(ready);
+                if (failure != null) {
+                    fail(failure);
+                    return;
+                }
+            }
+            // END GRIZZLY NPN
             synchronized (engine) {
                 try {
                     AccessController.doPrivileged(pea, engine.getAcc());
@@ -1493,11 +1654,60 @@ abstract class Handshaker {
                 } catch (RuntimeException rte) {
                     thrown = rte;
                 }
-                delegatedTask = null;
-                taskDelegated = false;
+                // BEGIN GRIZZLY NPN
+                // the task may have suspended processing, delegating a
+                // new task in its place.
+                if (delegatedTask == this) {
+                    delegatedTask = null;
+                    taskDelegated = false;
+                }
+                // END GRIZZLY NPN
+            }
+        }
+
+        // BEGIN GRIZZLY NPN
+        /*
+         * Fails the handshake with an internal_error alert, the exception
+         * being reported by the next wrap() or unwrap().
+         */
+        private void fail(String diagnostic) {
+            synchronized (engine) {
+                try {
+                    fatalSE(Alerts.alert_internal_error, diagnostic);
+                } catch (IOException e) {
+                    thrown = e;
+                } catch (RuntimeException rte) {
+                    thrown = rte;
+                }
+                if (delegatedTask == this) {
+                    delegatedTask = null;
+                    taskDelegated = false;
+                }
+            }
+        }
+        // END GRIZZLY NPN
+    }
+
+    // BEGIN GRIZZLY NPN
+    /*
+     * Waits for the latch for at most asyncHandshakeTimeout milliseconds.
+     * Returns null once released, or why it wasn't.  The interrupt status
+     * is kept.
+     */
+    private static String await(CountDownLatch latch) {
+        try {
+            if (latch.await(asyncHandshakeTimeout, TimeUnit.MILLISECONDS)) {
+                return null;
             }
+            return "Asynchronous handshake step not completed within "
+                    + asyncHandshakeTimeout + " ms";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted while waiting for an asynchronous "
+                    + "handshake step";
         }
     }
+    // END GRIZZLY NPN
 
     private <T> void delegateTask(PrivilegedExceptionAction<T> pea) {
         delegatedTask = new DelegatedTask<T>(pea);
@@ -1572,6 +1782,46 @@ abstract class Handshaker {
     }
 
     // BEGIN GRIZZLY NPN
+    /*
+     * Negotiator lookups.  All negotiators that apply to this handshake are
+     * resolved with a single lookup, the first time one is needed, and
+     * cached for the remainder of the handshake.  A negotiator registered
+     * against the engine takes precedence over the default bound to the
+     * SSLContext (or globally).  Negotiation is only supported for SSLEngine
+     * based connections.
+     */
+    NegotiationHandle getNegotiators() {
+        NegotiationHandle handle = negotiators;
+        if (handle == null) {
+            if (engine == null) {
+                handle = NegotiationHandle.EMPTY;
+            } else {
+                handle = NegotiationSupport.resolveNegotiators(engine,
+                        isClient
+                                ? sslContext.engineGetClientSessionContext()
+                                : sslContext.engineGetServerSessionContext());
+            }
+            negotiators = handle;
+        }
+        return handle;
+    }
+
+    ServerSideNegotiator getServerSideNegotiator() {
+        return getNegotiators().getServerSideNegotiator();
+    }
+
+    ClientSideNegotiator getClientSideNegotiator() {
+        return getNegotiators().getClientSideNegotiator();
+    }
+
+    AlpnServerNegotiator getAlpnServerNegotiator() {
+        return getNegotiators().getAlpnServerNegotiator();
+    }
+
+    AlpnClientNegotiator getAlpnClientNegotiator() {
+        return getNegotiators().getAlpnClientNegotiator();
+    }
+
     private void sendNPMessageIfNecessary(HandshakeMessage.Finished mesg) throws IOException {
         if (selectedProtocol != null && isInitialHandshake && (this instanceof ClientHandshaker)) {
             HandshakeMessage.NextProtocol nextProtocol = HandshakeMessage.NextProtocol.builder().protocol(selectedProtocol).build();
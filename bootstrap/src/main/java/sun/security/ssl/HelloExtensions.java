@@ -60,7 +60,7 @@ import javax.net.ssl.*;
  *  . HelloExtension: abstract base class for all extensions. All subclasses
  *      must be immutable.
  *
- *  . UnknownExtension: used to represent all parsed extensions that we do not
+ *  . UnparsedExtension: used to represent all parsed extensions that we do not
  *      explicitly support.
  *  . ServerNameExtension: the server_name extension.
  *  . SignatureAlgorithmsExtension: the signature_algorithms extension.
@@ -75,6 +75,10 @@ final class HelloExtensions {
 
     private List<HelloExtension> extensions;
     private int encodedLength;
+    // BEGIN GRIZZLY NPN
+    // known extensions indexed by ExtensionType.slot
+    private HelloExtension[] known;
+    // END GRIZZLY NPN
 
     HelloExtensions() {
         extensions = Collections.emptyList();
@@ -88,29 +92,43 @@ final class HelloExtensions {
             int type = s.getInt16();
             int extlen = s.getInt16();
             ExtensionType extType = ExtensionType.get(type);
-            HelloExtension extension;
-            if (extType == ExtensionType.EXT_SERVER_NAME) {
-                extension = new ServerNameExtension(s, extlen);
-            } else if (extType == ExtensionType.EXT_SIGNATURE_ALGORITHMS) {
-                extension = new SignatureAlgorithmsExtension(s, extlen);
-            } else if (extType == ExtensionType.EXT_ELLIPTIC_CURVES) {
-                extension = new EllipticCurvesExtension(s, extlen);
-            } else if (extType == ExtensionType.EXT_EC_POINT_FORMATS) {
-                extension = new EllipticPointFormatsExtension(s, extlen);
-            } else if (extType == ExtensionType.EXT_RENEGOTIATION_INFO) {
-                extension = new RenegotiationInfoExtension(s, extlen);
             // BEGIN GRIZZLY NPN
-            } else if (extType == ExtensionType.EXT_NEXT_PROTOCOL_NEGOTIATION) {
-                extension = NextProtocolNegotiationExtension.builder().handshakeIn(s, extlen).build();
-            } else if (extType == ExtensionType.EXT_APPLICATION_LEVEL_PROTOCOL_NEGOTIATION) {
-                extension = AlpnExtension.builder().handshakeIn(s, extlen).build();
-            // END GRIZZLY NPN
-            } else if (extType == ExtensionType.EXT_EXTENDED_MASTER_SECRET) {
-                extension = new ExtendedMasterSecretExtension(s, extlen);
-            } else {
-                extension = new UnknownExtension(s, extlen, extType);
+            HelloExtension extension;
+            switch (extType.id) {
+                case 0x0000:    // server_name
+                    extension = new ServerNameExtension(s, extlen);
+                    break;
+                case 0x000D:    // signature_algorithms
+                    extension = new SignatureAlgorithmsExtension(s, extlen);
+                    break;
+                case 0x000A:    // elliptic_curves
+                    extension = new EllipticCurvesExtension(s, extlen);
+                    break;
+                case 0x000B:    // ec_point_formats
+                    extension = new EllipticPointFormatsExtension(s, extlen);
+                    break;
+                case 0xFF01:    // renegotiation_info
+                    extension = new RenegotiationInfoExtension(s, extlen);
+                    break;
+                case NextProtocolNegotiationExtension.EXTENSION_ID:
+                    extension = NextProtocolNegotiationExtension.builder().handshakeIn(s, extlen).build();
+                    break;
+                case AlpnExtension.ID:
+                    extension = AlpnExtension.builder().handshakeIn(s, extlen).build();
+                    break;
+                case SessionTicketExtension.ID:
+                    extension = new SessionTicketExtension(s, extlen);
+                    break;
+                case 0x0017:    // extended_master_secret
+                    extension = new ExtendedMasterSecretExtension(s, extlen);
+                    break;
+                default:
+                    // nothing looks at the content of the extensions we
+                    // don't support, skip it rather than copy it
+                    extension = new UnparsedExtension(s, extlen, extType);
             }
-            extensions.add(extension);
+            addParsed(extension);
+            // END GRIZZLY NPN
             len -= extlen + 4;
         }
         if (len != 0) {
@@ -128,11 +146,17 @@ final class HelloExtensions {
         if (extensions.isEmpty()) {
             extensions = new ArrayList<HelloExtension>();
         }
-        extensions.add(ext);
+        addParsed(ext);
         encodedLength = -1;
     }
 
     HelloExtension get(ExtensionType type) {
+        // BEGIN GRIZZLY NPN
+        final int slot = type.slot;
+        if (slot >= 0) {
+            return known != null ? known[slot] : null;
+        }
+        // END GRIZZLY NPN
         for (HelloExtension ext : extensions) {
             if (ext.type == type) {
                 return ext;
@@ -141,6 +165,22 @@ final class HelloExtensions {
         return null;
     }
 
+    // BEGIN GRIZZLY NPN
+    private void addParsed(HelloExtension ext) {
+        extensions.add(ext);
+        final int slot = ext.type.slot;
+        if (slot >= 0) {
+            if (known == null) {
+                known = new HelloExtension[ExtensionType.knownCount()];
+            }
+            // as with the former linear lookup, the first one wins
+            if (known[slot] == null) {
+                known[slot] = ext;
+            }
+        }
+    }
+    // END GRIZZLY NPN
+
     int length() {
         if (encodedLength >= 0) {
             return encodedLength;
@@ -42,6 +42,7 @@ package sun.security.ssl;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashSet;
 
 /**
@@ -66,7 +67,9 @@ final class NextProtocolNegotiationExtension extends HelloExtension {
     // registry value TBD - NPN Draft 03 defines 13172 (0x3374).
     public static final int EXTENSION_ID = 0x3374;
 
-    LinkedHashSet<String> protocols;
+    private LinkedHashSet<String> protocols;
+    // the received protocol list, decoded lazily by protocols()
+    private byte[] rawProtocols;
     private byte[] outData;
 
     // ------------------------------------------------------------ Constructors
@@ -101,7 +104,7 @@ final class NextProtocolNegotiationExtension extends HelloExtension {
                 "Next Protocol Negotiation Extension [0x%x/%d], protocols: %s, compressed data: %s",
                 EXTENSION_ID,
                 EXTENSION_ID,
-                protocols.toString(),
+                protocols().toString(),
                 Debug.toString(outData));
     }
 
@@ -112,6 +115,28 @@ final class NextProtocolNegotiationExtension extends HelloExtension {
         return new Builder();
     }
 
+    /**
+     * @return the protocols, decoded on first access when the extension
+     *  has been received.
+     */
+    LinkedHashSet<String> protocols() {
+        if (rawProtocols != null) {
+            final LinkedHashSet<String> decoded = new LinkedHashSet<>();
+            int pos = 0;
+            while (pos < rawProtocols.length) {
+                final int len = rawProtocols[pos++] & 0xFF;
+                // the character encoding isn't specified by Draft-03.
+                // Given the examples in the draft, and our current usage,
+                // ISO-8859-1 seems sufficient.
+                decoded.add(new String(rawProtocols, pos, len, StandardCharsets.ISO_8859_1));
+                pos += len;
+            }
+            protocols = decoded;
+            rawProtocols = null;
+        }
+        return protocols;
+    }
+
     // --------------------------------------------------------- Private Methods
 
 
@@ -143,21 +168,14 @@ final class NextProtocolNegotiationExtension extends HelloExtension {
         NextProtocolNegotiationExtension build() throws IOException {
             if (in != null) {
                 if (len > 0) {
-                    extension.protocols = new LinkedHashSet<>();
-                    int read = 0;
-                    while (read != len) {
-                        // Draft-03, section 3 states:
-                        //    "Protocols are named by opaque, non-empty byte strings
-                        //     and the list of protocols is serialized as a concatenation
-                        //     of 8-bit length prefixed byte strings."
-                        byte[] protocol = new byte[in.getInt8()];
-                        in.read(protocol);
-                        // the character encoding isn't specified by Draft-03.
-                        // Given the examples in the draft, and our current usage,
-                        // ISO-8859-1 seems sufficient.
-                        extension.protocols.add(new String(protocol, ISO_8859_1));
-                        read += protocol.length + 1; // add one for the length prefix
-                    }
+                    // Draft-03, section 3 states:
+                    //    "Protocols are named by opaque, non-empty byte strings
+                    //     and the list of protocols is serialized as a concatenation
+                    //     of 8-bit length prefixed byte strings."
+                    // Only the structure is checked here, the names are
+                    // decoded lazily (see protocols()).
+                    final byte[] raw = ProtocolNameListDecoder.readNpn(in, len);
+                    extension.rawProtocols = raw;
                 } else {
                     extension.protocols = EMPTY;
                 }
@@ -0,0 +1,159 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.security.AccessController;
+import javax.net.ssl.SSLProtocolException;
+import sun.security.action.GetIntegerAction;
+
+/**
+ * Strict decoder for the protocol name lists carried by the ALPN and NPN
+ * extensions: a concatenation of non-empty, 8-bit length prefixed byte
+ * strings.
+ *
+ * The cost of decoding is bounded whatever the peer sends: all lengths are
+ * checked against the enclosing message before anything is allocated, and
+ * lists longer than
+ * <code>org.glassfish.grizzly.npn.maxProtocolListLength</code> bytes
+ * (default 2048) or holding more than
+ * <code>org.glassfish.grizzly.npn.maxProtocolCount</code> names
+ * (default 32) are rejected.
+ */
+final class ProtocolNameListDecoder {
+
+    static final int MAX_LIST_LENGTH = Math.max(2, Math.min(0xFFFF,
+            AccessController.doPrivileged(new GetIntegerAction(
+                    "org.glassfish.grizzly.npn.maxProtocolListLength", 2048))));
+
+    static final int MAX_PROTOCOL_COUNT = Math.max(1,
+            AccessController.doPrivileged(new GetIntegerAction(
+                    "org.glassfish.grizzly.npn.maxProtocolCount", 32)));
+
+    private ProtocolNameListDecoder() {
+    }
+
+    /**
+     * Read the <code>ProtocolNameList protocol_name_list&lt;2..2^16-1&gt;</code>
+     * of an ALPN extension whose extension_data is <code>len</code> bytes
+     * long.
+     *
+     * @return the encoded list, without its length prefix.
+     */
+    static byte[] readAlpn(HandshakeInStream in, int len) throws IOException {
+        checkAvailable(in, len, AlpnExtension.NAME);
+        if (len < 2) {
+            throw new SSLProtocolException(
+                    "Invalid ALPN extension: length " + len);
+        }
+        final int listLen = in.getInt16();
+        if (listLen != len - 2) {
+            throw new SSLProtocolException(
+                    "Invalid ALPN extension: list length " + listLen
+                    + " doesn't match extension length " + len);
+        }
+        if (listLen == 0) {
+            throw new SSLProtocolException(
+                    "Invalid ALPN extension: empty protocol list");
+        }
+        return read(in, listLen, AlpnExtension.NAME);
+    }
+
+    /**
+     * Read the protocol list of an NPN extension whose extension_data is
+     * <code>len</code> bytes long.
+     *
+     * @return the encoded list.
+     */
+    static byte[] readNpn(HandshakeInStream in, int len) throws IOException {
+        checkAvailable(in, len, "next_protocol_negotiation");
+        return read(in, len, "next_protocol_negotiation");
+    }
+
+    private static byte[] read(HandshakeInStream in, int listLen,
+                               String extension) throws IOException {
+        if (listLen > MAX_LIST_LENGTH) {
+            throw new SSLProtocolException("Invalid " + extension
+                    + " extension: protocol list of " + listLen
+                    + " bytes exceeds the limit of " + MAX_LIST_LENGTH);
+        }
+        final byte[] raw = new byte[listLen];
+        int read = 0;
+        while (read < listLen) {
+            final int n = in.read(raw, read, listLen - read);
+            if (n <= 0) {
+                throw new SSLProtocolException("Invalid " + extension
+                        + " extension: truncated protocol list");
+            }
+            read += n;
+        }
+        int pos = 0;
+        int count = 0;
+        while (pos < listLen) {
+            final int protocolLen = raw[pos] & 0xFF;
+            if (protocolLen == 0) {
+                throw new SSLProtocolException("Invalid " + extension
+                        + " extension: empty protocol name");
+            }
+            if (++count > MAX_PROTOCOL_COUNT) {
+                throw new SSLProtocolException("Invalid " + extension
+                        + " extension: more than " + MAX_PROTOCOL_COUNT
+                        + " protocols");
+            }
+            pos += protocolLen + 1;
+        }
+        if (pos != listLen) {
+            throw new SSLProtocolException("Invalid " + extension
+                    + " extension: truncated protocol name");
+        }
+        return raw;
+    }
+
+    private static void checkAvailable(HandshakeInStream in, int len,
+                                       String extension) throws IOException {
+        if (len > in.available()) {
+            throw new SSLProtocolException("Invalid " + extension
+                    + " extension: length " + len
+                    + " exceeds the remaining message");
+        }
+    }
+
+}
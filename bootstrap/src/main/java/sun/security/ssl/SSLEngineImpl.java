@@ -50,6 +50,10 @@ import javax.crypto.BadPaddingException;
 import javax.net.ssl.*;
 import javax.net.ssl.SSLEngineResult.*;
 
+// BEGIN GRIZZLY NPN
+import org.glassfish.grizzly.npn.NegotiationSupport;
+// END GRIZZLY NPN
+
 /**
  * Implementation of an non-blocking SSLEngine.
  *
@@ -1056,6 +1060,9 @@ final public class SSLEngineImpl extends SSLEngine {
                             }
                             handshaker = null;
                             connectionState = cs_DATA;
+                            // BEGIN GRIZZLY NPN
+                            clearAttachment();
+                            // END GRIZZLY NPN
                             // No handshakeListeners here.  That's a
                             // SSLSocket thing.
                         } else if (handshaker.taskOutstanding()) {
@@ -1241,7 +1248,13 @@ final public class SSLEngineImpl extends SSLEngine {
                 hsStatus = getHSStatus(null);
 
                 if (hsStatus == HandshakeStatus.NEED_UNWRAP) {
-                    return new SSLEngineResult(Status.OK, hsStatus, 0, 0);
+                    // BEGIN GRIZZLY NPN
+                    // With False Start, the client sends application data
+                    // while waiting for the server's Finished.
+                    if (!handshaker.isFalseStarted()) {
+                        return new SSLEngineResult(Status.OK, hsStatus, 0, 0);
+                    }
+                    // END GRIZZLY NPN
                 }
             }
         }
@@ -1708,7 +1721,16 @@ final public class SSLEngineImpl extends SSLEngine {
 
         inboundDone = true;
 
+        // BEGIN GRIZZLY NPN
+        clearAttachment();
+        // END GRIZZLY NPN
+
         sess.invalidate();
+        // BEGIN GRIZZLY NPN
+        if (roleIsServer) {
+            ServerHandshaker.removeStoredSession(sslContext, sess);
+        }
+        // END GRIZZLY NPN
         if (handshakeSession != null) {
             handshakeSession.invalidate();
         }
@@ -1748,6 +1770,19 @@ final public class SSLEngineImpl extends SSLEngine {
         }
     }
 
+    // BEGIN GRIZZLY NPN
+    /*
+     * Drops the attachment of this engine once its handshake is over.  An
+     * attachment referencing the engine would otherwise keep the engine's
+     * entry in the weak negotiator registry alive forever.
+     */
+    private void clearAttachment() {
+        if (NegotiationSupport.getAttachment(this) != null) {
+            NegotiationSupport.setAttachment(this, null);
+        }
+    }
+    // END GRIZZLY NPN
+
     /*
      * Process an incoming alert ... caller must already have synchronized
      * access to "this".
@@ -55,9 +55,32 @@ import javax.net.ssl.*;
 
 import javax.security.auth.Subject;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
+import org.glassfish.grizzly.npn.AlpnProtocols;
+import org.glassfish.grizzly.npn.AlpnSelectionCache;
 import org.glassfish.grizzly.npn.AlpnServerNegotiator;
+import org.glassfish.grizzly.npn.AsyncAlpnServerNegotiator;
+import org.glassfish.grizzly.npn.AsyncServerSessionStore;
+import org.glassfish.grizzly.npn.AsyncSigner;
+import org.glassfish.grizzly.npn.ClientHelloInspector;
+import org.glassfish.grizzly.npn.LocalServerSessionStore;
+import org.glassfish.grizzly.npn.NegotiatedProtocol;
+import org.glassfish.grizzly.npn.NegotiationEvents;
+import org.glassfish.grizzly.npn.NegotiationListener.Callback;
+import org.glassfish.grizzly.npn.NegotiationListener.Mechanism;
+import org.glassfish.grizzly.npn.NegotiationListener.Outcome;
 import org.glassfish.grizzly.npn.NegotiationSupport;
+import org.glassfish.grizzly.npn.PureNegotiator;
+import org.glassfish.grizzly.npn.RawAlpnServerNegotiator;
+import org.glassfish.grizzly.npn.ServerSessionStore;
 import org.glassfish.grizzly.npn.ServerSideNegotiator;
+import org.glassfish.grizzly.npn.SessionTicketKey;
+import org.glassfish.grizzly.npn.SessionTicketKeyProvider;
+import org.glassfish.grizzly.npn.SniAlpnServerNegotiator;
 import sun.security.util.KeyUtil;
 import sun.security.util.LegacyAlgorithmConstraints;
 import sun.security.action.GetPropertyAction;
@@ -88,6 +111,46 @@ final class ServerHandshaker extends Handshaker {
     // flag to check for clientCertificateVerify message
     private boolean             needClientVerify = false;
 
+    // BEGIN GRIZZLY NPN
+    // outcome of an AsyncAlpnServerNegotiator selection, available once
+    // processing of the ClientHello resumes.
+    private volatile boolean    alpnSelectedAsync;
+    private volatile String     asyncAlpnProtocol;
+    private volatile Throwable  asyncAlpnFailure;
+
+    // outcome of the ALPN selection: the selected protocol, encoded or
+    // not, and the protocol negotiated for the resumed session, if any
+    private boolean             alpnSelectionDone;
+    private String              alpnProtocol;
+    private AlpnProtocols       alpnSelection;
+    private NegotiatedProtocol  alpnResumed;
+
+    // whether the ClientHelloInspector has been consulted
+    private boolean             clientHelloInspected;
+
+    // RFC 5077 session tickets: the provider is only set if the client
+    // supports tickets
+    private SessionTicketKeyProvider ticketKeyProvider;
+    private boolean             ticketRenewal;
+    private boolean             issueTicket;
+
+    // shared ServerSessionStore, consulted when the local cache misses.
+    // The state found by an asynchronous lookup is available once
+    // processing of the ClientHello resumes.
+    private ServerSessionStore  sessionStore;
+    private volatile boolean    sessionLookedUpAsync;
+    private volatile byte[]     storedSessionState;
+    private boolean             storeResumption;
+
+    // outcome of an AsyncSigner signature of the ServerKeyExchange,
+    // available once the deferred processing of the ClientHello resumes.
+    private volatile byte[]     asyncSignature;
+    private volatile Throwable  asyncSignatureFailure;
+
+    // key manager alias of certs, keying their encoding
+    private String              certsAlias;
+    // END GRIZZLY NPN
+
     /*
      * For exportable ciphersuites using non-exportable key sizes, we use
      * ephemeral RSA keys. We could also do anonymous RSA in the same way
@@ -231,6 +294,21 @@ final class ServerHandshaker extends Handshaker {
         switch (type) {
             case HandshakeMessage.ht_client_hello:
                 ClientHello ch = new ClientHello(input, message_len);
+                // BEGIN GRIZZLY NPN
+                if (!clientHelloInspected) {
+                    // not again if processing was suspended and resumed
+                    clientHelloInspected = true;
+                    inspectClientHello(ch);
+                }
+                if (lookupSessionAsync(ch)) {
+                    // the ClientHello is processed again once looked up
+                    break;
+                }
+                if (selectProtocolAsync(ch)) {
+                    // the ClientHello is processed again once selected
+                    break;
+                }
+                // END GRIZZLY NPN
                 handshakeState.update(ch, resumingSession);
                 /*
                  * send it off for processing.
@@ -345,19 +423,477 @@ final class ServerHandshaker extends Handshaker {
     }
 
     // BEGIN GRIZZLY NPN
+    /*
+     * Lets the ClientHelloInspector, if any, reject the ClientHello before
+     * any further work is done.
+     */
+    private void inspectClientHello(ClientHello mesg) throws IOException {
+        final ClientHelloInspector inspector =
+                getNegotiators().getClientHelloInspector();
+        if (inspector == null) {
+            return;
+        }
+        final int alert = inspector.inspect(engine, new ClientHelloViewImpl(mesg));
+        if (alert != ClientHelloInspector.ACCEPT) {
+            fatalSE(alert >= 0 && alert <= 0xFF
+                            ? (byte) alert
+                            : Alerts.alert_internal_error,
+                    "ClientHello rejected by " + inspector);
+        }
+    }
+
+    /*
+     * Starts the lookup, in an AsyncServerSessionStore, of the session the
+     * client asks to resume if the local session cache doesn't hold it,
+     * suspending processing until it completes.  Returns true if
+     * processing has been suspended.
+     *
+     * Other stores, and all stores of SSLSocket connections, are looked up
+     * synchronously by clientHello().
+     */
+    private boolean lookupSessionAsync(ClientHello mesg) {
+        if (sessionLookedUpAsync) {
+            return false;
+        }
+        sessionStore = NegotiationSupport.getServerSessionStore(
+                sslContext.engineGetServerSessionContext());
+        if (!(sessionStore instanceof AsyncServerSessionStore)
+                || sessionStore instanceof LocalServerSessionStore
+                || engine == null) {
+            return false;
+        }
+        sessionLookedUpAsync = true;
+        if (mesg.sessionId.length() == 0 || ((SSLSessionContextImpl) sslContext
+                .engineGetServerSessionContext())
+                .get(mesg.sessionId.getId()) != null) {
+            return false;
+        }
+        final SessionTicketExtension ticketExt = (SessionTicketExtension)
+                mesg.extensions.get(ExtensionType.EXT_SESSION_TICKET);
+        if (ticketExt != null && ticketExt.ticket.length != 0
+                && NegotiationSupport.getSessionTicketKeyProvider(
+                        sslContext.engineGetServerSessionContext()) != null) {
+            // the session is resumed from the ticket, if at all
+            return false;
+        }
+        final CompletionStage<byte[]> lookup;
+        try {
+            lookup = ((AsyncServerSessionStore) sessionStore)
+                    .getAsync(mesg.sessionId.getId());
+        } catch (RuntimeException e) {
+            if (debug != null && Debug.isOn("session")) {
+                System.out.println("%% Session store lookup failed: " + e);
+            }
+            return false;
+        }
+        if (lookup instanceof CompletableFuture
+                && ((CompletableFuture<byte[]>) lookup).isDone()) {
+            // no need to wait
+            try {
+                storedSessionState =
+                        ((CompletableFuture<byte[]>) lookup).getNow(null);
+            } catch (RuntimeException e) {
+                storedSessionState = null;
+            }
+            return false;
+        }
+        suspendProcessing(lookup.whenComplete(
+                new BiConsumer<byte[], Throwable>() {
+                    @Override
+                    public void accept(byte[] state, Throwable failure) {
+                        storedSessionState = failure == null ? state : null;
+                    }
+                }));
+        return true;
+    }
+
+    /*
+     * Returns the session with the specified id held by the session store,
+     * or null if none.
+     */
+    private SSLSessionImpl storedSession(SessionId sessionId) {
+        byte[] state;
+        if (sessionLookedUpAsync) {
+            state = storedSessionState;
+            storedSessionState = null;
+        } else {
+            try {
+                state = sessionStore.get(sessionId.getId());
+            } catch (RuntimeException e) {
+                if (debug != null && Debug.isOn("session")) {
+                    System.out.println("%% Session store lookup failed: " + e);
+                }
+                state = null;
+            }
+        }
+        if (state == null) {
+            return null;
+        }
+        final SSLSessionImpl storedSession = SessionState.decode(state,
+                sessionId, getLocalSupportedSignAlgs(),
+                getHostAddressSE(), getPortSE(),
+                sslContext.engineGetServerSessionContext().getSessionTimeout());
+        if (storedSession != null && debug != null
+                && Debug.isOn("session")) {
+            System.out.println("%% Found session in store: " + storedSession);
+        }
+        return storedSession;
+    }
+
+    /*
+     * Removes an invalidated session from the session store of the
+     * context, so that no server sharing the store resumes it anymore.
+     */
+    static void removeStoredSession(SSLContextImpl context,
+                                    SSLSessionImpl session) {
+        final byte[] sessionId = session.getSessionId().getId();
+        if (sessionId.length == 0) {
+            return;
+        }
+        final ServerSessionStore store = NegotiationSupport
+                .getServerSessionStore(context.engineGetServerSessionContext());
+        if (store == null) {
+            return;
+        }
+        try {
+            store.remove(sessionId);
+        } catch (RuntimeException e) {
+            if (debug != null && Debug.isOn("session")) {
+                System.out.println("%% Session store removal failed: " + e);
+            }
+        }
+    }
+
+    /*
+     * Returns true if the session created by this handshake can be written
+     * to the session store.  The encoded state holds no peer identity, so
+     * sessions authenticating the client aren't stored: they are kept in
+     * the local session cache only, even with a LocalServerSessionStore.
+     */
+    private boolean isStorable() {
+        return sessionStore != null
+                && doClientAuth == SSLEngineImpl.clauth_none
+                && keyExchange != K_KRB5 && keyExchange != K_KRB5_EXPORT;
+    }
+
+    /*
+     * Writes the session created by this handshake through to the session
+     * store, if it can be stored.
+     */
+    private void storeSession() {
+        if (!isStorable()) {
+            return;
+        }
+        final byte[] state = SessionState.encode(session);
+        if (state == null) {
+            return;
+        }
+        final int timeout =
+                sslContext.engineGetServerSessionContext().getSessionTimeout();
+        try {
+            sessionStore.put(session.getSessionId().getId(), state,
+                    timeout > 0
+                            ? session.getCreationTime() + timeout * 1000L
+                            : Long.MAX_VALUE);
+        } catch (RuntimeException e) {
+            if (debug != null && Debug.isOn("session")) {
+                System.out.println("%% Session store update failed: " + e);
+            }
+        }
+    }
+
+    /*
+     * Starts the selection of an AsyncAlpnServerNegotiator, suspending
+     * processing until it completes.  Returns true if processing has
+     * been suspended.
+     */
+    private boolean selectProtocolAsync(ClientHello mesg) throws IOException {
+        if (!isInitialHandshake || alpnSelectedAsync) {
+            return false;
+        }
+        final AlpnServerNegotiator serverNegotiator = getAlpnServerNegotiator();
+        if (!(serverNegotiator instanceof AsyncAlpnServerNegotiator)) {
+            return false;
+        }
+        final AlpnExtension alpnExt = (AlpnExtension) mesg.extensions
+                .get(ExtensionType.EXT_APPLICATION_LEVEL_PROTOCOL_NEGOTIATION);
+        if (alpnExt == null) {
+            return false;
+        }
+        final byte[] offered = alpnExt.rawProtocols;
+        if (offered != null && mesg.sessionId.length() != 0) {
+            final SSLSessionImpl previous = ((SSLSessionContextImpl) sslContext
+                    .engineGetServerSessionContext())
+                    .get(mesg.sessionId.getId());
+            final NegotiatedProtocol resumed = previous != null
+                    && previous.isRejoinable()
+                    ? NegotiationSupport.getNegotiationResult(previous)
+                    : null;
+            if (resumed != null
+                    && resumed.isNegotiatedFor(offered, 0, offered.length)) {
+                // the protocol will most likely be reused; should the
+                // session not be resumed after all, the negotiator's
+                // synchronous selectProtocol is used
+                return false;
+            }
+        }
+        if (serverNegotiator instanceof PureNegotiator && offered != null) {
+            final AlpnSelectionCache selectionCache =
+                    NegotiationSupport.getAlpnSelectionCache();
+            if (selectionCache != null && selectionCache.get(serverNegotiator,
+                    alpnServerName(serverNegotiator, mesg), offered, 0,
+                    offered.length) != null) {
+                // memoized, no need to wait for a selection
+                return false;
+            }
+        }
+        final long start = NegotiationEvents.start();
+        final CompletionStage<String> selection =
+                ((AsyncAlpnServerNegotiator) serverNegotiator)
+                        .selectProtocolAsync(engine, alpnExt.protocols());
+        NegotiationEvents.callback(engine,
+                Callback.ALPN_SERVER_SELECT_PROTOCOL, start);
+        alpnSelectedAsync = true;
+        suspendProcessing(selection.whenComplete(
+                new BiConsumer<String, Throwable>() {
+                    @Override
+                    public void accept(String protocol, Throwable failure) {
+                        asyncAlpnProtocol = protocol;
+                        asyncAlpnFailure =
+                                failure instanceof CompletionException
+                                        && failure.getCause() != null
+                                        ? failure.getCause()
+                                        : failure;
+                    }
+                }));
+        return true;
+    }
+
+    /*
+     * Returns the host name requested by the ClientHello if the negotiator
+     * is server name aware, null otherwise.
+     */
+    private static String alpnServerName(AlpnServerNegotiator negotiator,
+                                         ClientHello mesg) {
+        if (!(negotiator instanceof SniAlpnServerNegotiator)) {
+            return null;
+        }
+        ServerNameExtension sniExt = (ServerNameExtension)
+                mesg.extensions.get(ExtensionType.EXT_SERVER_NAME);
+        if (sniExt != null) {
+            for (SNIServerName serverName : sniExt.getServerNames()) {
+                if (serverName instanceof SNIHostName) {
+                    return ((SNIHostName) serverName).getAsciiName();
+                }
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Returns the session sealed in the ticket, or null if the ticket can't
+     * be opened with the current keys.
+     */
+    private SSLSessionImpl openTicket(byte[] ticket, SessionId sessionId) {
+        final SessionTicketKey key =
+                ticket.length >= SessionTicketKey.NAME_LENGTH
+                        ? ticketKeyProvider.getDecryptionKey(ticket, 0)
+                        : null;
+        if (key == null) {
+            return null;
+        }
+        final SSLSessionImpl ticketSession = SessionTickets.open(key, ticket,
+                sessionId, getLocalSupportedSignAlgs(),
+                getHostAddressSE(), getPortSE(),
+                sslContext.engineGetServerSessionContext().getSessionTimeout());
+        if (ticketSession != null) {
+            ticketRenewal = key != ticketKeyProvider.getEncryptionKey();
+            if (debug != null && Debug.isOn("session")) {
+                System.out.println("%% Opened session ticket: " + ticketSession);
+            }
+        }
+        return ticketSession;
+    }
+
+    /*
+     * Sends the NewSessionTicket announced by the ServerHello.  Should the
+     * session not be sealed after all, RFC 5077 requires an empty ticket
+     * to be sent.
+     */
+    private void sendNewSessionTicket() throws IOException {
+        final SessionTicketKey key = ticketKeyProvider.getEncryptionKey();
+        final byte[] ticket = key != null
+                ? SessionTickets.seal(key, session, sslContext.getSecureRandom())
+                : null;
+        final NewSessionTicket m = ticket != null
+                ? new NewSessionTicket(sslContext.engineGetServerSessionContext()
+                        .getSessionTimeout(), ticket)
+                : new NewSessionTicket(0, new byte[0]);
+        if (debug != null && Debug.isOn("handshake")) {
+            m.print(System.out);
+        }
+        m.write(output);
+    }
+
+    /*
+     * Selects the application protocol offered by the ALPN extension of
+     * the ClientHello, failing the handshake with no_application_protocol
+     * if the negotiator accepts none.
+     */
+    private void selectApplicationProtocol(ClientHello mesg)
+            throws IOException {
+        alpnSelectionDone = true;
+        AlpnExtension alpnExt = (AlpnExtension)
+                mesg.extensions
+                        .get(ExtensionType.EXT_APPLICATION_LEVEL_PROTOCOL_NEGOTIATION);
+        if (alpnExt == null) {
+            if (isInitialHandshake && NegotiationEvents.isEnabled()
+                    && getAlpnServerNegotiator() != null) {
+                NegotiationEvents.negotiated(engine, Mechanism.ALPN,
+                        Outcome.NOT_OFFERED, null);
+            }
+        } else {
+            final AlpnServerNegotiator serverNegotiator =
+                    getAlpnServerNegotiator();
+            final byte[] offered = alpnExt.rawProtocols;
+            if (serverNegotiator != null && offered != null) {
+                NegotiationEvents.protocolsOffered(engine, offered, 0,
+                        offered.length);
+            }
+            final AlpnSelectionCache selectionCache =
+                    serverNegotiator instanceof PureNegotiator && offered != null
+                            ? NegotiationSupport.getAlpnSelectionCache()
+                            : null;
+            final String serverName = alpnServerName(serverNegotiator, mesg);
+            alpnResumed =
+                    resumingSession && serverNegotiator != null && offered != null
+                            ? NegotiationSupport.getNegotiationResult(session)
+                            : null;
+            if (alpnResumed != null
+                    && alpnResumed.isNegotiatedFor(offered, 0, offered.length)) {
+                // resuming with an identical offer, the negotiated
+                // protocol is reused
+                alpnProtocol = alpnResumed.getProtocol();
+            } else if (selectionCache != null) {
+                alpnSelection = selectionCache.get(serverNegotiator, serverName,
+                        offered, 0, offered.length);
+            }
+            if (alpnSelection != null || alpnProtocol != null) {
+                // memoized decision of a pure negotiator, or resumed
+                // session, skip selection
+            } else if (serverNegotiator instanceof RawAlpnServerNegotiator
+                    && !alpnSelectedAsync) {
+                // select from the encoded list, nothing is decoded
+                final byte[] rawProtocols = alpnExt.rawProtocols;
+                final long start = NegotiationEvents.start();
+                alpnSelection = rawProtocols != null
+                        ? ((RawAlpnServerNegotiator) serverNegotiator)
+                                .selectProtocol(engine, rawProtocols, 0,
+                                        rawProtocols.length)
+                        : null;
+                NegotiationEvents.callback(engine,
+                        Callback.ALPN_SERVER_SELECT_PROTOCOL, start);
+                if (alpnSelection == null || alpnSelection.isEmpty()) {
+                    noApplicationProtocol();
+                } else if (alpnSelection.size() != 1) {
+                    fatalSE(Alerts.alert_internal_error,
+                            "More than one application protocol selected.");
+                }
+                if (selectionCache != null) {
+                    selectionCache.put(serverNegotiator, serverName,
+                            offered, 0, offered.length, alpnSelection);
+                }
+            } else if (serverNegotiator != null) {
+                if (alpnSelectedAsync) {
+                    // selected while processing was suspended
+                    if (asyncAlpnFailure != null) {
+                        fatalSE(Alerts.alert_internal_error,
+                                "Application protocol selection failed",
+                                asyncAlpnFailure);
+                    }
+                    alpnProtocol = asyncAlpnProtocol;
+                } else if (serverNegotiator instanceof SniAlpnServerNegotiator) {
+                    final long start = NegotiationEvents.start();
+                    alpnProtocol = ((SniAlpnServerNegotiator) serverNegotiator)
+                            .selectProtocol(engine, serverName,
+                                    alpnExt.protocols());
+                    NegotiationEvents.callback(engine,
+                            Callback.ALPN_SERVER_SELECT_PROTOCOL, start);
+                } else {
+                    final long start = NegotiationEvents.start();
+                    alpnProtocol = serverNegotiator.selectProtocol(engine,
+                            alpnExt.protocols());
+                    NegotiationEvents.callback(engine,
+                            Callback.ALPN_SERVER_SELECT_PROTOCOL, start);
+                }
+                if (alpnProtocol == null || alpnProtocol.isEmpty()) {
+                    noApplicationProtocol();
+                }
+                if (selectionCache != null) {
+                    try {
+                        alpnSelection = AlpnProtocols.of(alpnProtocol);
+                        selectionCache.put(serverNegotiator, serverName,
+                                offered, 0, offered.length, alpnSelection);
+                    } catch (IllegalArgumentException ignored) {
+                        // not a valid protocol name, it isn't cached
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Records the protocol selected by selectApplicationProtocol() for the
+     * session, which is only known afterwards for full handshakes.
+     */
+    private void recordApplicationProtocol(ClientHello mesg) {
+        final String selected = alpnSelection != null
+                ? alpnSelection.get(0)
+                : alpnProtocol;
+        if (selected == null) {
+            return;
+        }
+        if (alpnResumed == null || !selected.equals(alpnResumed.getProtocol())) {
+            final AlpnExtension alpnExt = (AlpnExtension) mesg.extensions
+                    .get(ExtensionType.EXT_APPLICATION_LEVEL_PROTOCOL_NEGOTIATION);
+            NegotiationSupport.setNegotiationResult(session,
+                    NegotiatedProtocol.alpn(selected, alpnExt.rawProtocols));
+        }
+        NegotiationEvents.negotiated(engine, Mechanism.ALPN,
+                Outcome.SELECTED, selected);
+    }
+
+    private void noApplicationProtocol() throws IOException {
+        NegotiationEvents.negotiated(engine, Mechanism.ALPN,
+                Outcome.NO_APPLICATION_PROTOCOL, null);
+        // TODO enhance diagnostics
+        fatalSE(Alerts.alert_no_application_protocol,
+                "No matching application protocol found.");
+    }
+
     private void protocolSelected(HandshakeInStream in) throws IOException {
-        ServerSideNegotiator serverSideNegotiator =
-                NegotiationSupport.getServerSideNegotiator(engine);
+        ServerSideNegotiator serverSideNegotiator = getServerSideNegotiator();
         if (serverSideNegotiator != null) {
             HandshakeMessage.NextProtocol nextProtocol = HandshakeMessage.NextProtocol.builder().handshakeIn(in).build();
+            final long start = NegotiationEvents.start();
             if (nextProtocol.protocolBytes.length == 0) {
                 serverSideNegotiator.onNoDeal(engine);
+                NegotiationEvents.callback(engine,
+                        Callback.NPN_SERVER_ON_NO_DEAL, start);
+                NegotiationEvents.negotiated(engine, Mechanism.NPN,
+                        Outcome.NO_DEAL, null);
             } else {
                 String selectedProtocol = new String(nextProtocol.protocolBytes, "ISO-8859-1");
                 if (debug != null && Debug.isOn("handshake")) {
                     System.out.println("NPN selected protocol is: " + selectedProtocol);
                 }
+                NegotiationSupport.setNegotiationResult(session,
+                        NegotiatedProtocol.npn(selectedProtocol));
                 serverSideNegotiator.onSuccess(engine, selectedProtocol);
+                NegotiationEvents.callback(engine,
+                        Callback.NPN_SERVER_ON_SUCCESS, start);
+                NegotiationEvents.negotiated(engine, Mechanism.NPN,
+                        Outcome.SELECTED, selectedProtocol);
             }
         }
     }
@@ -554,35 +1090,21 @@ final class ServerHandshaker extends Handshaker {
                     mesg.extensions.get(ExtensionType.EXT_NEXT_PROTOCOL_NEGOTIATION);
             if (npnExt != null) {
                 ServerSideNegotiator serverSideNegotiator =
-                        NegotiationSupport.getServerSideNegotiator(engine);
+                        getServerSideNegotiator();
                 if (serverSideNegotiator != null) {
+                    final long start = NegotiationEvents.start();
+                    final LinkedHashSet<String> supportedProtocols =
+                            serverSideNegotiator.supportedProtocols(engine);
+                    NegotiationEvents.callback(engine,
+                            Callback.NPN_SERVER_SUPPORTED_PROTOCOLS, start);
                     responseExtension =
                             NextProtocolNegotiationExtension
                                     .builder()
-                                    .protocols(serverSideNegotiator.supportedProtocols(engine)).build();
+                                    .protocols(supportedProtocols).build();
                 }
             }
         }
 
-        // check the ALPN Extension
-        String alpnProtocol = null;
-        AlpnExtension alpnExt = (AlpnExtension)
-                mesg.extensions
-                        .get(ExtensionType.EXT_APPLICATION_LEVEL_PROTOCOL_NEGOTIATION);
-        if (alpnExt != null) {
-            final AlpnServerNegotiator serverNegotiator =
-                    NegotiationSupport.getAlpnServerNegotiator(engine);
-            if (serverNegotiator != null) {
-                alpnProtocol = serverNegotiator.selectProtocol(engine,
-                        alpnExt.protocols);
-                if (alpnProtocol == null || alpnProtocol.isEmpty()) {
-                    // TODO enhance diagnostics
-                    fatalSE(Alerts.alert_no_application_protocol,
-                            "No matching application protocol found.");
-                }
-            }
-
-        }
         // END GRIZZLY NPN
 
         /*
@@ -635,6 +1157,15 @@ final class ServerHandshaker extends Handshaker {
         m1.svr_random = svr_random;
 
         session = null; // forget about the current session
+        // BEGIN GRIZZLY NPN
+        final SessionTicketExtension ticketExt = (SessionTicketExtension)
+                mesg.extensions.get(ExtensionType.EXT_SESSION_TICKET);
+        ticketKeyProvider = ticketExt != null
+                ? NegotiationSupport.getSessionTicketKeyProvider(
+                        sslContext.engineGetServerSessionContext())
+                : null;
+        boolean ticketResumption = false;
+        // END GRIZZLY NPN
         //
         // Here we go down either of two paths:  (a) the fast one, where
         // the client's asked to rejoin an existing session, and the server
@@ -643,9 +1174,32 @@ final class ServerHandshaker extends Handshaker {
         if (mesg.sessionId.length() != 0) {
             // client is trying to resume a session, let's see...
 
+            // BEGIN GRIZZLY NPN
+            // with a LocalServerSessionStore, the session cache only holds
+            // the sessions the store can't
             SSLSessionImpl previous = ((SSLSessionContextImpl)sslContext
                     .engineGetServerSessionContext())
                     .get(mesg.sessionId.getId());
+            // not cached by this server, the session may be resumed from
+            // the ticket, which may have been issued by any server sharing
+            // the ticket keys
+            if (previous == null && ticketKeyProvider != null
+                    && ticketExt.ticket.length != 0) {
+                previous = openTicket(ticketExt.ticket, mesg.sessionId);
+                ticketResumption = previous != null;
+            }
+            // a session the local cache knows to be invalid isn't resumed
+            // from the shared session store either
+            if (previous != null && !previous.isRejoinable()) {
+                removeStoredSession(sslContext, previous);
+            }
+            // nor by the ticket, the session may be held by the shared
+            // session store
+            if (previous == null && sessionStore != null) {
+                previous = storedSession(mesg.sessionId);
+                storeResumption = previous != null;
+            }
+            // END GRIZZLY NPN
             //
             // Check if we can use the fast path, resuming a session.  We
             // can do so iff we have a valid record for that session, and
@@ -830,6 +1384,13 @@ final class ServerHandshaker extends Handshaker {
                 throw new SSLException("Client did not resume a session");
             }
 
+            // BEGIN GRIZZLY NPN
+            // the protocol is selected before chooseCipherSuite() generates
+            // the ephemeral key, so that connections rejected for their
+            // protocols cost little
+            selectApplicationProtocol(mesg);
+            // END GRIZZLY NPN
+
             requestedCurves = (EllipticCurvesExtension)
                     mesg.extensions.get(ExtensionType.EXT_ELLIPTIC_CURVES);
 
@@ -899,6 +1460,15 @@ final class ServerHandshaker extends Handshaker {
             setHandshakeSessionSE(session);
         }
 
+        // BEGIN GRIZZLY NPN
+        // a resumed session selects once it is known, so that it can reuse
+        // the protocol negotiated for it
+        if (!alpnSelectionDone) {
+            selectApplicationProtocol(mesg);
+        }
+        recordApplicationProtocol(mesg);
+        // END GRIZZLY NPN
+
         if (protocolVersion.v >= ProtocolVersion.TLS12.v) {
             handshakeHash.setFinishedAlg(cipherSuite.prfAlg.getPRFHashAlg());
         }
@@ -938,8 +1508,25 @@ final class ServerHandshaker extends Handshaker {
             m1.extensions.add(responseExtension);
         }
 
-        if (isInitialHandshake && alpnProtocol != null) {
-            // TODO - get rid of array allocation - not needed here.
+        // A ticket is issued on full handshakes, unless the client is
+        // authenticated, and renewed when a session is resumed from a
+        // ticket sealed with a retired key.
+        issueTicket = ticketKeyProvider != null
+                && ticketKeyProvider.getEncryptionKey() != null
+                && (resumingSession
+                        ? ticketResumption && ticketRenewal
+                        : doClientAuth == SSLEngineImpl.clauth_none
+                                && keyExchange != K_KRB5
+                                && keyExchange != K_KRB5_EXPORT);
+        if (issueTicket) {
+            m1.extensions.add(new SessionTicketExtension());
+        }
+
+        if (isInitialHandshake && alpnSelection != null) {
+            // the selection is already encoded, it's written as is.
+            m1.extensions.add(AlpnExtension.builder().
+                    protocols(alpnSelection).build());
+        } else if (isInitialHandshake && alpnProtocol != null) {
             final AlpnExtension ext =
                     AlpnExtension.builder().
                             selectedProtocol(alpnProtocol).build();
@@ -960,6 +1547,11 @@ final class ServerHandshaker extends Handshaker {
         //
         if (resumingSession) {
             calculateConnectionKeys(session.getMasterSecret());
+            // BEGIN GRIZZLY NPN
+            if (issueTicket) {
+                sendNewSessionTicket();
+            }
+            // END GRIZZLY NPN
             sendChangeCipherAndFinish(false);
             return;
         }
@@ -981,7 +1573,10 @@ final class ServerHandshaker extends Handshaker {
                 throw new RuntimeException("no certificates");
             }
 
-            CertificateMsg m2 = new CertificateMsg(certs);
+            // BEGIN GRIZZLY NPN
+            CertificateMsg m2 = EncodedMessageCache.certificateMsg(
+                    sslContext.getX509KeyManager(), certsAlias, certs);
+            // END GRIZZLY NPN
 
             /*
              * Set local certs in the SSLSession, output
@@ -1014,6 +1609,12 @@ final class ServerHandshaker extends Handshaker {
          * to use short RSA keys, even when the key/cert encrypts OK.
          */
 
+        // BEGIN GRIZZLY NPN
+        if (signServerKeyExchangeAsync()) {
+            return;
+        }
+        // END GRIZZLY NPN
+
         ServerKeyExchange m3;
         switch (keyExchange) {
             case K_RSA:
@@ -1083,6 +1684,17 @@ final class ServerHandshaker extends Handshaker {
             default:
                 throw new RuntimeException("internal error: " + keyExchange);
         }
+        // BEGIN GRIZZLY NPN
+        finishServerHelloFlight(m3);
+    }
+
+    /*
+     * Sends the ServerKeyExchange message, if any, and the rest of the
+     * server's flight.
+     */
+    private void finishServerHelloFlight(ServerKeyExchange m3)
+            throws IOException {
+        // END GRIZZLY NPN
         if (m3 != null) {
             if (debug != null && Debug.isOn("handshake")) {
                 m3.print(System.out);
@@ -1107,7 +1719,6 @@ final class ServerHandshaker extends Handshaker {
                 keyExchange != K_KRB5 && keyExchange != K_KRB5_EXPORT) {
 
             CertificateRequest m4;
-            X509Certificate caCerts[];
 
             Collection<SignatureAndHashAlgorithm> localSignAlgs = null;
             if (protocolVersion.v >= ProtocolVersion.TLS12.v) {
@@ -1130,9 +1741,11 @@ final class ServerHandshaker extends Handshaker {
                 }
             }
 
-            caCerts = sslContext.getX509TrustManager().getAcceptedIssuers();
-            m4 = new CertificateRequest(caCerts, keyExchange,
+            // BEGIN GRIZZLY NPN
+            m4 = EncodedMessageCache.certificateRequest(
+                    sslContext.getX509TrustManager(), keyExchange,
                     localSignAlgs, protocolVersion);
+            // END GRIZZLY NPN
 
             if (debug != null && Debug.isOn("handshake")) {
                 m4.print(System.out);
@@ -1161,57 +1774,138 @@ final class ServerHandshaker extends Handshaker {
         output.flush();
     }
 
+    // BEGIN GRIZZLY NPN
     /*
-     * Choose cipher suite from among those supported by client. Sets
-     * the cipherSuite and keyExchange variables.
+     * Hands the signature of the ServerKeyExchange of an ephemeral key
+     * exchange over to the AsyncSigner of the SSLContext, if any.  The
+     * rest of the server's flight is sent once the signature completes.
+     *
+     * Returns true if the signature is pending.
      */
-    private void chooseCipherSuite(ClientHello mesg) throws IOException {
-        CipherSuiteList prefered;
-        CipherSuiteList proposed;
-        if (preferLocalCipherSuites) {
-            prefered = getActiveCipherSuites();
-            proposed = mesg.getCipherSuites();
-        } else {
-            prefered = mesg.getCipherSuites();
-            proposed = getActiveCipherSuites();
+    private boolean signServerKeyExchangeAsync() throws IOException {
+        if (engine == null) {
+            return false;
+        }
+        switch (keyExchange) {
+            case K_DHE_RSA:
+            case K_DHE_DSS:
+            case K_ECDHE_RSA:
+            case K_ECDHE_ECDSA:
+                break;
+            default:
+                return false;
+        }
+        final AsyncSigner signer = NegotiationSupport.getAsyncSigner(
+                sslContext.engineGetServerSessionContext());
+        if (signer == null) {
+            return false;
         }
 
-        List<CipherSuite> legacySuites = new ArrayList<>();
-        for (CipherSuite suite : prefered.collection()) {
-            if (isNegotiable(proposed, suite) == false) {
-                continue;
-            }
-
-            if (doClientAuth == SSLEngineImpl.clauth_required) {
-                if ((suite.keyExchange == K_DH_ANON) ||
-                        (suite.keyExchange == K_ECDH_ANON)) {
-                    continue;
-                }
-            }
+        final ServerKeyExchange m3;
+        final byte[] data;
+        final String algorithm;
+        if (keyExchange == K_DHE_RSA || keyExchange == K_DHE_DSS) {
+            final DH_ServerKeyExchange dhm3 = new DH_ServerKeyExchange(dh,
+                    preferableSignatureAlgorithm, protocolVersion);
+            data = dhm3.signedData(clnt_random.random_bytes,
+                    svr_random.random_bytes);
+            algorithm = signatureAlgorithm(
+                    privateKey.getAlgorithm().equals("DSA")
+                            ? JsseJce.SIGNATURE_DSA
+                            : JsseJce.SIGNATURE_SSLRSA);
+            m3 = dhm3;
+        } else {
+            final ECDH_ServerKeyExchange ecdhm3 = new ECDH_ServerKeyExchange(
+                    ecdh, preferableSignatureAlgorithm, protocolVersion);
+            data = ecdhm3.signedData(clnt_random.random_bytes,
+                    svr_random.random_bytes);
+            algorithm = signatureAlgorithm(
+                    privateKey.getAlgorithm().equals("EC")
+                            ? JsseJce.SIGNATURE_ECDSA
+                            : JsseJce.SIGNATURE_SSLRSA);
+            m3 = ecdhm3;
+        }
+
+        final CompletionStage<byte[]> signature;
+        try {
+            signature = signer.sign(engine, algorithm, privateKey, data);
+        } catch (RuntimeException e) {
+            throwSSLException("Error signing server key exchange", e);
+            return false; // make compiler happy
+        }
+        deferProcessing(signature.whenComplete(
+                new BiConsumer<byte[], Throwable>() {
+                    @Override
+                    public void accept(byte[] sig, Throwable failure) {
+                        asyncSignature = sig;
+                        asyncSignatureFailure =
+                                failure instanceof CompletionException
+                                        && failure.getCause() != null
+                                        ? failure.getCause()
+                                        : failure;
+                    }
+                }), new PrivilegedExceptionAction<Void>() {
+                    @Override
+                    public Void run() throws Exception {
+                        final byte[] sig = asyncSignature;
+                        final Throwable failure = asyncSignatureFailure;
+                        asyncSignature = null;
+                        asyncSignatureFailure = null;
+                        if (failure != null || sig == null) {
+                            fatalSE(Alerts.alert_internal_error,
+                                    "Error signing server key exchange",
+                                    failure);
+                        }
+                        if (m3 instanceof DH_ServerKeyExchange) {
+                            ((DH_ServerKeyExchange) m3).setSignature(sig);
+                        } else {
+                            ((ECDH_ServerKeyExchange) m3).setSignature(sig);
+                        }
+                        finishServerHelloFlight(m3);
+                        return null;
+                    }
+                });
+        return true;
+    }
 
-            if (!legacyAlgorithmConstraints.permits(null, suite.name, null)) {
-                legacySuites.add(suite);
-                continue;
-            }
+    /*
+     * Returns the name of the signature algorithm of the ServerKeyExchange,
+     * given the one used before TLS 1.2.
+     */
+    private String signatureAlgorithm(String legacyAlgorithm) {
+        return protocolVersion.v >= ProtocolVersion.TLS12.v
+                ? preferableSignatureAlgorithm.getAlgorithmName()
+                : legacyAlgorithm;
+    }
+    // END GRIZZLY NPN
 
+    /*
+     * Choose cipher suite from among those supported by client. Sets
+     * the cipherSuite and keyExchange variables.
+     */
+    private void chooseCipherSuite(ClientHello mesg) throws IOException {
+        // BEGIN GRIZZLY NPN
+        // the negotiable suites, filtered and ordered, are memoized
+        CipherSuiteCandidates candidates = CipherSuiteCandidates.get(
+                mesg.getCipherSuites(), getActiveCipherSuites(),
+                protocolVersion, preferLocalCipherSuites,
+                doClientAuth == SSLEngineImpl.clauth_required,
+                legacyAlgorithmConstraints);
+
+        for (int i = 0; i < candidates.suites.length; i++) {
+            CipherSuite suite = candidates.suites[i];
             if (trySetCipherSuite(suite) == false) {
                 continue;
             }
 
             if (debug != null && Debug.isOn("handshake")) {
-                System.out.println("Standard ciphersuite chosen: " + suite);
+                System.out.println((i < candidates.legacyIndex
+                        ? "Standard" : "Legacy")
+                        + " ciphersuite chosen: " + suite);
             }
             return;
         }
-
-        for (CipherSuite suite : legacySuites) {
-            if (trySetCipherSuite(suite)) {
-                if (debug != null && Debug.isOn("handshake")) {
-                    System.out.println("Legacy ciphersuite chosen: " + suite);
-                }
-                return;
-            }
-        }
+        // END GRIZZLY NPN
 
         fatalSE(Alerts.alert_handshake_failure, "no cipher suites in common");
     }
@@ -1587,7 +2281,9 @@ final class ServerHandshaker extends Handshaker {
             }
         }
 
-        dh = new DHCrypt(keySize, sslContext.getSecureRandom());
+        // BEGIN GRIZZLY NPN
+        dh = EphemeralKeyPool.dh(keySize, sslContext.getSecureRandom());
+        // END GRIZZLY NPN
     }
 
     // Setup the ephemeral ECDH parameters.
@@ -1602,7 +2298,9 @@ final class ServerHandshaker extends Handshaker {
             return false;
         }
 
-        ecdh = new ECDHCrypt(index, sslContext.getSecureRandom());
+        // BEGIN GRIZZLY NPN
+        ecdh = EphemeralKeyPool.ecdh(index, sslContext.getSecureRandom());
+        // END GRIZZLY NPN
         return true;
     }
 
@@ -1659,6 +2357,9 @@ final class ServerHandshaker extends Handshaker {
         }
         this.privateKey = tempPrivateKey;
         this.certs = tempCerts;
+        // BEGIN GRIZZLY NPN
+        this.certsAlias = alias;
+        // END GRIZZLY NPN
         return true;
     }
 
@@ -1897,6 +2598,11 @@ final class ServerHandshaker extends Handshaker {
          */
         if (!resumingSession) {
             input.digestNow();
+            // BEGIN GRIZZLY NPN
+            if (issueTicket) {
+                sendNewSessionTicket();
+            }
+            // END GRIZZLY NPN
             sendChangeCipherAndFinish(true);
         } else {
             handshakeFinished = true;
@@ -1908,8 +2614,16 @@ final class ServerHandshaker extends Handshaker {
          */
         session.setLastAccessedTime(System.currentTimeMillis());
         if (!resumingSession && session.isRejoinable()) {
-            ((SSLSessionContextImpl)sslContext.engineGetServerSessionContext())
-                    .put(session);
+            // BEGIN GRIZZLY NPN
+            // a LocalServerSessionStore replaces the session cache, but
+            // for the sessions it can't hold
+            if (!(sessionStore instanceof LocalServerSessionStore)
+                    || !isStorable()) {
+                ((SSLSessionContextImpl)sslContext
+                        .engineGetServerSessionContext()).put(session);
+            }
+            storeSession();
+            // END GRIZZLY NPN
             if (debug != null && Debug.isOn("session")) {
                 System.out.println(
                         "%% Cached server session: " + session);
@@ -1920,6 +2634,14 @@ final class ServerHandshaker extends Handshaker {
                     "%% Didn't cache non-resumable server session: "
                             + session);
         }
+        // BEGIN GRIZZLY NPN
+        if (storeResumption && session.isRejoinable()
+                && !(sessionStore instanceof LocalServerSessionStore)) {
+            // cache locally, so that it's no longer looked up in the store
+            ((SSLSessionContextImpl)sslContext.engineGetServerSessionContext())
+                    .put(session);
+        }
+        // END GRIZZLY NPN
     }
 
     /*
@@ -2032,6 +2754,9 @@ final class ServerHandshaker extends Handshaker {
 
         // ask the trust manager to verify the chain
         X509TrustManager tm = sslContext.getX509TrustManager();
+        // BEGIN GRIZZLY NPN
+        TrustVerification verification = null;
+        // END GRIZZLY NPN
 
         try {
             // find out the types of client authentication used
@@ -2049,6 +2774,17 @@ final class ServerHandshaker extends Handshaker {
                 authType = "UNKNOWN";
             }
 
+            // BEGIN GRIZZLY NPN
+            verification = TrustVerification.of(this, tm, peerCerts,
+                    authType, null);
+            if (verification != null && verification.isTrusted()) {
+                // the same chain was accepted recently
+                needClientVerify = true;
+                session.setPeerCertificates(peerCerts);
+                return;
+            }
+            // END GRIZZLY NPN
+
             if (tm instanceof X509ExtendedTrustManager) {
                 if (conn != null) {
                     ((X509ExtendedTrustManager)tm).checkClientTrusted(
@@ -2071,6 +2807,11 @@ final class ServerHandshaker extends Handshaker {
             // This will throw an exception, so include the original error.
             fatalSE(Alerts.alert_certificate_unknown, e);
         }
+        // BEGIN GRIZZLY NPN
+        if (verification != null) {
+            verification.trusted();
+        }
+        // END GRIZZLY NPN
         // set the flag for clientCertificateVerify message
         needClientVerify = true;
 
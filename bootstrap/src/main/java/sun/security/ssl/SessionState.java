@@ -0,0 +1,195 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package sun.security.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import javax.crypto.spec.SecretKeySpec;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+
+/**
+ * Encodes the state needed to resume a server session, as held by session
+ * tickets and {@link org.glassfish.grizzly.npn.ServerSessionStore}s: the
+ * protocol version, the cipher suite, whether the extended master secret
+ * is used, the creation time, the master secret, the requested server
+ * names and the endpoint identification algorithm.
+ *
+ * Neither the peer nor the local certificates are part of the state, so
+ * sessions authenticating the client aren't encoded.
+ */
+final class SessionState {
+
+    private static final int VERSION = 1;
+
+    // SSLSessionImpl.creationTime, which has no setter.  Decoded sessions
+    // get the creation time of the session they resume, so that resuming
+    // them doesn't extend their lifetime.  Null if unavailable, sessions
+    // can't be decoded then.
+    private static final Field creationTimeField =
+            AccessController.doPrivileged(new PrivilegedAction<Field>() {
+                @Override
+                public Field run() {
+                    try {
+                        final Field field = SSLSessionImpl.class
+                                .getDeclaredField("creationTime");
+                        field.setAccessible(true);
+                        return field;
+                    } catch (ReflectiveOperationException | RuntimeException e) {
+                        return null;
+                    }
+                }
+            });
+
+    private SessionState() {
+    }
+
+    /*
+     * Returns the state of the session, or null if it can't be encoded.
+     */
+    static byte[] encode(SSLSessionImpl session) {
+        final byte[] masterSecret = session.getMasterSecret().getEncoded();
+        if (masterSecret == null) {
+            // not extractable
+            return null;
+        }
+        try {
+            final ByteArrayOutputStream state = new ByteArrayOutputStream(128);
+            final DataOutputStream out = new DataOutputStream(state);
+            out.writeByte(VERSION);
+            out.writeShort(session.getProtocolVersion().v);
+            out.writeShort(session.getSuite().id);
+            out.writeBoolean(session.getUseExtendedMasterSecret());
+            out.writeLong(session.getCreationTime());
+            out.writeByte(masterSecret.length);
+            out.write(masterSecret);
+            final List<SNIServerName> serverNames =
+                    session.getRequestedServerNames();
+            out.writeByte(serverNames.size());
+            for (SNIServerName serverName : serverNames) {
+                if (!(serverName instanceof SNIHostName)) {
+                    return null;
+                }
+                final byte[] encoded = serverName.getEncoded();
+                out.writeShort(encoded.length);
+                out.write(encoded);
+            }
+            final String identityAlg =
+                    session.getEndpointIdentificationAlgorithm();
+            out.writeUTF(identityAlg != null ? identityAlg : "");
+            out.flush();
+            return state.toByteArray();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            Arrays.fill(masterSecret, (byte) 0);
+        }
+    }
+
+    /*
+     * Returns a session with the encoded state, including its creation
+     * time, and the specified id, or null if the state is invalid or older
+     * than the timeout.
+     */
+    static SSLSessionImpl decode(byte[] state, SessionId sessionId,
+                                 Collection<SignatureAndHashAlgorithm> algorithms,
+                                 String host, int port, int timeout) {
+        try {
+            final DataInputStream in =
+                    new DataInputStream(new ByteArrayInputStream(state));
+            if (in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            final ProtocolVersion protocolVersion =
+                    ProtocolVersion.valueOf(in.readUnsignedShort());
+            final int suiteId = in.readUnsignedShort();
+            final CipherSuite suite =
+                    CipherSuite.valueOf(suiteId >> 8, suiteId & 0xFF);
+            final boolean useExtendedMasterSecret = in.readBoolean();
+            final long creationTime = in.readLong();
+            if (timeout > 0 && System.currentTimeMillis() - creationTime
+                    > timeout * 1000L) {
+                return null;
+            }
+            if (creationTimeField == null) {
+                return null;
+            }
+            final byte[] masterSecret = new byte[in.readUnsignedByte()];
+            in.readFully(masterSecret);
+            final int serverNameCount = in.readUnsignedByte();
+            final List<SNIServerName> serverNames =
+                    new ArrayList<SNIServerName>(serverNameCount);
+            for (int i = 0; i < serverNameCount; i++) {
+                final byte[] encoded = new byte[in.readUnsignedShort()];
+                in.readFully(encoded);
+                serverNames.add(new SNIHostName(encoded));
+            }
+            final String identityAlg = in.readUTF();
+
+            final SSLSessionImpl session = new SSLSessionImpl(protocolVersion,
+                    suite, algorithms, sessionId, host, port,
+                    useExtendedMasterSecret,
+                    identityAlg.isEmpty() ? null : identityAlg);
+            creationTimeField.setLong(session, creationTime);
+            session.setMasterSecret(
+                    new SecretKeySpec(masterSecret, "TlsMasterSecret"));
+            Arrays.fill(masterSecret, (byte) 0);
+            session.setRequestedServerNames(
+                    Collections.unmodifiableList(serverNames));
+            return session;
+        } catch (IOException | IllegalArgumentException
+                | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+}
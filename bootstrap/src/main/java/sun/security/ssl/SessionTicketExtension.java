@@ -0,0 +1,106 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import javax.net.ssl.SSLProtocolException;
+
+/**
+ * The RFC 5077 session_ticket extension.
+ *
+ * In a ClientHello, it carries the ticket of the session the client
+ * wants to resume, or is empty if the client merely supports tickets.
+ * In a ServerHello, it is empty and announces a NewSessionTicket message.
+ */
+final class SessionTicketExtension extends HelloExtension {
+
+    static final int ID = 0x0023;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    final byte[] ticket;
+
+    SessionTicketExtension() {
+        this(EMPTY);
+    }
+
+    SessionTicketExtension(byte[] ticket) {
+        super(ExtensionType.EXT_SESSION_TICKET);
+        this.ticket = ticket;
+    }
+
+    SessionTicketExtension(HandshakeInStream s, int len) throws IOException {
+        super(ExtensionType.EXT_SESSION_TICKET);
+        if (len > s.available()) {
+            throw new SSLProtocolException(
+                    "Invalid session_ticket extension: length " + len
+                    + " exceeds the remaining message");
+        }
+        ticket = len != 0 ? new byte[len] : EMPTY;
+        int read = 0;
+        while (read < len) {
+            final int n = s.read(ticket, read, len - read);
+            if (n <= 0) {
+                throw new SSLProtocolException(
+                        "Invalid session_ticket extension: truncated ticket");
+            }
+            read += n;
+        }
+    }
+
+    @Override
+    int length() {
+        return 4 + ticket.length;
+    }
+
+    @Override
+    void send(HandshakeOutStream s) throws IOException {
+        s.putInt16(type.id);
+        s.putInt16(ticket.length);
+        s.write(ticket);
+    }
+
+    @Override
+    public String toString() {
+        return "Extension " + type + ", ticket length: " + ticket.length;
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package sun.security.ssl;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.net.ssl.SSLSession;
+
+import org.glassfish.grizzly.npn.NegotiationSupport;
+import org.glassfish.grizzly.npn.SessionTicketKey;
+
+/**
+ * Seals the {@link SessionState} of a session into an RFC 5077 session
+ * ticket, and opens it back, using the format recommended by section 4 of
+ * the RFC:
+ *
+ * <pre>
+ *     opaque key_name[16];
+ *     opaque iv[16];
+ *     opaque encrypted_state&lt;0..2^16-1&gt;;   // AES-CBC, PKCS#5 padding
+ *     opaque mac[32];                         // HMAC-SHA256 of the above
+ * </pre>
+ *
+ * On the client side, the ticket received for a session is kept weakly
+ * against the session, by identity, until it is resumed.
+ */
+final class SessionTickets {
+
+    private static final int IV_LENGTH = 16;
+    private static final int MAC_LENGTH = 32;
+    private static final int MIN_LENGTH =
+            SessionTicketKey.NAME_LENGTH + IV_LENGTH + 16 + MAC_LENGTH;
+
+    private SessionTickets() {
+    }
+
+    /*
+     * Returns the ticket holding the state of the session, or null if the
+     * session can't be sealed.
+     */
+    static byte[] seal(SessionTicketKey key, SSLSessionImpl session,
+                       SecureRandom random) {
+        final byte[] state = SessionState.encode(session);
+        if (state == null) {
+            return null;
+        }
+        try {
+            final byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, key.getEncryptionKey(),
+                    new IvParameterSpec(iv));
+            final byte[] encrypted = cipher.doFinal(state);
+
+            final byte[] ticket = new byte[SessionTicketKey.NAME_LENGTH
+                    + IV_LENGTH + encrypted.length + MAC_LENGTH];
+            int pos = 0;
+            System.arraycopy(key.getName(), 0, ticket, pos,
+                    SessionTicketKey.NAME_LENGTH);
+            pos += SessionTicketKey.NAME_LENGTH;
+            System.arraycopy(iv, 0, ticket, pos, IV_LENGTH);
+            pos += IV_LENGTH;
+            System.arraycopy(encrypted, 0, ticket, pos, encrypted.length);
+            pos += encrypted.length;
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key.getMacKey());
+            mac.update(ticket, 0, pos);
+            mac.doFinal(ticket, pos);
+            return ticket.length <= 0xFFFF ? ticket : null;
+        } catch (GeneralSecurityException e) {
+            return null;
+        } finally {
+            Arrays.fill(state, (byte) 0);
+        }
+    }
+
+    /*
+     * Returns a session with the state sealed in the ticket and the
+     * specified id, or null if the ticket is invalid or expired.
+     */
+    static SSLSessionImpl open(SessionTicketKey key, byte[] ticket,
+                               SessionId sessionId,
+                               Collection<SignatureAndHashAlgorithm> algorithms,
+                               String host, int port, int timeout) {
+        if (ticket.length < MIN_LENGTH || !key.hasName(ticket, 0)) {
+            return null;
+        }
+        byte[] state = null;
+        try {
+            final int macOffset = ticket.length - MAC_LENGTH;
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key.getMacKey());
+            mac.update(ticket, 0, macOffset);
+            final byte[] expected = mac.doFinal();
+            final byte[] actual = new byte[MAC_LENGTH];
+            System.arraycopy(ticket, macOffset, actual, 0, MAC_LENGTH);
+            if (!MessageDigest.isEqual(expected, actual)) {
+                return null;
+            }
+            final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, key.getEncryptionKey(),
+                    new IvParameterSpec(ticket, SessionTicketKey.NAME_LENGTH,
+                            IV_LENGTH));
+            final int stateOffset = SessionTicketKey.NAME_LENGTH + IV_LENGTH;
+            state = cipher.doFinal(ticket, stateOffset, macOffset - stateOffset);
+            return SessionState.decode(state, sessionId, algorithms,
+                    host, port, timeout);
+        } catch (GeneralSecurityException e) {
+            return null;
+        } finally {
+            if (state != null) {
+                Arrays.fill(state, (byte) 0);
+            }
+        }
+    }
+
+    static void setClientTicket(SSLSession session, byte[] ticket) {
+        NegotiationSupport.setSessionTicket(session,
+                ticket != null && ticket.length != 0 ? ticket : null);
+    }
+
+    static byte[] getClientTicket(SSLSession session) {
+        return NegotiationSupport.getSessionTicket(session);
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package sun.security.ssl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmConstraints;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.X509TrustManager;
+
+import org.glassfish.grizzly.npn.NegotiationSupport;
+import org.glassfish.grizzly.npn.TrustVerificationCache;
+
+/**
+ * The validation of a peer's certificate chain by the trust manager,
+ * looked up in and recorded into the
+ * {@link TrustVerificationCache} of the SSLContext.
+ */
+final class TrustVerification {
+
+    private final TrustVerificationCache cache;
+    private final X509TrustManager tm;
+    private final AlgorithmConstraints constraints;
+    private final byte[] digest;
+    private final X509Certificate[] chain;
+
+    private TrustVerification(TrustVerificationCache cache,
+                              X509TrustManager tm,
+                              AlgorithmConstraints constraints,
+                              byte[] digest, X509Certificate[] chain) {
+        this.cache = cache;
+        this.tm = tm;
+        this.constraints = constraints;
+        this.digest = digest;
+        this.chain = chain;
+    }
+
+    /*
+     * Returns the validation of the chain by the trust manager, or null if
+     * validations aren't cached.  The server names requested by clients
+     * are passed by ClientHandshakers, as they are part of the
+     * endpoint identification.
+     */
+    static TrustVerification of(Handshaker handshaker, X509TrustManager tm,
+                                X509Certificate[] chain, String authType,
+                                List<SNIServerName> serverNames) {
+        final SSLContextImpl context = handshaker.sslContext;
+        final TrustVerificationCache cache =
+                NegotiationSupport.getTrustVerificationCache(
+                        handshaker instanceof ClientHandshaker
+                                ? context.engineGetClientSessionContext()
+                                : context.engineGetServerSessionContext());
+        if (cache == null) {
+            return null;
+        }
+        final SSLParameters params = handshaker.conn != null
+                ? handshaker.conn.getSSLParameters()
+                : handshaker.engine.getSSLParameters();
+
+        final StringBuilder parameters = new StringBuilder(64);
+        parameters.append(authType).append('\0')
+                .append(handshaker.protocolVersion.name).append('\0');
+        final String identityAlg = params.getEndpointIdentificationAlgorithm();
+        if (identityAlg != null && identityAlg.length() != 0) {
+            parameters.append(identityAlg).append('\0')
+                    .append(handshaker.getHostSE()).append('\0');
+            if (serverNames != null) {
+                parameters.append(serverNames);
+            }
+            parameters.append('\0');
+        }
+        if (handshaker.protocolVersion.v >= ProtocolVersion.TLS12.v) {
+            for (SignatureAndHashAlgorithm algorithm
+                    : handshaker.getLocalSupportedSignAlgs()) {
+                parameters.append(algorithm.getAlgorithmName()).append(',');
+            }
+        }
+
+        final byte[] digest = digest(parameters.toString(), chain);
+        if (digest == null) {
+            return null;
+        }
+        return new TrustVerification(cache, tm,
+                params.getAlgorithmConstraints(), digest, chain);
+    }
+
+    /*
+     * Returns true if the trust manager accepted the chain recently.
+     */
+    boolean isTrusted() {
+        return cache.isTrusted(tm, constraints, digest);
+    }
+
+    /*
+     * Records that the trust manager accepted the chain.
+     */
+    void trusted() {
+        cache.trusted(tm, constraints, digest, chain);
+    }
+
+    /*
+     * Returns the SHA-256 digest of the chain and of the validation
+     * parameters, or null if the chain can't be encoded.
+     */
+    private static byte[] digest(String parameters, X509Certificate[] chain) {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        try {
+            for (X509Certificate cert : chain) {
+                final byte[] encoded = cert.getEncoded();
+                updateLength(md, encoded.length);
+                md.update(encoded);
+            }
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+        final byte[] p = parameters.getBytes(StandardCharsets.UTF_8);
+        updateLength(md, p.length);
+        md.update(p);
+        return md.digest();
+    }
+
+    private static void updateLength(MessageDigest md, int len) {
+        md.update((byte) (len >> 24));
+        md.update((byte) (len >> 16));
+        md.update((byte) (len >> 8));
+        md.update((byte) len);
+    }
+
+}